@@ -20,6 +20,7 @@ import com.microsoft.identity.client.exception.MsalException;
 import com.microsoft.identity.client.exception.MsalServiceException;
 import com.microsoft.identity.client.exception.MsalUiRequiredException;
 import com.microsoft.identity.client.AuthenticationCallback;
+import com.microsoft.office365.msgraphsnippetapp.application.SnippetApp;
 import com.microsoft.office365.msgraphsnippetapp.util.SharedPrefsUtil;
 
 import java.util.List;
@@ -77,9 +78,6 @@ public class SignInActivity
         // get rid of this Activity so that users can't 'back' into it
         finish();
 
-        // save our auth token to use later
-        SharedPrefsUtil.persistAuthToken(authenticationResult);
-
         // get the user display name
         final String userDisplayableId =
                 authenticationResult
@@ -95,6 +93,11 @@ public class SignInActivity
         SharedPrefsUtil.persistUserTenant(tenant);
         SharedPrefsUtil.persistUserID(authenticationResult);
 
+        // signing in can take long enough for the connections opened at launch to be dropped
+        SnippetApp.getApp().warmUpConnections();
+        // the snippet services are created for the account just signed in
+        SnippetApp.getApp().warmUpServices();
+
         // go to our main activity
         start();
     }
@@ -163,13 +166,24 @@ public class SignInActivity
         try {
             users = mAuthenticationManager.getPublicClient().getAccounts();
 
-            if (users != null && users.size() == 1) {
-                /* We have 1 user */
+            if (users != null && !users.isEmpty()) {
+                /* We have users: continue as the one used last, and sign the
+                 * others back in alongside it so their requests can run too */
+                String lastUserId = SharedPrefsUtil
+                        .getSharedPreferences()
+                        .getString(SharedPrefsUtil.PREF_USER_ID, null);
                 mUser = users.get(0);
-                mAuthenticationManager.callAcquireTokenSilent(
-                        mUser,
-                        true,
-                        this);
+                for (IAccount user : users) {
+                    if (user.getUsername().equals(lastUserId)) {
+                        mUser = user;
+                    }
+                }
+                for (IAccount user : users) {
+                    mAuthenticationManager.callAcquireTokenSilent(
+                            user,
+                            true,
+                            user == mUser ? this : null);
+                }
             } else {
                 /* We have no user */
 
@@ -17,24 +17,32 @@ import android.text.ClipboardManager;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.inputmethod.EditorInfo;
+import android.widget.AdapterView;
 import android.widget.Button;
+import android.widget.EditText;
+import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import com.microsoft.office365.msgraphsnippetapp.snippet.AbstractSnippet;
+import com.microsoft.office365.msgraphsnippetapp.snippet.SnippetCall;
 import com.microsoft.office365.msgraphsnippetapp.snippet.SnippetContent;
-
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.microsoft.office365.msgraphsnippetapp.util.JsonStreamFormatter;
+import com.microsoft.office365.msgraphsnippetapp.viewer.ResponseDocument;
+import com.microsoft.office365.msgraphsnippetapp.viewer.ResponseLinesAdapter;
 
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import butterknife.ButterKnife;
 import butterknife.BindView;
 import butterknife.OnClick;
+import butterknife.OnEditorAction;
 import okhttp3.Headers;
 import okhttp3.ResponseBody;
 import retrofit2.Call;
@@ -49,18 +57,22 @@ import static com.microsoft.office365.msgraphsnippetapp.R.color.code_3xx;
 import static com.microsoft.office365.msgraphsnippetapp.R.color.code_4xx;
 import static com.microsoft.office365.msgraphsnippetapp.R.color.transparent;
 import static com.microsoft.office365.msgraphsnippetapp.R.id.btn_run;
+import static com.microsoft.office365.msgraphsnippetapp.R.id.btn_search;
 import static com.microsoft.office365.msgraphsnippetapp.R.id.progressbar;
+import static com.microsoft.office365.msgraphsnippetapp.R.id.snippet_detail;
 import static com.microsoft.office365.msgraphsnippetapp.R.id.txt_desc;
 import static com.microsoft.office365.msgraphsnippetapp.R.id.txt_hyperlink;
 import static com.microsoft.office365.msgraphsnippetapp.R.id.txt_request_url;
-import static com.microsoft.office365.msgraphsnippetapp.R.id.txt_response_body;
 import static com.microsoft.office365.msgraphsnippetapp.R.id.txt_response_headers;
+import static com.microsoft.office365.msgraphsnippetapp.R.id.txt_response_line;
+import static com.microsoft.office365.msgraphsnippetapp.R.id.txt_search;
 import static com.microsoft.office365.msgraphsnippetapp.R.id.txt_status_code;
 import static com.microsoft.office365.msgraphsnippetapp.R.id.txt_status_color;
 import static com.microsoft.office365.msgraphsnippetapp.R.string.clippy;
 import static com.microsoft.office365.msgraphsnippetapp.R.string.req_url;
-import static com.microsoft.office365.msgraphsnippetapp.R.string.response_body;
 import static com.microsoft.office365.msgraphsnippetapp.R.string.response_headers;
+import static com.microsoft.office365.msgraphsnippetapp.R.string.response_line;
+import static com.microsoft.office365.msgraphsnippetapp.R.string.search_not_found;
 
 public class SnippetDetailFragment<T, Result>
         extends BaseFragment implements Callback<Result> {
@@ -70,7 +82,14 @@ public class SnippetDetailFragment<T, Result>
     private static final int UNSET = -1;
     private static final String STATUS_COLOR = "STATUS_COLOR";
 
+    // searches run one at a time, off the main thread
+    private static final ExecutorService sSearchExecutor = Executors.newSingleThreadExecutor();
+
     private AbstractSnippet<T, Result> mItem;
+    private SnippetCall mSnippetCall;
+    private JsonStreamFormatter mFormatter;
+    private ResponseDocument mDocument;
+    private ResponseLinesAdapter mResponseLinesAdapter;
 
     //
     // UI component bindings
@@ -107,10 +126,17 @@ public class SnippetDetailFragment<T, Result>
     protected TextView mResponseHeaders;
 
     /**
-     * The response body of the snippet's request
+     * Lists the response body of the snippet's request one line at a time, below a header
+     * holding the rest of the snippet details
+     */
+    @BindView(snippet_detail)
+    protected ListView mResponseBody;
+
+    /**
+     * The text to search the response body for
      */
-    @BindView(txt_response_body)
-    protected TextView mResponseBody;
+    @BindView(txt_search)
+    protected EditText mSearchText;
 
     /**
      * Barber's pole progress bar (indeterminate)
@@ -146,10 +172,18 @@ public class SnippetDetailFragment<T, Result>
         clipboard(tv);
     }
 
-    @OnClick(txt_response_body)
-    public void onResponseBodyClicked(TextView tv) {
-        // copy to clip
-        clipboard(tv);
+    @OnClick(btn_search)
+    public void onSearchClicked(Button btn) {
+        findNext();
+    }
+
+    @OnEditorAction(txt_search)
+    public boolean onSearchAction(TextView tv, int actionId) {
+        if (EditorInfo.IME_ACTION_SEARCH != actionId) {
+            return false;
+        }
+        findNext();
+        return true;
     }
 
     @OnClick(btn_run)
@@ -164,7 +198,7 @@ public class SnippetDetailFragment<T, Result>
         mResponseHeaders.setText("");
 
         // clear any old response body
-        mResponseBody.setText("");
+        closeDocument();
 
         // reset the status 'stoplight'
         displayStatusCode("",
@@ -175,8 +209,9 @@ public class SnippetDetailFragment<T, Result>
         // show the indeterminate spinner
         mProgressbar.setVisibility(VISIBLE);
 
-        // actually make the request
-        mItem.request(mItem.mService, this);
+        // actually make the request, abandoning any earlier run
+        cancelSnippet();
+        mSnippetCall = mItem.request(this);
     }
 
     @OnClick(txt_hyperlink)
@@ -199,12 +234,41 @@ public class SnippetDetailFragment<T, Result>
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
-        View rootView = inflater.inflate(R.layout.fragment_snippet_detail, container, false);
+        ListView rootView = (ListView)
+                inflater.inflate(R.layout.fragment_snippet_detail, container, false);
+        // the header must be added before binding, so its views can be found
+        rootView.addHeaderView(
+                inflater.inflate(R.layout.snippet_detail_header, rootView, false), null, false);
         ButterKnife.bind(this, rootView);
         mSnippetDescription.setText(mItem.getDescription());
+
+        mResponseLinesAdapter = new ResponseLinesAdapter(getActivity());
+        rootView.setAdapter(mResponseLinesAdapter);
+        rootView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                // collapse or expand the JSON node opened by this line
+                mResponseLinesAdapter.toggleFold(position - mResponseBody.getHeaderViewsCount());
+            }
+        });
+        rootView.setOnItemLongClickListener(new AdapterView.OnItemLongClickListener() {
+            @Override
+            public boolean onItemLongClick(AdapterView<?> parent, View view, int position, long id) {
+                // copy to clip
+                clipboard((TextView) view);
+                return true;
+            }
+        });
         return rootView;
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        cancelSnippet();
+        closeDocument();
+    }
+
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -239,6 +303,7 @@ public class SnippetDetailFragment<T, Result>
         if (response.isSuccessful()) {
             if (!isAdded()) {
                 // the user has left...
+                closeBody(response);
                 return;
             }
             mRunButton.setEnabled(true);
@@ -264,6 +329,13 @@ public class SnippetDetailFragment<T, Result>
     //
     // Private methods
     //
+    private void cancelSnippet() {
+        if (null != mSnippetCall) {
+            mSnippetCall.cancel();
+            mSnippetCall = null;
+        }
+    }
+
     private void clipboard(TextView tv) {
         // which view are we copying to the clipboard?
         int which;
@@ -277,8 +349,8 @@ public class SnippetDetailFragment<T, Result>
                 which = response_headers;
                 break;
 
-            case txt_response_body: // the response body
-                which = response_body;
+            case txt_response_line: // a line of the response body
+                which = response_line;
                 break;
 
             default:
@@ -333,25 +405,114 @@ public class SnippetDetailFragment<T, Result>
 
     private void maybeDisplayResponseBody(Response response) {
         if (null != response.body()) {
-            String body = null;
+            closeDocument();
+            ResponseDocument document;
             try {
-                body = ((ResponseBody) response.body()).string();
-                String formattedJson = new JSONObject(body).toString(2);
-                mResponseBody.setText(formattedJson);
-            } catch (JSONException e) {
-                if (null != body) {
-                    // body wasn't JSON
-                    mResponseBody.setText(body);
-                } else {
-                    // set the stack trace as the response body
-                    displayThrowable(e);
-                }
-            } catch (IOException ioe) {
-                displayThrowable(ioe);
+                document = ResponseDocument.create(getActivity().getCacheDir());
+            } catch (IOException e) {
+                closeBody(response);
+                displayThrowable(e);
+                return;
+            }
+            showDocument(document);
+            // format the body off the main thread into the spill file,
+            // and show its lines as they become available
+            mFormatter = JsonStreamFormatter.format(
+                    (ResponseBody) response.body(),
+                    document.getWriter(),
+                    new JsonStreamFormatter.Listener() {
+                        @Override
+                        public void onProgress() {
+                            mResponseLinesAdapter.refresh();
+                        }
+
+                        @Override
+                        public void onComplete() {
+                            mFormatter = null;
+                            mResponseLinesAdapter.refresh();
+                        }
+
+                        @Override
+                        public void onError(Throwable t) {
+                            mFormatter = null;
+                            // set the stack trace as the response body
+                            displayThrowable(t);
+                        }
+                    });
+        }
+    }
+
+    // snippet bodies are streamed, so one that won't be formatted still has to be closed
+    private static void closeBody(Response response) {
+        if (response.body() instanceof ResponseBody) {
+            ((ResponseBody) response.body()).close();
+        }
+    }
+
+    private void showDocument(ResponseDocument document) {
+        mDocument = document;
+        mResponseLinesAdapter.setDocument(document);
+    }
+
+    // also stops any formatting into the document
+    private void closeDocument() {
+        JsonStreamFormatter formatter = mFormatter;
+        mFormatter = null;
+        if (null != mDocument) {
+            mResponseLinesAdapter.setDocument(null);
+            if (null != formatter) {
+                // its worker may still be writing; it closes the document once it has stopped
+                formatter.cancel(mDocument);
+            } else {
+                mDocument.close();
             }
+            mDocument = null;
+        } else if (null != formatter) {
+            formatter.cancel();
         }
     }
 
+    private void findNext() {
+        final String query = mSearchText.getText().toString();
+        final ResponseDocument document = mDocument;
+        if (null == document || query.isEmpty()) {
+            return;
+        }
+        final int fromLine = mResponseLinesAdapter.getMatchLine() + 1;
+        sSearchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int found;
+                try {
+                    found = document.find(query, fromLine);
+                } catch (IOException e) {
+                    // the document was closed while searching
+                    Timber.e(e, "Unable to search the response body");
+                    return;
+                }
+                final int line = found;
+                mResponseBody.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (document != mDocument) {
+                            // the response has been replaced or the view destroyed
+                            return;
+                        }
+                        if (-1 == line) {
+                            // start again from the top next time
+                            mResponseLinesAdapter.showMatch(-1);
+                            Toast.makeText(getActivity(), search_not_found, Toast.LENGTH_SHORT)
+                                    .show();
+                            return;
+                        }
+                        int position = mResponseLinesAdapter.showMatch(line);
+                        mResponseBody.setSelection(mResponseBody.getHeaderViewsCount() + position);
+                    }
+                });
+            }
+        });
+    }
+
     private void maybeDisplayResponseHeaders(Response response) {
         if (null != response.headers()) {
             Headers headers = response.headers();
@@ -381,7 +542,12 @@ public class SnippetDetailFragment<T, Result>
         PrintWriter pw = new PrintWriter(sw);
         t.printStackTrace(pw);
         String trace = sw.toString();
-        mResponseBody.setText(trace);
+        closeDocument();
+        try {
+            showDocument(ResponseDocument.of(getActivity().getCacheDir(), trace));
+        } catch (IOException e) {
+            Timber.e(e, "Unable to display the stack trace");
+        }
     }
 
     private int getColor(Response response) {
@@ -5,13 +5,28 @@
 package com.microsoft.office365.msgraphsnippetapp.application;
 
 import android.app.Application;
+import android.os.Process;
 
+import com.microsoft.office365.auth.AccountSession;
 import com.microsoft.office365.msgraphsnippetapp.BuildConfig;
+import com.microsoft.office365.msgraphsnippetapp.ServiceConstants;
 import com.microsoft.office365.msgraphsnippetapp.inject.AppModule;
+import com.microsoft.office365.msgraphsnippetapp.snippet.SnippetCategory;
+import com.microsoft.office365.msgraphsnippetapp.util.AccountSessionInterceptor;
+import com.microsoft.office365.msgraphsnippetapp.util.CircuitBreakerInterceptor;
+import com.microsoft.office365.msgraphsnippetapp.util.ConnectionWarmer;
+import com.microsoft.office365.msgraphsnippetapp.util.RequestHedger;
+import com.microsoft.office365.msgraphsnippetapp.util.RequestScheduler;
+import com.microsoft.office365.msgraphsnippetapp.util.StreamingAwareLoggingInterceptor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Inject;
 
 import dagger.ObjectGraph;
+import okhttp3.Call;
+import okhttp3.Dispatcher;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
 import okhttp3.logging.HttpLoggingInterceptor;
@@ -20,6 +35,23 @@ import retrofit2.converter.gson.GsonConverterFactory;
 import timber.log.Timber;
 
 public class SnippetApp extends Application {
+    // room is always left for interactive requests: at most 3 prefetch and 4 bulk of 10
+    private static final int MAX_REQUESTS = 10;
+    private static final int MAX_PREFETCH_REQUESTS = 3;
+    private static final int MAX_BULK_REQUESTS = 4;
+    // when hedging is enabled, interactive GETs slower than 95% of recent ones are sent again,
+    // but no more than one in ten
+    private static final double HEDGE_PERCENTILE = 0.95;
+    private static final double MAX_HEDGED_FRACTION = 0.1;
+    // a workload fails fast for 30s once half of its last 20 requests failed or took over 20s,
+    // then 3 requests must succeed for it to be used again
+    private static final int BREAKER_WINDOW = 20;
+    private static final int BREAKER_MIN_REQUESTS = 10;
+    private static final double BREAKER_FAILURE_RATE = 0.5;
+    private static final long BREAKER_SLOW_MILLIS = 20 * 1000;
+    private static final long BREAKER_OPEN_MILLIS = 30 * 1000;
+    private static final int BREAKER_PROBES = 3;
+
     private static SnippetApp sSnippetApp;
     /**
      * The {@link dagger.ObjectGraph} used by Dagger to fulfill <code>@inject</code> annotations
@@ -39,6 +71,20 @@ public class SnippetApp extends Application {
     @Inject
     protected Interceptor interceptor;
 
+    private volatile OkHttpClient mClient;
+
+    private volatile ConnectionWarmer mWarmer;
+
+    private final RequestScheduler mScheduler =
+            new RequestScheduler(MAX_REQUESTS, MAX_PREFETCH_REQUESTS, MAX_BULK_REQUESTS);
+
+    private final RequestHedger mHedger = new RequestHedger(HEDGE_PERCENTILE, MAX_HEDGED_FRACTION);
+
+    private final ConcurrentMap<RequestScheduler.Priority, Retrofit> mRetrofits =
+            new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Retrofit> mAccountRetrofits = new ConcurrentHashMap<>();
+
     public static SnippetApp getApp() {
         return sSnippetApp;
     }
@@ -52,21 +98,176 @@ public class SnippetApp extends Application {
         if (BuildConfig.DEBUG) {
             Timber.plant(new Timber.DebugTree());
         }
+        warmUpConnections();
     }
 
+    /**
+     * Returns the shared {@link retrofit2.Retrofit} instance, building it on first use
+     *
+     * @return the Retrofit instance whose calls are {@link RequestScheduler.Priority#INTERACTIVE}
+     * and made as the account signed in most recently at the time of each call
+     */
     public Retrofit getRetrofit() {
+        return getRetrofit(RequestScheduler.Priority.INTERACTIVE);
+    }
+
+    /**
+     * Returns a {@link retrofit2.Retrofit} instance whose calls wait behind those of higher
+     * priority classes. Create the services of background work, such as a sync or a crawl,
+     * from one of these so that it doesn't hold up the snippets the user runs. Its calls are
+     * made as the account signed in most recently at the time of each call.
+     *
+     * @param priority The class of the calls
+     * @return the Retrofit instance for the class
+     */
+    public Retrofit getRetrofit(RequestScheduler.Priority priority) {
+        Retrofit retrofit = mRetrofits.get(priority);
+        if (null == retrofit) {
+            OkHttpClient client = getClient().newBuilder()
+                    .addInterceptor(new AccountSessionInterceptor())
+                    .build();
+            retrofit = buildRetrofit(callFactory(client, priority));
+            Retrofit previous = mRetrofits.putIfAbsent(priority, retrofit);
+            if (null != previous) {
+                retrofit = previous;
+            }
+        }
+        return retrofit;
+    }
+
+    public RequestScheduler getRequestScheduler() {
+        return mScheduler;
+    }
+
+    /**
+     * Returns the hedger of interactive GETs, which is off until it is enabled
+     *
+     * @return the hedger
+     */
+    public RequestHedger getRequestHedger() {
+        return mHedger;
+    }
+
+    /**
+     * Returns a {@link retrofit2.Retrofit} instance whose services call as one account, such
+     * as the snippet services of the selected account. It shares the connections and threads
+     * of {@link #getRetrofit()}, so services of different accounts can be used at the same time.
+     *
+     * @param session The session of a signed-in account
+     * @return the Retrofit instance for the account
+     */
+    public Retrofit getRetrofit(AccountSession session) {
+        Retrofit retrofit = mAccountRetrofits.get(session.getAccountId());
+        if (null == retrofit) {
+            OkHttpClient client = getClient().newBuilder()
+                    .addInterceptor(new AccountSessionInterceptor(session.getAccountId()))
+                    .build();
+            retrofit = buildRetrofit(callFactory(client, RequestScheduler.Priority.INTERACTIVE));
+            Retrofit previous = mAccountRetrofits.putIfAbsent(session.getAccountId(), retrofit);
+            if (null != previous) {
+                retrofit = previous;
+            }
+        }
+        return retrofit;
+    }
+
+    /**
+     * Creates the snippet services of the selected account on a background thread so that
+     * neither class loading nor annotation parsing happens on the main thread when the first
+     * snippet runs. Call it once an account has been signed in.
+     */
+    public void warmUpServices() {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                SnippetCategory.warmUp();
+            }
+        }, "snippet-service-warm-up").start();
+    }
+
+    /**
+     * Opens the connections to Graph and to the login host on a background thread, so that
+     * the first call doesn't pay for them. Call it again once the connections may have been
+     * dropped, such as after sign-in, which can take longer than the pool keeps them.
+     */
+    public void warmUpConnections() {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // the client, and its TLS setup, is built here rather than on the main thread
+                getConnectionWarmer().warmUp();
+            }
+        }, "connection-warm-up").start();
+    }
+
+    public ConnectionWarmer getConnectionWarmer() {
+        ConnectionWarmer warmer = mWarmer;
+        if (null == warmer) {
+            synchronized (this) {
+                warmer = mWarmer;
+                if (null == warmer) {
+                    mWarmer = warmer = new ConnectionWarmer(getClient(),
+                            endpoint,
+                            ServiceConstants.AUTHORITY_URL);
+                }
+            }
+        }
+        return warmer;
+    }
+
+    private OkHttpClient getClient() {
+        OkHttpClient client = mClient;
+        if (null == client) {
+            synchronized (this) {
+                client = mClient;
+                if (null == client) {
+                    mClient = client = buildClient();
+                }
+            }
+        }
+        return client;
+    }
+
+    private OkHttpClient buildClient() {
         HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
         logging.setLevel(logLevel);
 
-        OkHttpClient client = new OkHttpClient.Builder()
+        // every request is to the same host; the scheduler, not the dispatcher, limits them,
+        // with room for a hedged copy of each
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(Math.max(dispatcher.getMaxRequests(), 2 * MAX_REQUESTS));
+        dispatcher.setMaxRequestsPerHost(2 * MAX_REQUESTS);
+
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                // first, so that a request to a failing workload does no other work
+                .addInterceptor(new CircuitBreakerInterceptor(BREAKER_WINDOW,
+                        BREAKER_MIN_REQUESTS,
+                        BREAKER_FAILURE_RATE,
+                        BREAKER_SLOW_MILLIS,
+                        BREAKER_OPEN_MILLIS,
+                        BREAKER_PROBES))
                 .addInterceptor(interceptor)
-                .addInterceptor(logging)
+                .addInterceptor(new StreamingAwareLoggingInterceptor(logging))
                 .build();
+    }
+
+    private Call.Factory callFactory(OkHttpClient client, RequestScheduler.Priority priority) {
+        // a hedged copy shares its request's place in the scheduler
+        Call.Factory factory = RequestScheduler.Priority.INTERACTIVE == priority
+                ? mHedger.callFactory(client)
+                : client;
+        return mScheduler.callFactory(factory, priority);
+    }
 
+    private Retrofit buildRetrofit(Call.Factory callFactory) {
         return new Retrofit.Builder()
                 .baseUrl(endpoint)
-                .client(client)
+                .callFactory(callFactory)
                 .addConverterFactory(GsonConverterFactory.create())
+                // parse every service method when the service is created rather than on its first call
+                .validateEagerly(true)
                 .build();
     }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.calendar;
+
+import com.microsoft.office365.microsoftgraphvos.Envelope;
+import com.microsoft.office365.microsoftgraphvos.Event;
+import com.microsoft.office365.msgraphapiservices.MSGraphEventsService;
+import com.microsoft.office365.msgraphsnippetapp.snippet.EventsSnippets;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * Keeps an {@link EventIntervalIndex} of the signed-in user's calendar view over a window of
+ * time, so that range and conflict queries are answered locally. {@link #refresh} fetches the
+ * window page by page and swaps in a new index; queries keep using the previous index until
+ * the new one is ready.
+ */
+public class CalendarCache {
+
+    static final String SELECT = "id,subject,start,end,location";
+    static final int PAGE_SIZE = 100;
+
+    private final MSGraphEventsService mService;
+    private final String mVersion;
+    private volatile Snapshot mSnapshot;
+
+    /**
+     * @param service The events service to fetch the calendar view with
+     * @param version The version of the API to use (beta, v1, etc...)
+     */
+    public CalendarCache(MSGraphEventsService service, String version) {
+        mService = service;
+        mVersion = version;
+    }
+
+    /**
+     * Fetches the calendar view between two times and indexes it. This makes network calls, so
+     * call it off the main thread.
+     *
+     * @param start The start of the window
+     * @param end   The end of the window
+     * @return the new index
+     * @throws IOException if a page can't be fetched
+     */
+    public EventIntervalIndex refresh(DateTime start, DateTime end) throws IOException {
+        List<Event> events = new ArrayList<>();
+        Call<Envelope<Event>> call = mService.getCalendarViewEvents(
+                mVersion,
+                start.withZone(DateTimeZone.UTC).toString(),
+                end.withZone(DateTimeZone.UTC).toString(),
+                SELECT,
+                PAGE_SIZE,
+                EventsSnippets.PREFER_UTC);
+        while (null != call) {
+            Response<Envelope<Event>> response = call.execute();
+            if (!response.isSuccessful()) {
+                throw new IOException("HTTP " + response.code() + " fetching the calendar view");
+            }
+            Envelope<Event> page = response.body();
+            if (null != page.value) {
+                events.addAll(Arrays.asList(page.value));
+            }
+            call = null == page.nextLink
+                    ? null
+                    : mService.getCalendarViewEventsPage(page.nextLink, EventsSnippets.PREFER_UTC);
+        }
+        EventIntervalIndex index = EventIntervalIndex.build(events);
+        mSnapshot = new Snapshot(index, start.getMillis(), end.getMillis());
+        return index;
+    }
+
+    /**
+     * @return the latest index, or null if the cache hasn't been refreshed yet
+     */
+    public EventIntervalIndex getIndex() {
+        Snapshot snapshot = mSnapshot;
+        return null == snapshot ? null : snapshot.mIndex;
+    }
+
+    /**
+     * @param from The start of a range, in milliseconds since the epoch
+     * @param to   The end of the range
+     * @return true if the latest index holds every event in the range
+     */
+    public boolean covers(long from, long to) {
+        Snapshot snapshot = mSnapshot;
+        return null != snapshot && snapshot.mStart <= from && to <= snapshot.mEnd;
+    }
+
+    private static class Snapshot {
+
+        final EventIntervalIndex mIndex;
+        final long mStart;
+        final long mEnd;
+
+        Snapshot(EventIntervalIndex index, long start, long end) {
+            mIndex = index;
+            mStart = start;
+            mEnd = end;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.calendar;
+
+import com.microsoft.office365.microsoftgraphvos.Event;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import timber.log.Timber;
+
+/**
+ * An immutable interval tree over Events, answering "what is on between two times" and "is
+ * anything on between two times" in O(log n + k) for k matching events.
+ * <p>
+ * The events are sorted by start time, and the sorted arrays are treated as a balanced binary
+ * search tree: the middle of each range is the root of that range's subtree. Each node also
+ * stores the latest end time in its subtree, so whole subtrees that end before a query starts
+ * are skipped. Intervals are half-open, so back-to-back events don't overlap.
+ */
+public class EventIntervalIndex {
+
+    private final Event[] mEvents;
+    private final long[] mStarts;
+    private final long[] mEnds;
+    private final long[] mMaxEnds;
+
+    private EventIntervalIndex(Event[] events, long[] starts, long[] ends) {
+        mEvents = events;
+        mStarts = starts;
+        mEnds = ends;
+        mMaxEnds = new long[events.length];
+        computeMaxEnds(0, events.length - 1);
+    }
+
+    /**
+     * Builds an index. Events without a start or end that can be parsed are left out.
+     *
+     * @param events The events to index
+     * @return the index
+     */
+    public static EventIntervalIndex build(Collection<Event> events) {
+        List<Event> all = new ArrayList<>(events);
+        long[] allStarts = new long[all.size()];
+        long[] allEnds = new long[all.size()];
+        EventTimes.toMillis(all, allStarts, allEnds);
+        List<Interval> intervals = new ArrayList<>(all.size());
+        for (int i = 0; i < all.size(); i++) {
+            if (EventTimes.INVALID == allStarts[i] || EventTimes.INVALID == allEnds[i]) {
+                Timber.w("Not indexing event %s", all.get(i).id);
+                continue;
+            }
+            long start = allStarts[i];
+            intervals.add(new Interval(all.get(i), start, Math.max(start, allEnds[i])));
+        }
+        Interval[] sorted = intervals.toArray(new Interval[intervals.size()]);
+        Arrays.sort(sorted, new Comparator<Interval>() {
+            @Override
+            public int compare(Interval lhs, Interval rhs) {
+                return lhs.mStart < rhs.mStart ? -1 : (lhs.mStart == rhs.mStart ? 0 : 1);
+            }
+        });
+
+        Event[] indexed = new Event[sorted.length];
+        long[] starts = new long[sorted.length];
+        long[] ends = new long[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            indexed[i] = sorted[i].mEvent;
+            starts[i] = sorted[i].mStart;
+            ends[i] = sorted[i].mEnd;
+        }
+        return new EventIntervalIndex(indexed, starts, ends);
+    }
+
+    /**
+     * @return the number of indexed events
+     */
+    public int size() {
+        return mEvents.length;
+    }
+
+    /**
+     * Finds the events that overlap a range
+     *
+     * @param from The start of the range, in milliseconds since the epoch
+     * @param to   The end of the range, exclusive
+     * @return the overlapping events, ordered by start time
+     */
+    public List<Event> between(long from, long to) {
+        List<Event> events = new ArrayList<>();
+        collect(0, mEvents.length - 1, from, to, events);
+        return events;
+    }
+
+    /**
+     * @param from The start of the range, in milliseconds since the epoch
+     * @param to   The end of the range, exclusive
+     * @return true if any event overlaps the range
+     */
+    public boolean overlaps(long from, long to) {
+        return any(0, mEvents.length - 1, from, to);
+    }
+
+    /**
+     * Finds the events that overlap an event, such as a booking that is being considered
+     *
+     * @param event The event to check
+     * @return the other events that overlap it, ordered by start time
+     */
+    public List<Event> conflictsWith(Event event) {
+        long start = EventTimes.toMillis(event.start);
+        long end = EventTimes.toMillis(event.end);
+        List<Event> conflicts = between(start, end);
+        for (int i = conflicts.size() - 1; i >= 0; i--) {
+            Event conflict = conflicts.get(i);
+            if (conflict == event || (null != event.id && event.id.equals(conflict.id))) {
+                conflicts.remove(i);
+            }
+        }
+        return conflicts;
+    }
+
+    private long computeMaxEnds(int low, int high) {
+        if (low > high) {
+            return Long.MIN_VALUE;
+        }
+        int mid = (low + high) >>> 1;
+        long maxEnd = Math.max(mEnds[mid],
+                Math.max(computeMaxEnds(low, mid - 1), computeMaxEnds(mid + 1, high)));
+        mMaxEnds[mid] = maxEnd;
+        return maxEnd;
+    }
+
+    private void collect(int low, int high, long from, long to, List<Event> events) {
+        if (low > high) {
+            return;
+        }
+        int mid = (low + high) >>> 1;
+        if (mMaxEnds[mid] < from) {
+            // everything in this subtree ends before the range starts
+            return;
+        }
+        collect(low, mid - 1, from, to, events);
+        if (mStarts[mid] >= to) {
+            // this event and everything after it start after the range ends
+            return;
+        }
+        if (isOverlap(mid, from, to)) {
+            events.add(mEvents[mid]);
+        }
+        collect(mid + 1, high, from, to, events);
+    }
+
+    private boolean any(int low, int high, long from, long to) {
+        if (low > high) {
+            return false;
+        }
+        int mid = (low + high) >>> 1;
+        if (mMaxEnds[mid] < from) {
+            return false;
+        }
+        if (any(low, mid - 1, from, to)) {
+            return true;
+        }
+        if (mStarts[mid] >= to) {
+            return false;
+        }
+        return isOverlap(mid, from, to) || any(mid + 1, high, from, to);
+    }
+
+    private boolean isOverlap(int i, long from, long to) {
+        // an event with no duration overlaps a range it falls inside
+        return mStarts[i] < to && (mEnds[i] > from || (mEnds[i] == mStarts[i] && mStarts[i] >= from));
+    }
+
+    private static class Interval {
+
+        final Event mEvent;
+        final long mStart;
+        final long mEnd;
+
+        Interval(Event event, long start, long end) {
+            mEvent = event;
+            mStart = start;
+            mEnd = end;
+        }
+    }
+}
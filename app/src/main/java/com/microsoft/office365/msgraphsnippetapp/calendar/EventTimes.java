@@ -0,0 +1,390 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.calendar;
+
+import com.microsoft.office365.microsoftgraphvos.DateTimeTimeZone;
+import com.microsoft.office365.microsoftgraphvos.Event;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import timber.log.Timber;
+
+/**
+ * Converts the {@link DateTimeTimeZone} of an Event to an instant and back.
+ * <p>
+ * Calendars convert thousands of these at a time, so the date and time are parsed by hand into
+ * a long without allocating, and each time zone name, IANA or Windows, is resolved once and
+ * then found in a cache. Use {@link #toMillis(List, long[], long[])} for a whole page of
+ * events; it also replaces each event's time zone name with one shared instance, so a page
+ * decoded from JSON holds one copy of each name instead of one per event.
+ */
+public class EventTimes {
+
+    /**
+     * The value of a time that couldn't be converted
+     */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    static final String UTC = "UTC";
+
+    private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+    private static final long MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
+    private static final int[] DAYS_IN_MONTH = {31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+    private static final DateTimeFormatter LOCAL_FORMAT =
+            ISODateTimeFormat.dateHourMinuteSecondMillis();
+
+    // the Windows names Outlook uses, with the IANA zone each is the main one of
+    private static final String[] WINDOWS_ZONES = {
+            "Dateline Standard Time", "Etc/GMT+12",
+            "UTC-11", "Etc/GMT+11",
+            "Hawaiian Standard Time", "Pacific/Honolulu",
+            "Alaskan Standard Time", "America/Anchorage",
+            "Pacific Standard Time", "America/Los_Angeles",
+            "Pacific Standard Time (Mexico)", "America/Tijuana",
+            "US Mountain Standard Time", "America/Phoenix",
+            "Mountain Standard Time", "America/Denver",
+            "Central America Standard Time", "America/Guatemala",
+            "Central Standard Time", "America/Chicago",
+            "Central Standard Time (Mexico)", "America/Mexico_City",
+            "Canada Central Standard Time", "America/Regina",
+            "SA Pacific Standard Time", "America/Bogota",
+            "Eastern Standard Time", "America/New_York",
+            "US Eastern Standard Time", "America/Indiana/Indianapolis",
+            "Atlantic Standard Time", "America/Halifax",
+            "SA Western Standard Time", "America/La_Paz",
+            "Newfoundland Standard Time", "America/St_Johns",
+            "E. South America Standard Time", "America/Sao_Paulo",
+            "Argentina Standard Time", "America/Argentina/Buenos_Aires",
+            "UTC-02", "Etc/GMT+2",
+            "Azores Standard Time", "Atlantic/Azores",
+            "UTC", "UTC",
+            "GMT Standard Time", "Europe/London",
+            "Greenwich Standard Time", "Atlantic/Reykjavik",
+            "W. Europe Standard Time", "Europe/Berlin",
+            "Central Europe Standard Time", "Europe/Budapest",
+            "Romance Standard Time", "Europe/Paris",
+            "Central European Standard Time", "Europe/Warsaw",
+            "W. Central Africa Standard Time", "Africa/Lagos",
+            "GTB Standard Time", "Europe/Bucharest",
+            "E. Europe Standard Time", "Europe/Chisinau",
+            "Egypt Standard Time", "Africa/Cairo",
+            "South Africa Standard Time", "Africa/Johannesburg",
+            "FLE Standard Time", "Europe/Kiev",
+            "Israel Standard Time", "Asia/Jerusalem",
+            "Arabic Standard Time", "Asia/Baghdad",
+            "Arab Standard Time", "Asia/Riyadh",
+            "Russian Standard Time", "Europe/Moscow",
+            "E. Africa Standard Time", "Africa/Nairobi",
+            "Iran Standard Time", "Asia/Tehran",
+            "Arabian Standard Time", "Asia/Dubai",
+            "Pakistan Standard Time", "Asia/Karachi",
+            "India Standard Time", "Asia/Kolkata",
+            "Nepal Standard Time", "Asia/Kathmandu",
+            "Bangladesh Standard Time", "Asia/Dhaka",
+            "SE Asia Standard Time", "Asia/Bangkok",
+            "China Standard Time", "Asia/Shanghai",
+            "Singapore Standard Time", "Asia/Singapore",
+            "Taipei Standard Time", "Asia/Taipei",
+            "W. Australia Standard Time", "Australia/Perth",
+            "Tokyo Standard Time", "Asia/Tokyo",
+            "Korea Standard Time", "Asia/Seoul",
+            "Cen. Australia Standard Time", "Australia/Adelaide",
+            "AUS Central Standard Time", "Australia/Darwin",
+            "E. Australia Standard Time", "Australia/Brisbane",
+            "AUS Eastern Standard Time", "Australia/Sydney",
+            "Tasmania Standard Time", "Australia/Hobart",
+            "New Zealand Standard Time", "Pacific/Auckland",
+            "Tonga Standard Time", "Pacific/Tongatapu",
+            "tzone://Microsoft/Utc", "UTC"
+    };
+
+    private static final Map<String, String> sWindowsToIana = new HashMap<>();
+    private static final ConcurrentMap<String, Zone> sZones = new ConcurrentHashMap<>();
+    private static final Zone sUtc = new Zone(UTC, DateTimeZone.UTC);
+    // the offset parseLocal reports through, one per thread to avoid allocating
+    private static final ThreadLocal<int[]> sOffset = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    static {
+        for (int i = 0; i < WINDOWS_ZONES.length; i += 2) {
+            sWindowsToIana.put(WINDOWS_ZONES[i], WINDOWS_ZONES[i + 1]);
+        }
+        sZones.put(UTC, sUtc);
+    }
+
+    private EventTimes() {
+    }
+
+    /**
+     * @param dateTimeTimeZone A local date and time and the time zone it is in
+     * @return the instant in milliseconds since the epoch
+     * @throws IllegalArgumentException if the date and time can't be parsed
+     */
+    public static long toMillis(DateTimeTimeZone dateTimeTimeZone) {
+        return zone(dateTimeTimeZone.timeZone).toMillis(dateTimeTimeZone.dateTime);
+    }
+
+    /**
+     * Converts the start and end of a page of events. Events whose start or end is missing or
+     * can't be parsed get {@link #INVALID} for it.
+     *
+     * @param events The events
+     * @param starts Receives the start of each event, in milliseconds since the epoch
+     * @param ends   Receives the end of each event
+     * @return the number of events whose start and end were both converted
+     */
+    public static int toMillis(List<Event> events, long[] starts, long[] ends) {
+        int converted = 0;
+        // a page is nearly always in one time zone
+        Zone last = sUtc;
+        for (int i = 0; i < events.size(); i++) {
+            Event event = events.get(i);
+            last = zone(event.start, last);
+            starts[i] = toMillis(event.start, last);
+            last = zone(event.end, last);
+            ends[i] = toMillis(event.end, last);
+            if (INVALID != starts[i] && INVALID != ends[i]) {
+                converted++;
+            }
+        }
+        return converted;
+    }
+
+    /**
+     * @param millis   An instant in milliseconds since the epoch
+     * @param timeZone The time zone to express it in, IANA or Windows
+     * @return the local date and time of the instant in the zone
+     */
+    public static DateTimeTimeZone toDateTimeTimeZone(long millis, String timeZone) {
+        Zone zone = zone(timeZone);
+        DateTimeTimeZone dateTimeTimeZone = new DateTimeTimeZone();
+        dateTimeTimeZone.dateTime = LOCAL_FORMAT.withZone(zone.mZone).print(millis);
+        dateTimeTimeZone.timeZone = zone.mName;
+        return dateTimeTimeZone;
+    }
+
+    /**
+     * @param timeZone The name of a time zone, IANA or Windows
+     * @return the zone; an unknown or missing name is taken as UTC
+     */
+    public static DateTimeZone toDateTimeZone(String timeZone) {
+        return zone(timeZone).mZone;
+    }
+
+    private static Zone zone(DateTimeTimeZone dateTimeTimeZone, Zone last) {
+        if (null == dateTimeTimeZone) {
+            return last;
+        }
+        String name = dateTimeTimeZone.timeZone;
+        if (null == name) {
+            return sUtc;
+        }
+        Zone zone = name.equals(last.mName) ? last : zone(name);
+        dateTimeTimeZone.timeZone = zone.mName;
+        return zone;
+    }
+
+    private static long toMillis(DateTimeTimeZone dateTimeTimeZone, Zone zone) {
+        if (null == dateTimeTimeZone || null == dateTimeTimeZone.dateTime) {
+            return INVALID;
+        }
+        try {
+            return zone.toMillis(dateTimeTimeZone.dateTime);
+        } catch (IllegalArgumentException e) {
+            Timber.w("Can't parse %s", dateTimeTimeZone.dateTime);
+            return INVALID;
+        }
+    }
+
+    private static Zone zone(String timeZone) {
+        if (null == timeZone) {
+            return sUtc;
+        }
+        Zone zone = sZones.get(timeZone);
+        if (null == zone) {
+            zone = new Zone(timeZone, resolve(timeZone));
+            Zone raced = sZones.putIfAbsent(timeZone, zone);
+            if (null != raced) {
+                zone = raced;
+            }
+        }
+        return zone;
+    }
+
+    private static DateTimeZone resolve(String timeZone) {
+        String iana = sWindowsToIana.get(timeZone);
+        try {
+            return DateTimeZone.forID(null == iana ? timeZone : iana);
+        } catch (IllegalArgumentException e) {
+            // logged once, as the result is cached
+            Timber.w("Unknown time zone %s, assuming UTC", timeZone);
+            return DateTimeZone.UTC;
+        }
+    }
+
+    /**
+     * Parses an ISO 8601 date, optionally with a time, fractional seconds and an offset, e.g.
+     * 2017-01-31T09:30:00.0000000, into milliseconds since the epoch in the local time line.
+     * The offset, if any, is returned in minutes through the offset array.
+     */
+    static long parseLocal(String text, int[] offsetMinutes) {
+        int length = text.length();
+        if (length < 10 || '-' != text.charAt(4) || '-' != text.charAt(7)) {
+            throw invalid(text);
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        if (month < 1 || month > 12 || day < 1 || day > DAYS_IN_MONTH[month - 1]
+                || (2 == month && 29 == day && !isLeap(year))) {
+            throw invalid(text);
+        }
+        long millis = daysFromCivil(year, month, day) * MILLIS_PER_DAY;
+        offsetMinutes[0] = Integer.MIN_VALUE;
+        int i = 10;
+        if (i == length) {
+            return millis;
+        }
+        if ('T' != text.charAt(i) || length < i + 6 || ':' != text.charAt(i + 3)) {
+            throw invalid(text);
+        }
+        int hour = digits(text, i + 1, 2);
+        int minute = digits(text, i + 4, 2);
+        int second = 0;
+        int fraction = 0;
+        i += 6;
+        if (i < length && ':' == text.charAt(i)) {
+            second = digits(text, i + 1, 2);
+            i += 3;
+            if (i < length && '.' == text.charAt(i)) {
+                int scale = 100;
+                for (i++; i < length && isDigit(text.charAt(i)); i++) {
+                    fraction += scale * (text.charAt(i) - '0');
+                    scale /= 10;
+                }
+            }
+        }
+        if (hour > 23 || minute > 59 || second > 59) {
+            throw invalid(text);
+        }
+        millis += ((hour * 60L + minute) * 60 + second) * 1000 + fraction;
+        if (i == length) {
+            return millis;
+        }
+        char sign = text.charAt(i);
+        if ('Z' == sign && i + 1 == length) {
+            offsetMinutes[0] = 0;
+        } else if (('+' == sign || '-' == sign) && i + 6 == length && ':' == text.charAt(i + 3)) {
+            int offset = digits(text, i + 1, 2) * 60 + digits(text, i + 4, 2);
+            offsetMinutes[0] = '-' == sign ? -offset : offset;
+        } else {
+            throw invalid(text);
+        }
+        return millis;
+    }
+
+    private static int digits(String text, int start, int count) {
+        if (start + count > text.length()) {
+            throw invalid(text);
+        }
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (!isDigit(c)) {
+                throw invalid(text);
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLeap(int year) {
+        return 0 == year % 4 && (0 != year % 100 || 0 == year % 400);
+    }
+
+    // days since 1970-01-01 of a proleptic Gregorian date
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static IllegalArgumentException invalid(String text) {
+        return new IllegalArgumentException("Invalid date and time: " + text);
+    }
+
+    /**
+     * A resolved time zone, under the name it was first seen by
+     */
+    private static class Zone {
+
+        final String mName;
+        final DateTimeZone mZone;
+        // the offset in force around the last instant converted; events close together in
+        // time, as a page of them is, share it and skip the zone's rules
+        private volatile Span mSpan = new Span(0, 0, 0);
+
+        Zone(String name, DateTimeZone zone) {
+            mName = name;
+            mZone = zone;
+        }
+
+        long toMillis(String dateTime) {
+            int[] offset = sOffset.get();
+            long local = parseLocal(dateTime, offset);
+            if (Integer.MIN_VALUE != offset[0]) {
+                // an explicit offset wins over the zone
+                return local - offset[0] * MILLIS_PER_MINUTE;
+            }
+            Span span = mSpan;
+            long utc = local - span.mOffset;
+            if (utc >= span.mFrom && utc < span.mTo) {
+                return utc;
+            }
+            // a repeated local time is taken as the earlier instant, and a skipped one is
+            // moved past the gap
+            utc = local - mZone.getOffsetFromLocal(local);
+            long previous = mZone.previousTransition(utc + 1);
+            long next = mZone.nextTransition(utc);
+            // kept a day clear of the transitions, where a local time can map to two instants
+            mSpan = new Span(previous == utc + 1 ? Long.MIN_VALUE : previous + MILLIS_PER_DAY,
+                    next == utc ? Long.MAX_VALUE : next - MILLIS_PER_DAY,
+                    mZone.getOffset(utc));
+            return utc;
+        }
+    }
+
+    private static class Span {
+
+        final long mFrom;
+        final long mTo;
+        final int mOffset;
+
+        Span(long from, long to, int offset) {
+            mFrom = from;
+            mTo = to;
+            mOffset = offset;
+        }
+    }
+}
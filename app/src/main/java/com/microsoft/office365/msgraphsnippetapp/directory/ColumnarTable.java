@@ -0,0 +1,430 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.directory;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rows of directory objects stored column by column in a few primitive arrays.
+ * <p>
+ * Ids that are GUIDs, as Graph ids are, take two longs, and a primitive open-addressing table
+ * maps them to rows. The strings that are mostly unique, such as names, are UTF-8 in a single
+ * byte array, each row's run of them found through a bit-packed offset. The strings that
+ * repeat, such as departments, are stored once in a dictionary and each row holds a code
+ * packed into as few bits as the dictionary needs. Flags are one bit per row.
+ */
+final class ColumnarTable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int EMPTY = 0;
+    // the value of each hex digit, -1 for other ASCII characters
+    private static final byte[] HEX = new byte['f' + 1];
+
+    static {
+        Arrays.fill(HEX, (byte) -1);
+        for (int digit = 0; digit < 16; digit++) {
+            HEX[Character.forDigit(digit, 16)] = (byte) digit;
+            HEX[Character.toUpperCase(Character.forDigit(digit, 16))] = (byte) digit;
+        }
+    }
+
+    private final int mRows;
+    private final long[] mIds;
+    // the few ids that aren't GUIDs
+    private final Map<String, Integer> mOtherIds;
+    private final Map<Integer, String> mOtherIdsByRow;
+    private final int[] mIdTable;
+    private final byte[] mText;
+    private final PackedInts mTextOffsets;
+    private final String[][] mDictionaries;
+    private final PackedInts[] mCodes;
+    private final BitSet[] mFlags;
+
+    private ColumnarTable(Builder builder) {
+        mRows = builder.mRows;
+        mIds = new long[2 * mRows];
+        System.arraycopy(builder.mIds, 0, mIds, 0, mIds.length);
+        mOtherIds = builder.mOtherIds;
+        mOtherIdsByRow = new HashMap<>();
+        for (Map.Entry<String, Integer> other : mOtherIds.entrySet()) {
+            mOtherIdsByRow.put(other.getValue(), other.getKey());
+        }
+        mIdTable = buildIdTable();
+        mText = builder.mText.toByteArray();
+        mTextOffsets = PackedInts.of(builder.mTextOffsets, mRows);
+        mDictionaries = new String[builder.mDictionaries.length][];
+        mCodes = new PackedInts[builder.mCodes.length];
+        for (int column = 0; column < mCodes.length; column++) {
+            List<String> values = builder.mDictionaries[column].mValues;
+            mDictionaries[column] = values.toArray(new String[values.size()]);
+            mCodes[column] = PackedInts.of(builder.mCodes[column], mRows);
+        }
+        mFlags = builder.mFlags;
+    }
+
+    int size() {
+        return mRows;
+    }
+
+    /**
+     * @return the row of an id, or -1 if there is none
+     */
+    int find(String id) {
+        if (!isGuid(id)) {
+            Integer row = mOtherIds.get(id);
+            return null == row ? -1 : row;
+        }
+        long high = parseHigh(id);
+        long low = parseLow(id);
+        for (int slot = slot(high, low, mIdTable.length); ; slot = next(slot, mIdTable.length)) {
+            int entry = mIdTable[slot];
+            if (EMPTY == entry) {
+                return -1;
+            }
+            int row = entry - 1;
+            if (mIds[2 * row] == high && mIds[2 * row + 1] == low) {
+                return row;
+            }
+        }
+    }
+
+    String id(int row) {
+        String other = mOtherIdsByRow.get(row);
+        return null != other ? other : formatGuid(mIds[2 * row], mIds[2 * row + 1]);
+    }
+
+    String text(int row, int column) {
+        int offset = (int) mTextOffsets.get(row);
+        for (int i = 0; ; i++) {
+            // each string is its UTF-8 length plus one, as a varint, then its bytes
+            int length = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = mText[offset++];
+                length |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            if (i == column) {
+                return 0 == length ? null : new String(mText, offset, length - 1, UTF_8);
+            }
+            offset += Math.max(0, length - 1);
+        }
+    }
+
+    String coded(int row, int column) {
+        return mDictionaries[column][(int) mCodes[column].get(row)];
+    }
+
+    /**
+     * @return the code a value has in a column, or -1 if no row has it
+     */
+    int code(int column, String value) {
+        String[] dictionary = mDictionaries[column];
+        for (int code = 0; code < dictionary.length; code++) {
+            if (null == value ? null == dictionary[code] : value.equals(dictionary[code])) {
+                return code;
+            }
+        }
+        return -1;
+    }
+
+    int codeOf(int row, int column) {
+        return (int) mCodes[column].get(row);
+    }
+
+    boolean flag(int row, int column) {
+        return mFlags[column].get(row);
+    }
+
+    /**
+     * @return roughly how many bytes the table's arrays take
+     */
+    long sizeInBytes() {
+        long size = 8L * mIds.length + 4L * mIdTable.length + mText.length
+                + mTextOffsets.sizeInBytes();
+        for (int column = 0; column < mCodes.length; column++) {
+            size += mCodes[column].sizeInBytes();
+            for (String value : mDictionaries[column]) {
+                size += null == value ? 0 : 40 + 2 * value.length();
+            }
+        }
+        for (BitSet flags : mFlags) {
+            size += flags.size() / 8;
+        }
+        return size + 100L * mOtherIds.size();
+    }
+
+    private int[] buildIdTable() {
+        // sized for a load factor of 3/4, which keeps probe sequences short
+        int[] table = new int[Math.max(2, mRows + mRows / 3 + 1)];
+        for (int row = 0; row < mRows; row++) {
+            if (mOtherIdsByRow.containsKey(row)) {
+                continue;
+            }
+            int slot = slot(mIds[2 * row], mIds[2 * row + 1], table.length);
+            while (EMPTY != table[slot]) {
+                slot = next(slot, table.length);
+            }
+            table[slot] = row + 1;
+        }
+        return table;
+    }
+
+    private static int slot(long high, long low, int capacity) {
+        long h = high * 0x9E3779B97F4A7C15L ^ low;
+        h ^= h >>> 33;
+        h *= 0xC2B2AE3D27D4EB4FL;
+        // maps the hash onto the table without needing a power of two capacity
+        return (int) (((h >>> 32) * capacity) >>> 32);
+    }
+
+    private static int next(int slot, int capacity) {
+        return slot + 1 == capacity ? 0 : slot + 1;
+    }
+
+    static boolean isGuid(String id) {
+        if (null == id || 36 != id.length()) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = id.charAt(i);
+            boolean dash = 8 == i || 13 == i || 18 == i || 23 == i;
+            if (dash ? '-' != c : c >= HEX.length || HEX[c] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseHigh(String guid) {
+        return parseHex(guid, 0, 8) << 32 | parseHex(guid, 9, 13) << 16 | parseHex(guid, 14, 18);
+    }
+
+    private static long parseLow(String guid) {
+        return parseHex(guid, 19, 23) << 48 | parseHex(guid, 24, 36);
+    }
+
+    private static long parseHex(String s, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = value << 4 | HEX[s.charAt(i)];
+        }
+        return value;
+    }
+
+    private static String formatGuid(long high, long low) {
+        char[] chars = new char[36];
+        formatHex(chars, 0, high >>> 32, 8);
+        chars[8] = '-';
+        formatHex(chars, 9, high >>> 16, 4);
+        chars[13] = '-';
+        formatHex(chars, 14, high, 4);
+        chars[18] = '-';
+        formatHex(chars, 19, low >>> 48, 4);
+        chars[23] = '-';
+        formatHex(chars, 24, low, 12);
+        return new String(chars);
+    }
+
+    private static void formatHex(char[] chars, int start, long value, int digits) {
+        for (int i = start + digits - 1; i >= start; i--) {
+            chars[i] = Character.forDigit((int) (value & 0xf), 16);
+            value >>>= 4;
+        }
+    }
+
+    /**
+     * Appends rows, then builds the table. Every row must set the same columns.
+     */
+    static class Builder {
+
+        private int mRows;
+        private long[] mIds = new long[64];
+        private final Map<String, Integer> mOtherIds = new HashMap<>();
+        private final ByteArrayOutputStream mText = new ByteArrayOutputStream();
+        private int[] mTextOffsets = new int[32];
+        private final Dictionary[] mDictionaries;
+        private final int[][] mCodes;
+        private final BitSet[] mFlags;
+        private final int mTextColumns;
+        // text columns added to the current row
+        private int mTextColumn;
+
+        Builder(int textColumns, int codedColumns, int flagColumns) {
+            mTextColumns = textColumns;
+            mDictionaries = new Dictionary[codedColumns];
+            mCodes = new int[codedColumns][32];
+            for (int column = 0; column < codedColumns; column++) {
+                mDictionaries[column] = new Dictionary();
+            }
+            mFlags = new BitSet[flagColumns];
+            for (int column = 0; column < flagColumns; column++) {
+                mFlags[column] = new BitSet();
+            }
+        }
+
+        int size() {
+            return mRows;
+        }
+
+        /**
+         * Starts a row; its text columns are then added in order
+         *
+         * @return the row
+         */
+        int addRow(String id) {
+            checkTextColumns();
+            int row = mRows++;
+            if (2 * mRows > mIds.length) {
+                mIds = grow(mIds);
+            }
+            if (mRows > mTextOffsets.length) {
+                mTextOffsets = grow(mTextOffsets);
+                for (int column = 0; column < mCodes.length; column++) {
+                    mCodes[column] = grow(mCodes[column]);
+                }
+            }
+            if (isGuid(id)) {
+                mIds[2 * row] = parseHigh(id);
+                mIds[2 * row + 1] = parseLow(id);
+            } else {
+                mOtherIds.put(id, row);
+            }
+            mTextOffsets[row] = mText.size();
+            mTextColumn = 0;
+            return row;
+        }
+
+        void text(String value) {
+            if (mTextColumn++ >= mTextColumns) {
+                throw new IllegalStateException("Too many text columns");
+            }
+            byte[] bytes = null == value ? new byte[0] : value.getBytes(UTF_8);
+            int length = null == value ? 0 : bytes.length + 1;
+            while (length >= 0x80) {
+                mText.write(length & 0x7f | 0x80);
+                length >>>= 7;
+            }
+            mText.write(length);
+            mText.write(bytes, 0, bytes.length);
+        }
+
+        void coded(int row, int column, String value) {
+            mCodes[column][row] = mDictionaries[column].code(value);
+        }
+
+        void flag(int row, int column, boolean value) {
+            mFlags[column].set(row, value);
+        }
+
+        ColumnarTable build() {
+            checkTextColumns();
+            return new ColumnarTable(this);
+        }
+
+        private void checkTextColumns() {
+            if (mRows > 0 && mTextColumn != mTextColumns) {
+                throw new IllegalStateException("Row " + (mRows - 1) + " has "
+                        + mTextColumn + " of " + mTextColumns + " text columns");
+            }
+        }
+
+        private static long[] grow(long[] array) {
+            long[] grown = new long[array.length * 2];
+            System.arraycopy(array, 0, grown, 0, array.length);
+            return grown;
+        }
+
+        private static int[] grow(int[] array) {
+            int[] grown = new int[array.length * 2];
+            System.arraycopy(array, 0, grown, 0, array.length);
+            return grown;
+        }
+    }
+
+    /**
+     * The distinct values of a column, code 0 being null
+     */
+    private static class Dictionary {
+
+        final List<String> mValues = new ArrayList<>();
+        final Map<String, Integer> mCodes = new HashMap<>();
+
+        Dictionary() {
+            mValues.add(null);
+        }
+
+        int code(String value) {
+            if (null == value) {
+                return 0;
+            }
+            Integer code = mCodes.get(value);
+            if (null == code) {
+                code = mValues.size();
+                mValues.add(value);
+                mCodes.put(value, code);
+            }
+            return code;
+        }
+    }
+
+    /**
+     * Non-negative numbers packed into as few bits each as the largest of them needs
+     */
+    static final class PackedInts {
+
+        private final long[] mWords;
+        private final int mBits;
+        private final long mMask;
+
+        private PackedInts(long[] words, int bits) {
+            mWords = words;
+            mBits = bits;
+            mMask = 64 == bits ? -1L : (1L << bits) - 1;
+        }
+
+        static PackedInts of(int[] values, int count) {
+            int max = 0;
+            for (int i = 0; i < count; i++) {
+                max |= values[i];
+            }
+            int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(max));
+            long[] words = new long[(int) (((long) count * bits + 63) / 64)];
+            for (int i = 0; i < count; i++) {
+                long bit = (long) i * bits;
+                int word = (int) (bit >>> 6);
+                int shift = (int) (bit & 63);
+                words[word] |= (long) values[i] << shift;
+                if (shift + bits > 64) {
+                    words[word + 1] |= (long) values[i] >>> (64 - shift);
+                }
+            }
+            return new PackedInts(words, bits);
+        }
+
+        long get(int index) {
+            long bit = (long) index * mBits;
+            int word = (int) (bit >>> 6);
+            int shift = (int) (bit & 63);
+            long value = mWords[word] >>> shift;
+            if (shift + mBits > 64) {
+                value |= mWords[word + 1] << (64 - shift);
+            }
+            return value & mMask;
+        }
+
+        long sizeInBytes() {
+            return 8L * mWords.length;
+        }
+    }
+}
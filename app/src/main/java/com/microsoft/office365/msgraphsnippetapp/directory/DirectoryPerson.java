@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.directory;
+
+import com.microsoft.office365.microsoftgraphvos.Contact;
+import com.microsoft.office365.microsoftgraphvos.User;
+
+/**
+ * A user or organizational contact as shown in a people picker
+ */
+public class DirectoryPerson {
+
+    public final String id;
+    public final String displayName;
+    public final String mail;
+    public final String userPrincipalName;
+    public final boolean isContact;
+
+    public DirectoryPerson(String id,
+                           String displayName,
+                           String mail,
+                           String userPrincipalName,
+                           boolean isContact) {
+        this.id = id;
+        this.displayName = displayName;
+        this.mail = mail;
+        this.userPrincipalName = userPrincipalName;
+        this.isContact = isContact;
+    }
+
+    public static DirectoryPerson of(User user) {
+        return new DirectoryPerson(
+                user.id, user.displayName, user.mail, user.userPrincipalName, false);
+    }
+
+    public static DirectoryPerson of(Contact contact) {
+        return new DirectoryPerson(contact.id, contact.displayName, contact.mail, null, true);
+    }
+
+    /**
+     * Delta pages only carry the properties that changed, so fill in the rest from what was
+     * known before
+     *
+     * @param previous What was known about this person, or null
+     * @return this person, with missing properties taken from previous
+     */
+    DirectoryPerson mergedWith(DirectoryPerson previous) {
+        if (null == previous) {
+            return this;
+        }
+        return new DirectoryPerson(
+                id,
+                null == displayName ? previous.displayName : displayName,
+                null == mail ? previous.mail : mail,
+                null == userPrincipalName ? previous.userPrincipalName : userPrincipalName,
+                isContact);
+    }
+
+    @Override
+    public String toString() {
+        return displayName + " <" + (null == mail ? userPrincipalName : mail) + ">";
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.directory;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Type-ahead search over the directory, kept fresh as changes come in.
+ * <p>
+ * Searches read an immutable snapshot and never wait for an update. A snapshot is a
+ * {@link PeopleIndex} plus the changes made since it was built: the people it holds that have
+ * since changed or gone are hidden, and the new or changed people are kept in a small overlay
+ * that is scanned on every search. Once the overlay grows past {@link #MAX_OVERLAY} people the
+ * index is rebuilt with the changes folded in.
+ */
+public class DirectorySearch {
+
+    static final int MAX_OVERLAY = 1024;
+
+    private static final Comparator<Hit> BY_SORT_KEY = new Comparator<Hit>() {
+        @Override
+        public int compare(Hit lhs, Hit rhs) {
+            return lhs.mSortKey.compareTo(rhs.mSortKey);
+        }
+    };
+
+    private volatile Snapshot mSnapshot = new Snapshot(
+            PeopleIndex.build(Collections.<DirectoryPerson>emptyList()),
+            new BitSet(),
+            Collections.<String, DirectoryPerson>emptyMap());
+
+    /**
+     * Finds the people whose name, mail or user principal name has a word starting with each
+     * word of the query
+     *
+     * @param query What has been typed so far
+     * @param limit The most people to return
+     * @return the matching people, in display name order
+     */
+    public List<DirectoryPerson> search(String query, int limit) {
+        Snapshot snapshot = mSnapshot;
+        int[] positions = snapshot.mIndex.search(query, limit, snapshot.mHidden);
+        if (snapshot.mOverlay.isEmpty()) {
+            List<DirectoryPerson> people = new ArrayList<>(positions.length);
+            for (int position : positions) {
+                people.add(snapshot.mIndex.get(position));
+            }
+            return people;
+        }
+
+        List<Hit> hits = new ArrayList<>();
+        for (int position : positions) {
+            hits.add(new Hit(snapshot.mIndex.get(position), snapshot.mIndex.getSortKey(position)));
+        }
+        for (DirectoryPerson person : snapshot.mOverlay.values()) {
+            if (PeopleIndex.matches(person, query)) {
+                hits.add(new Hit(person, PeopleIndex.sortKey(person)));
+            }
+        }
+        Collections.sort(hits, BY_SORT_KEY);
+        List<DirectoryPerson> people = new ArrayList<>(Math.min(limit, hits.size()));
+        for (int i = 0; i < hits.size() && i < limit; i++) {
+            people.add(hits.get(i).mPerson);
+        }
+        return people;
+    }
+
+    /**
+     * @return the number of people that can be found
+     */
+    public int size() {
+        Snapshot snapshot = mSnapshot;
+        return snapshot.mIndex.size() - snapshot.mHidden.cardinality() + snapshot.mOverlay.size();
+    }
+
+    /**
+     * Replaces everyone with a new set of people, building a new index
+     *
+     * @param people The people to search
+     */
+    public synchronized void replaceAll(Collection<DirectoryPerson> people) {
+        Map<String, DirectoryPerson> byId = new LinkedHashMap<>();
+        for (DirectoryPerson person : people) {
+            byId.put(person.id, person);
+        }
+        mSnapshot = new Snapshot(
+                PeopleIndex.build(byId.values()),
+                new BitSet(),
+                Collections.<String, DirectoryPerson>emptyMap());
+    }
+
+    /**
+     * Applies a round of changes
+     *
+     * @param changed    The people that were added or changed
+     * @param removedIds The ids of the people that were removed
+     */
+    public synchronized void apply(Collection<DirectoryPerson> changed, Collection<String> removedIds) {
+        PeopleIndex index = mSnapshot.mIndex;
+        BitSet hidden = (BitSet) mSnapshot.mHidden.clone();
+        Map<String, DirectoryPerson> overlay = new LinkedHashMap<>(mSnapshot.mOverlay);
+
+        for (String id : removedIds) {
+            overlay.remove(id);
+            hide(index, hidden, id);
+        }
+        for (DirectoryPerson person : changed) {
+            DirectoryPerson previous = overlay.get(person.id);
+            int position = index.positionOf(person.id);
+            if (null == previous && -1 != position && !hidden.get(position)) {
+                previous = index.get(position);
+            }
+            hide(index, hidden, person.id);
+            overlay.put(person.id, person.mergedWith(previous));
+        }
+
+        if (overlay.size() <= MAX_OVERLAY) {
+            mSnapshot = new Snapshot(index, hidden, overlay);
+            return;
+        }
+        List<DirectoryPerson> people = new ArrayList<>(index.size() + overlay.size());
+        for (int position = 0; position < index.size(); position++) {
+            if (!hidden.get(position)) {
+                people.add(index.get(position));
+            }
+        }
+        people.addAll(overlay.values());
+        mSnapshot = new Snapshot(
+                PeopleIndex.build(people),
+                new BitSet(),
+                Collections.<String, DirectoryPerson>emptyMap());
+    }
+
+    private static void hide(PeopleIndex index, BitSet hidden, String id) {
+        int position = index.positionOf(id);
+        if (-1 != position) {
+            hidden.set(position);
+        }
+    }
+
+    private static class Snapshot {
+
+        final PeopleIndex mIndex;
+        final BitSet mHidden;
+        final Map<String, DirectoryPerson> mOverlay;
+
+        Snapshot(PeopleIndex index, BitSet hidden, Map<String, DirectoryPerson> overlay) {
+            mIndex = index;
+            mHidden = hidden;
+            mOverlay = overlay;
+        }
+    }
+
+    private static class Hit {
+
+        final DirectoryPerson mPerson;
+        final String mSortKey;
+
+        Hit(DirectoryPerson person, String sortKey) {
+            mPerson = person;
+            mSortKey = sortKey;
+        }
+    }
+}
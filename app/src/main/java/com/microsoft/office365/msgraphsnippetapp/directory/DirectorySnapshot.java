@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.directory;
+
+import com.google.gson.Gson;
+import com.microsoft.office365.microsoftgraphvos.Group;
+import com.microsoft.office365.microsoftgraphvos.User;
+import com.microsoft.office365.msgraphapiservices.MSGraphGroupsService;
+import com.microsoft.office365.msgraphapiservices.MSGraphUserService;
+import com.microsoft.office365.msgraphsnippetapp.util.JsonCollectionDecoder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+
+/**
+ * An immutable in-memory copy of the tenant's users and groups, compact enough to hold a
+ * large directory.
+ * <p>
+ * Users and groups are rows of a {@link ColumnarTable} rather than objects: ids are two longs,
+ * names are UTF-8 bytes, and the strings that repeat across users, namely mail domains,
+ * departments, job titles and offices, are dictionary codes of a few bits. An address whose
+ * domain is coded is stored as its local part, and a mail address equal to the user principal
+ * name is stored as a flag. This takes a few tens of bytes per user instead of the hundreds of
+ * a {@link User}.
+ * <p>
+ * Rows are numbered from 0; look them up by id with {@link #findUser} or {@link #findGroup}
+ * and read their properties with the other methods. Properties are decoded on each read, so
+ * keep what is read repeatedly.
+ */
+public class DirectorySnapshot {
+
+    static final String USER_SELECT =
+            "id,displayName,userPrincipalName,mail,department,jobTitle,officeLocation,accountEnabled";
+    static final String GROUP_SELECT =
+            "id,displayName,mailNickname,mailEnabled,securityEnabled,groupTypes,visibility";
+    static final int PAGE_SIZE = 999;
+
+    // user columns
+    private static final int USER_DISPLAY_NAME = 0;
+    private static final int USER_PRINCIPAL_LOCAL = 1;
+    private static final int USER_MAIL_LOCAL = 2;
+    private static final int USER_TEXT_COLUMNS = 3;
+
+    private static final int USER_PRINCIPAL_DOMAIN = 0;
+    private static final int USER_MAIL_DOMAIN = 1;
+    private static final int USER_DEPARTMENT = 2;
+    private static final int USER_JOB_TITLE = 3;
+    private static final int USER_OFFICE = 4;
+    private static final int USER_CODED_COLUMNS = 5;
+
+    private static final int USER_ACCOUNT_ENABLED = 0;
+    private static final int USER_MAIL_IS_PRINCIPAL = 1;
+    private static final int USER_FLAG_COLUMNS = 2;
+
+    // group columns
+    private static final int GROUP_DISPLAY_NAME = 0;
+    private static final int GROUP_MAIL_NICKNAME = 1;
+    private static final int GROUP_TEXT_COLUMNS = 2;
+
+    private static final int GROUP_VISIBILITY = 0;
+    private static final int GROUP_CODED_COLUMNS = 1;
+
+    private static final int GROUP_MAIL_ENABLED = 0;
+    private static final int GROUP_SECURITY_ENABLED = 1;
+    private static final int GROUP_UNIFIED = 2;
+    private static final int GROUP_FLAG_COLUMNS = 3;
+
+    private final ColumnarTable mUsers;
+    private final ColumnarTable mGroups;
+
+    private DirectorySnapshot(ColumnarTable users, ColumnarTable groups) {
+        mUsers = users;
+        mGroups = groups;
+    }
+
+    /**
+     * Pages through every user and group of the tenant, decoding each page as it arrives. This
+     * makes many requests, so call it off the main thread.
+     *
+     * @param userService   The service to list users with
+     * @param groupsService The service to list groups with
+     * @param version       The version of the API to use (beta, v1, etc...)
+     * @return the snapshot
+     * @throws IOException if a page can't be fetched
+     */
+    public static DirectorySnapshot load(final MSGraphUserService userService,
+                                         final MSGraphGroupsService groupsService,
+                                         String version) throws IOException {
+        final Builder builder = new Builder();
+        Gson gson = new Gson();
+        new JsonCollectionDecoder<User>(gson, User.class).decodeAll(
+                userService.streamUsers(version, USER_SELECT, PAGE_SIZE),
+                new JsonCollectionDecoder.NextPage() {
+                    @Override
+                    public Call<ResponseBody> call(String nextLink) {
+                        return userService.streamUsersPage(nextLink);
+                    }
+                },
+                new JsonCollectionDecoder.Sink<User>() {
+                    @Override
+                    public boolean accept(User user) {
+                        builder.addUser(user);
+                        return true;
+                    }
+                });
+
+        Map<String, String> query = new HashMap<>();
+        query.put("$select", GROUP_SELECT);
+        query.put("$top", String.valueOf(PAGE_SIZE));
+        new JsonCollectionDecoder<Group>(gson, Group.class).decodeAll(
+                groupsService.streamGroups(version, query),
+                new JsonCollectionDecoder.NextPage() {
+                    @Override
+                    public Call<ResponseBody> call(String nextLink) {
+                        return groupsService.streamGroupsPage(nextLink);
+                    }
+                },
+                new JsonCollectionDecoder.Sink<Group>() {
+                    @Override
+                    public boolean accept(Group group) {
+                        builder.addGroup(group);
+                        return true;
+                    }
+                });
+        return builder.build();
+    }
+
+    public int getUserCount() {
+        return mUsers.size();
+    }
+
+    /**
+     * @param id The id of a user
+     * @return the user's row, or -1 if there is no such user
+     */
+    public int findUser(String id) {
+        return mUsers.find(id);
+    }
+
+    public String getUserId(int row) {
+        return mUsers.id(row);
+    }
+
+    public String getUserDisplayName(int row) {
+        return mUsers.text(row, USER_DISPLAY_NAME);
+    }
+
+    public String getUserPrincipalName(int row) {
+        return join(mUsers.text(row, USER_PRINCIPAL_LOCAL),
+                mUsers.coded(row, USER_PRINCIPAL_DOMAIN));
+    }
+
+    public String getUserMail(int row) {
+        if (mUsers.flag(row, USER_MAIL_IS_PRINCIPAL)) {
+            return getUserPrincipalName(row);
+        }
+        return join(mUsers.text(row, USER_MAIL_LOCAL), mUsers.coded(row, USER_MAIL_DOMAIN));
+    }
+
+    public String getUserDepartment(int row) {
+        return mUsers.coded(row, USER_DEPARTMENT);
+    }
+
+    public String getUserJobTitle(int row) {
+        return mUsers.coded(row, USER_JOB_TITLE);
+    }
+
+    public String getUserOfficeLocation(int row) {
+        return mUsers.coded(row, USER_OFFICE);
+    }
+
+    public boolean isUserAccountEnabled(int row) {
+        return mUsers.flag(row, USER_ACCOUNT_ENABLED);
+    }
+
+    /**
+     * Finds the users of a department by comparing codes, without decoding any strings
+     *
+     * @param department The department, or null for the users without one
+     * @return the rows of the users in the department, in order
+     */
+    public int[] findUsersInDepartment(String department) {
+        int code = mUsers.code(USER_DEPARTMENT, department);
+        if (code < 0) {
+            return new int[0];
+        }
+        int[] rows = new int[16];
+        int count = 0;
+        for (int row = 0; row < mUsers.size(); row++) {
+            if (code == mUsers.codeOf(row, USER_DEPARTMENT)) {
+                if (count == rows.length) {
+                    rows = Arrays.copyOf(rows, 2 * count);
+                }
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    /**
+     * @return the user of a row as an object, e.g. to hand to code that expects one
+     */
+    public User getUser(int row) {
+        User user = new User();
+        user.id = getUserId(row);
+        user.displayName = getUserDisplayName(row);
+        user.userPrincipalName = getUserPrincipalName(row);
+        user.mail = getUserMail(row);
+        user.department = getUserDepartment(row);
+        user.jobTitle = getUserJobTitle(row);
+        user.officeLocation = getUserOfficeLocation(row);
+        user.accountEnabled = isUserAccountEnabled(row);
+        return user;
+    }
+
+    public int getGroupCount() {
+        return mGroups.size();
+    }
+
+    /**
+     * @param id The id of a group
+     * @return the group's row, or -1 if there is no such group
+     */
+    public int findGroup(String id) {
+        return mGroups.find(id);
+    }
+
+    public String getGroupId(int row) {
+        return mGroups.id(row);
+    }
+
+    public String getGroupDisplayName(int row) {
+        return mGroups.text(row, GROUP_DISPLAY_NAME);
+    }
+
+    public String getGroupMailNickname(int row) {
+        return mGroups.text(row, GROUP_MAIL_NICKNAME);
+    }
+
+    public String getGroupVisibility(int row) {
+        return mGroups.coded(row, GROUP_VISIBILITY);
+    }
+
+    public boolean isGroupMailEnabled(int row) {
+        return mGroups.flag(row, GROUP_MAIL_ENABLED);
+    }
+
+    public boolean isGroupSecurityEnabled(int row) {
+        return mGroups.flag(row, GROUP_SECURITY_ENABLED);
+    }
+
+    /**
+     * @return true if the group is an Office 365 group
+     */
+    public boolean isGroupUnified(int row) {
+        return mGroups.flag(row, GROUP_UNIFIED);
+    }
+
+    /**
+     * @return the group of a row as an object, e.g. to hand to code that expects one
+     */
+    public Group getGroup(int row) {
+        Group group = new Group();
+        group.id = getGroupId(row);
+        group.displayName = getGroupDisplayName(row);
+        group.mailNickname = getGroupMailNickname(row);
+        group.visibility = getGroupVisibility(row);
+        group.mailEnabled = isGroupMailEnabled(row);
+        group.securityEnabled = isGroupSecurityEnabled(row);
+        group.groupTypes = isGroupUnified(row) ? new String[]{Group.UNIFIED} : new String[0];
+        return group;
+    }
+
+    /**
+     * @return roughly how many bytes the snapshot takes
+     */
+    public long getSizeInBytes() {
+        return mUsers.sizeInBytes() + mGroups.sizeInBytes();
+    }
+
+    private static String join(String local, String domain) {
+        if (null == domain) {
+            return local;
+        }
+        return (null == local ? "" : local) + "@" + domain;
+    }
+
+    /**
+     * Adds users and groups one at a time, then builds the snapshot
+     */
+    public static class Builder {
+
+        private final ColumnarTable.Builder mUsers = new ColumnarTable.Builder(
+                USER_TEXT_COLUMNS, USER_CODED_COLUMNS, USER_FLAG_COLUMNS);
+        private final ColumnarTable.Builder mGroups = new ColumnarTable.Builder(
+                GROUP_TEXT_COLUMNS, GROUP_CODED_COLUMNS, GROUP_FLAG_COLUMNS);
+
+        public Builder addUser(User user) {
+            int row = mUsers.addRow(user.id);
+            boolean mailIsPrincipal = null != user.mail && user.mail.equals(user.userPrincipalName);
+            int principalAt = atSign(user.userPrincipalName);
+            int mailAt = mailIsPrincipal ? -1 : atSign(user.mail);
+
+            mUsers.text(user.displayName);
+            mUsers.text(local(user.userPrincipalName, principalAt));
+            mUsers.text(mailIsPrincipal ? null : local(user.mail, mailAt));
+
+            mUsers.coded(row, USER_PRINCIPAL_DOMAIN, domain(user.userPrincipalName, principalAt));
+            mUsers.coded(row, USER_MAIL_DOMAIN, mailIsPrincipal ? null : domain(user.mail, mailAt));
+            mUsers.coded(row, USER_DEPARTMENT, user.department);
+            mUsers.coded(row, USER_JOB_TITLE, user.jobTitle);
+            mUsers.coded(row, USER_OFFICE, user.officeLocation);
+
+            mUsers.flag(row, USER_ACCOUNT_ENABLED, user.accountEnabled);
+            mUsers.flag(row, USER_MAIL_IS_PRINCIPAL, mailIsPrincipal);
+            return this;
+        }
+
+        public Builder addGroup(Group group) {
+            int row = mGroups.addRow(group.id);
+            mGroups.text(group.displayName);
+            mGroups.text(group.mailNickname);
+            mGroups.coded(row, GROUP_VISIBILITY, group.visibility);
+            mGroups.flag(row, GROUP_MAIL_ENABLED, group.mailEnabled);
+            mGroups.flag(row, GROUP_SECURITY_ENABLED, group.securityEnabled);
+            mGroups.flag(row, GROUP_UNIFIED, null != group.groupTypes
+                    && Arrays.asList(group.groupTypes).contains(Group.UNIFIED));
+            return this;
+        }
+
+        public DirectorySnapshot build() {
+            return new DirectorySnapshot(mUsers.build(), mGroups.build());
+        }
+
+        // an address is split at its last @, so its domain can be coded
+        private static int atSign(String address) {
+            return null == address ? -1 : address.lastIndexOf('@');
+        }
+
+        private static String local(String address, int at) {
+            return at < 0 ? address : address.substring(0, at);
+        }
+
+        private static String domain(String address, int at) {
+            return at < 0 ? null : address.substring(at + 1);
+        }
+    }
+}
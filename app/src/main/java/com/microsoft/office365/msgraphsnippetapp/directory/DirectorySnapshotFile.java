@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.directory;
+
+import com.microsoft.office365.microsoftgraphvos.Group;
+import com.microsoft.office365.microsoftgraphvos.User;
+import com.microsoft.office365.msgraphapiservices.MSGraphGroupsService;
+import com.microsoft.office365.msgraphapiservices.MSGraphUserService;
+import com.microsoft.office365.msgraphsnippetapp.util.MappedRecordFile;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A {@link DirectorySnapshot} saved to a {@link MappedRecordFile}, so the directory can be
+ * looked up as soon as the app starts instead of after it has been downloaded again.
+ * <p>
+ * Opening the file maps it without reading it; each lookup reads only the pages of the records
+ * it touches. Open the saved file first and {@link #refresh} it off the main thread, then swap
+ * the new file in and close the old one.
+ */
+public class DirectorySnapshotFile implements Closeable {
+
+    static final int USERS = 1;
+    static final int GROUPS = 2;
+
+    // user strings
+    private static final int USER_DISPLAY_NAME = 0;
+    private static final int USER_PRINCIPAL_NAME = 1;
+    private static final int USER_MAIL = 2;
+    private static final int USER_DEPARTMENT = 3;
+    private static final int USER_JOB_TITLE = 4;
+    private static final int USER_OFFICE = 5;
+    private static final int USER_STRINGS = 6;
+
+    // group strings
+    private static final int GROUP_DISPLAY_NAME = 0;
+    private static final int GROUP_MAIL_NICKNAME = 1;
+    private static final int GROUP_VISIBILITY = 2;
+    private static final int GROUP_STRINGS = 3;
+
+    // the one long of each record holds its flags
+    private static final int FLAGS = 0;
+    private static final long ACCOUNT_ENABLED = 1;
+    private static final long MAIL_ENABLED = 1;
+    private static final long SECURITY_ENABLED = 1 << 1;
+    private static final long UNIFIED = 1 << 2;
+
+    private final MappedRecordFile mFile;
+    private final MappedRecordFile.Section mUsers;
+    private final MappedRecordFile.Section mGroups;
+
+    private DirectorySnapshotFile(MappedRecordFile file) throws IOException {
+        mFile = file;
+        mUsers = file.getSection(USERS);
+        mGroups = file.getSection(GROUPS);
+        if (null == mUsers || null == mGroups) {
+            file.close();
+            throw new IOException("Not a directory snapshot");
+        }
+    }
+
+    /**
+     * Maps a saved snapshot
+     *
+     * @param file The file written by {@link #write}
+     * @return the snapshot
+     * @throws IOException if the file can't be read, or is damaged or of another version
+     */
+    public static DirectorySnapshotFile open(File file) throws IOException {
+        return new DirectorySnapshotFile(MappedRecordFile.open(file));
+    }
+
+    /**
+     * Saves a snapshot, replacing the file in one step
+     *
+     * @param snapshot The snapshot to save
+     * @param file     Where to save it
+     * @throws IOException if the file can't be written
+     */
+    public static void write(DirectorySnapshot snapshot, File file) throws IOException {
+        MappedRecordFile.Writer writer = new MappedRecordFile.Writer();
+        MappedRecordFile.SectionWriter users = writer.section(USERS, USER_STRINGS, 1);
+        for (int row = 0; row < snapshot.getUserCount(); row++) {
+            users.add(snapshot.getUserId(row),
+                    new long[]{snapshot.isUserAccountEnabled(row) ? ACCOUNT_ENABLED : 0},
+                    snapshot.getUserDisplayName(row),
+                    snapshot.getUserPrincipalName(row),
+                    snapshot.getUserMail(row),
+                    snapshot.getUserDepartment(row),
+                    snapshot.getUserJobTitle(row),
+                    snapshot.getUserOfficeLocation(row));
+        }
+        MappedRecordFile.SectionWriter groups = writer.section(GROUPS, GROUP_STRINGS, 1);
+        for (int row = 0; row < snapshot.getGroupCount(); row++) {
+            long flags = (snapshot.isGroupMailEnabled(row) ? MAIL_ENABLED : 0)
+                    | (snapshot.isGroupSecurityEnabled(row) ? SECURITY_ENABLED : 0)
+                    | (snapshot.isGroupUnified(row) ? UNIFIED : 0);
+            groups.add(snapshot.getGroupId(row),
+                    new long[]{flags},
+                    snapshot.getGroupDisplayName(row),
+                    snapshot.getGroupMailNickname(row),
+                    snapshot.getGroupVisibility(row));
+        }
+        writer.writeTo(file);
+    }
+
+    /**
+     * Downloads the directory again and saves it. This blocks for as long as the download
+     * takes, so call it off the main thread.
+     *
+     * @param userService   The service to list users with, e.g. created from
+     *                      {@code SnippetApp.getRetrofit(Priority.BULK)}
+     * @param groupsService The service to list groups with, created the same way
+     * @param version       The version of the API to use (beta, v1, etc...)
+     * @param file          Where to save the snapshot
+     * @return the new snapshot, mapped
+     * @throws IOException if a call fails or the file can't be written
+     */
+    public static DirectorySnapshotFile refresh(MSGraphUserService userService,
+                                                MSGraphGroupsService groupsService,
+                                                String version,
+                                                File file) throws IOException {
+        write(DirectorySnapshot.load(userService, groupsService, version), file);
+        return open(file);
+    }
+
+    /**
+     * @return when the snapshot was saved, in milliseconds since the epoch
+     */
+    public long getCreatedMillis() {
+        return mFile.getCreatedMillis();
+    }
+
+    public int getUserCount() {
+        return mUsers.size();
+    }
+
+    public int getGroupCount() {
+        return mGroups.size();
+    }
+
+    /**
+     * @param id The id of a user
+     * @return the user, or null if there is no such user
+     */
+    public User findUser(String id) {
+        int row = mUsers.find(id);
+        if (row < 0) {
+            return null;
+        }
+        User user = new User();
+        user.id = mUsers.getId(row);
+        user.displayName = mUsers.getString(row, USER_DISPLAY_NAME);
+        user.userPrincipalName = mUsers.getString(row, USER_PRINCIPAL_NAME);
+        user.mail = mUsers.getString(row, USER_MAIL);
+        user.department = mUsers.getString(row, USER_DEPARTMENT);
+        user.jobTitle = mUsers.getString(row, USER_JOB_TITLE);
+        user.officeLocation = mUsers.getString(row, USER_OFFICE);
+        user.accountEnabled = 0 != (mUsers.getLong(row, FLAGS) & ACCOUNT_ENABLED);
+        return user;
+    }
+
+    /**
+     * @param id The id of a group
+     * @return the group, or null if there is no such group
+     */
+    public Group findGroup(String id) {
+        int row = mGroups.find(id);
+        if (row < 0) {
+            return null;
+        }
+        long flags = mGroups.getLong(row, FLAGS);
+        Group group = new Group();
+        group.id = mGroups.getId(row);
+        group.displayName = mGroups.getString(row, GROUP_DISPLAY_NAME);
+        group.mailNickname = mGroups.getString(row, GROUP_MAIL_NICKNAME);
+        group.visibility = mGroups.getString(row, GROUP_VISIBILITY);
+        group.mailEnabled = 0 != (flags & MAIL_ENABLED);
+        group.securityEnabled = 0 != (flags & SECURITY_ENABLED);
+        group.groupTypes = 0 != (flags & UNIFIED) ? new String[]{Group.UNIFIED} : new String[0];
+        return group;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.directory;
+
+import com.microsoft.office365.microsoftgraphvos.Contact;
+import com.microsoft.office365.microsoftgraphvos.DeltaEnvelope;
+import com.microsoft.office365.microsoftgraphvos.User;
+import com.microsoft.office365.msgraphapiservices.MSGraphContactService;
+import com.microsoft.office365.msgraphapiservices.MSGraphUserService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import retrofit2.Call;
+import retrofit2.Response;
+import timber.log.Timber;
+
+/**
+ * Fills a {@link DirectorySearch} with the directory's users and organizational contacts and
+ * keeps it up to date.
+ * <p>
+ * The first sync pages through every user and contact with a delta query. Later syncs follow the
+ * delta links it ended with, so they only download what changed in the meantime. If the service
+ * has expired a delta link, the next sync starts over with a full download.
+ * <p>
+ * {@link #sync} blocks until every page has been read, so call it off the main thread.
+ */
+public class DirectorySync {
+
+    static final String USER_SELECT = "id,displayName,mail,userPrincipalName";
+    static final String CONTACT_SELECT = "id,displayName,mail";
+
+    // the service answers an expired delta link with 410 Gone
+    private static final int GONE = 410;
+
+    private final MSGraphUserService mUserService;
+    private final MSGraphContactService mContactService;
+    private final String mVersion;
+    private final DirectorySearch mSearch;
+
+    private String mUsersDeltaLink;
+    private String mContactsDeltaLink;
+
+    /**
+     * @param userService    The user service to page users with, e.g. created from
+     *                       {@code SnippetApp.getRetrofit(Priority.BULK)}
+     * @param contactService The contact service to page contacts with, created the same way
+     * @param version        The version of the API to use (beta, v1, etc...)
+     * @param search         The search to fill
+     */
+    public DirectorySync(MSGraphUserService userService,
+                         MSGraphContactService contactService,
+                         String version,
+                         DirectorySearch search) {
+        mUserService = userService;
+        mContactService = contactService;
+        mVersion = version;
+        mSearch = search;
+    }
+
+    /**
+     * Downloads the changes since the last sync, or everyone on the first sync, and applies
+     * them to the search
+     *
+     * @throws IOException if a request fails
+     */
+    public synchronized void sync() throws IOException {
+        try {
+            syncChanges();
+        } catch (DeltaExpiredException e) {
+            Timber.w("Directory delta link expired, downloading everyone again");
+            mUsersDeltaLink = null;
+            mContactsDeltaLink = null;
+            syncChanges();
+        }
+    }
+
+    private void syncChanges() throws IOException {
+        boolean full = null == mUsersDeltaLink || null == mContactsDeltaLink;
+        List<DirectoryPerson> changed = new ArrayList<>();
+        List<String> removedIds = new ArrayList<>();
+
+        Call<DeltaEnvelope<User>> users = full
+                ? mUserService.getUsersDelta(mVersion, USER_SELECT)
+                : mUserService.getUsersDeltaPage(mUsersDeltaLink);
+        String usersDeltaLink = null;
+        while (null == usersDeltaLink) {
+            DeltaEnvelope<User> page = successful(users.execute());
+            for (User user : null == page.value ? new User[0] : page.value) {
+                if (null != user.removed) {
+                    removedIds.add(user.id);
+                } else {
+                    changed.add(DirectoryPerson.of(user));
+                }
+            }
+            usersDeltaLink = page.deltaLink;
+            if (null == usersDeltaLink) {
+                users = mUserService.getUsersDeltaPage(nextLink(page));
+            }
+        }
+
+        Call<DeltaEnvelope<Contact>> contacts = full
+                ? mContactService.getContactsDelta(mVersion, CONTACT_SELECT)
+                : mContactService.getContactsDeltaPage(mContactsDeltaLink);
+        String contactsDeltaLink = null;
+        while (null == contactsDeltaLink) {
+            DeltaEnvelope<Contact> page = successful(contacts.execute());
+            for (Contact contact : null == page.value ? new Contact[0] : page.value) {
+                if (null != contact.removed) {
+                    removedIds.add(contact.id);
+                } else {
+                    changed.add(DirectoryPerson.of(contact));
+                }
+            }
+            contactsDeltaLink = page.deltaLink;
+            if (null == contactsDeltaLink) {
+                contacts = mContactService.getContactsDeltaPage(nextLink(page));
+            }
+        }
+
+        if (full) {
+            mSearch.replaceAll(changed);
+        } else {
+            mSearch.apply(changed, removedIds);
+        }
+        // only move on once the changes are in, so a failed sync is retried from the same place
+        mUsersDeltaLink = usersDeltaLink;
+        mContactsDeltaLink = contactsDeltaLink;
+        Timber.d("Directory synced, %d changed and %d removed", changed.size(), removedIds.size());
+    }
+
+    private static String nextLink(DeltaEnvelope<?> page) throws IOException {
+        if (null == page.nextLink) {
+            throw new IOException("Delta page has neither a next link nor a delta link");
+        }
+        return page.nextLink;
+    }
+
+    private static <T> T successful(Response<T> response) throws IOException {
+        if (response.isSuccessful()) {
+            return response.body();
+        }
+        if (GONE == response.code()) {
+            throw new DeltaExpiredException();
+        }
+        String error = null == response.errorBody() ? "" : response.errorBody().string();
+        throw new IOException("HTTP " + response.code() + " " + response.message() + " " + error);
+    }
+
+    private static class DeltaExpiredException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+    }
+}
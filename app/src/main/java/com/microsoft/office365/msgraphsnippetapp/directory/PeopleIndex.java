@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.directory;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable prefix index over the names, mail addresses and user principal names of
+ * {@link DirectoryPerson}s.
+ * <p>
+ * Every distinct token is stored once, in a sorted array, so the tokens a prefix matches are a
+ * contiguous range found by binary search, and a person's tokens are stored as indices into
+ * that array. People are numbered in display name order, so a search returns them in that
+ * order without sorting. A search starts from whichever query word matches the fewest people:
+ * if that is only a few, their postings are gathered and checked against the other words; if
+ * it is many, as with a single typed letter, people are checked in order until enough match.
+ * Either way the work is bounded by the size of the answer rather than of the directory.
+ */
+public class PeopleIndex {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final int NONE = -1;
+
+    private final DirectoryPerson[] mPeople;
+    private final String[] mSortKeys;
+    private final Map<String, Integer> mPositions;
+    private final String[] mTokens;
+    // the people each token appears in, and the tokens each person has
+    private final int[] mPostingStarts;
+    private final int[] mPostings;
+    private final int[] mPersonTokenStarts;
+    private final int[] mPersonTokens;
+
+    private PeopleIndex(DirectoryPerson[] people,
+                        String[] sortKeys,
+                        Map<String, Integer> positions,
+                        String[] tokens,
+                        int[] postingStarts,
+                        int[] postings,
+                        int[] personTokenStarts,
+                        int[] personTokens) {
+        mPeople = people;
+        mSortKeys = sortKeys;
+        mPositions = positions;
+        mTokens = tokens;
+        mPostingStarts = postingStarts;
+        mPostings = postings;
+        mPersonTokenStarts = personTokenStarts;
+        mPersonTokens = personTokens;
+    }
+
+    /**
+     * Builds an index. This sorts and tokenizes everyone, so call it off the main thread.
+     *
+     * @param people The people to index
+     * @return the index
+     */
+    public static PeopleIndex build(Collection<DirectoryPerson> people) {
+        DirectoryPerson[] unsorted = people.toArray(new DirectoryPerson[people.size()]);
+        final String[] keys = new String[unsorted.length];
+        Integer[] order = new Integer[unsorted.length];
+        for (int i = 0; i < unsorted.length; i++) {
+            keys[i] = sortKey(unsorted[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return keys[lhs].compareTo(keys[rhs]);
+            }
+        });
+
+        DirectoryPerson[] indexed = new DirectoryPerson[unsorted.length];
+        String[] sortKeys = new String[unsorted.length];
+        Map<String, Integer> positions = new HashMap<>(unsorted.length * 2);
+        Map<String, PostingList> postingLists = new HashMap<>();
+        PostingList[][] personPostingLists = new PostingList[unsorted.length][];
+        int personTokenCount = 0;
+        for (int position = 0; position < order.length; position++) {
+            DirectoryPerson person = unsorted[order[position]];
+            indexed[position] = person;
+            sortKeys[position] = keys[order[position]];
+            positions.put(person.id, position);
+            Set<String> tokens = tokens(person);
+            personPostingLists[position] = new PostingList[tokens.size()];
+            int i = 0;
+            for (String token : tokens) {
+                PostingList postingList = postingLists.get(token);
+                if (null == postingList) {
+                    postingList = new PostingList();
+                    postingLists.put(token, postingList);
+                }
+                postingList.add(position);
+                personPostingLists[position][i++] = postingList;
+            }
+            personTokenCount += tokens.size();
+        }
+
+        String[] tokens = postingLists.keySet().toArray(new String[postingLists.size()]);
+        Arrays.sort(tokens);
+        int[] postingStarts = new int[tokens.length + 1];
+        for (int i = 0; i < tokens.length; i++) {
+            PostingList postingList = postingLists.get(tokens[i]);
+            postingList.mToken = i;
+            postingStarts[i + 1] = postingStarts[i] + postingList.mSize;
+        }
+        int[] postings = new int[postingStarts[tokens.length]];
+        for (int i = 0; i < tokens.length; i++) {
+            PostingList postingList = postingLists.get(tokens[i]);
+            System.arraycopy(postingList.mPositions, 0, postings, postingStarts[i], postingList.mSize);
+        }
+        int[] personTokenStarts = new int[indexed.length + 1];
+        int[] personTokens = new int[personTokenCount];
+        for (int position = 0; position < indexed.length; position++) {
+            int start = personTokenStarts[position];
+            for (PostingList postingList : personPostingLists[position]) {
+                personTokens[start++] = postingList.mToken;
+            }
+            personTokenStarts[position + 1] = start;
+        }
+        return new PeopleIndex(indexed, sortKeys, positions, tokens,
+                postingStarts, postings, personTokenStarts, personTokens);
+    }
+
+    /**
+     * @return the number of people in the index
+     */
+    public int size() {
+        return mPeople.length;
+    }
+
+    /**
+     * @param id The id of a person
+     * @return the person's position in the index, or -1 if they aren't in it
+     */
+    int positionOf(String id) {
+        Integer position = mPositions.get(id);
+        return null == position ? NONE : position;
+    }
+
+    DirectoryPerson get(int position) {
+        return mPeople[position];
+    }
+
+    String getSortKey(int position) {
+        return mSortKeys[position];
+    }
+
+    /**
+     * Finds the people that match every word of a query, each word being a prefix of one of
+     * their name, mail or user principal name tokens
+     *
+     * @param query  What has been typed so far
+     * @param limit  The most people to return
+     * @param hidden The positions of people to leave out, or null
+     * @return the positions of the matching people, in display name order
+     */
+    int[] search(String query, int limit, BitSet hidden) {
+        String[] words = queryWords(query);
+        if (0 == words.length || 0 == mPeople.length || limit <= 0) {
+            return new int[0];
+        }
+        // the range of tokens each word is a prefix of
+        int[] firstTokens = new int[words.length];
+        int[] endTokens = new int[words.length];
+        int rarest = 0;
+        for (int w = 0; w < words.length; w++) {
+            firstTokens[w] = lowerBound(words[w]);
+            endTokens[w] = lowerBound(words[w] + Character.MAX_VALUE);
+            if (postingCount(firstTokens[w], endTokens[w])
+                    < postingCount(firstTokens[rarest], endTokens[rarest])) {
+                rarest = w;
+            }
+        }
+        long candidates = postingCount(firstTokens[rarest], endTokens[rarest]);
+        if (0 == candidates) {
+            return new int[0];
+        }
+
+        int[] matches = new int[limit];
+        int count = 0;
+        if (candidates * candidates > (long) limit * mPeople.length) {
+            // a broad prefix: matches are dense, so walking people in order finds enough soon
+            for (int position = 0; position < mPeople.length && count < limit; position++) {
+                if (isVisible(position, hidden) && hasAll(position, firstTokens, endTokens)) {
+                    matches[count++] = position;
+                }
+            }
+        } else {
+            BitSet candidatePositions = new BitSet(mPeople.length);
+            for (int i = mPostingStarts[firstTokens[rarest]];
+                 i < mPostingStarts[endTokens[rarest]];
+                 i++) {
+                candidatePositions.set(mPostings[i]);
+            }
+            for (int position = candidatePositions.nextSetBit(0);
+                 NONE != position && count < limit;
+                 position = candidatePositions.nextSetBit(position + 1)) {
+                if (isVisible(position, hidden) && hasAll(position, firstTokens, endTokens)) {
+                    matches[count++] = position;
+                }
+            }
+        }
+        return count == limit ? matches : Arrays.copyOf(matches, count);
+    }
+
+    private long postingCount(int firstToken, int endToken) {
+        return mPostingStarts[endToken] - mPostingStarts[firstToken];
+    }
+
+    private static boolean isVisible(int position, BitSet hidden) {
+        return null == hidden || !hidden.get(position);
+    }
+
+    private boolean hasAll(int position, int[] firstTokens, int[] endTokens) {
+        for (int w = 0; w < firstTokens.length; w++) {
+            boolean has = false;
+            for (int i = mPersonTokenStarts[position]; i < mPersonTokenStarts[position + 1]; i++) {
+                int token = mPersonTokens[i];
+                if (token >= firstTokens[w] && token < endTokens[w]) {
+                    has = true;
+                    break;
+                }
+            }
+            if (!has) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if every word of the query is a prefix of one of the person's tokens
+     */
+    static boolean matches(DirectoryPerson person, String query) {
+        String[] words = queryWords(query);
+        if (0 == words.length) {
+            return false;
+        }
+        Set<String> tokens = tokens(person);
+        for (String word : words) {
+            boolean matched = false;
+            for (String token : tokens) {
+                if (token.startsWith(word)) {
+                    matched = true;
+                    break;
+                }
+            }
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String sortKey(DirectoryPerson person) {
+        String name = null != person.displayName ? person.displayName
+                : null != person.mail ? person.mail
+                : String.valueOf(person.userPrincipalName);
+        return normalize(name);
+    }
+
+    private int lowerBound(String word) {
+        int low = 0;
+        int high = mTokens.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mTokens[mid].compareTo(word) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String[] queryWords(String query) {
+        Set<String> words = new LinkedHashSet<>();
+        addWords(words, query);
+        return words.toArray(new String[words.size()]);
+    }
+
+    private static Set<String> tokens(DirectoryPerson person) {
+        Set<String> tokens = new LinkedHashSet<>();
+        addWords(tokens, person.displayName);
+        addAddress(tokens, person.mail);
+        addAddress(tokens, person.userPrincipalName);
+        return tokens;
+    }
+
+    private static void addAddress(Set<String> tokens, String address) {
+        if (null == address) {
+            return;
+        }
+        // the whole address, so that typing "ada.l" finds ada.lovelace@contoso.com,
+        // and its parts, so that typing "lovelace" does too
+        tokens.add(normalize(address));
+        addWords(tokens, address);
+    }
+
+    private static void addWords(Set<String> tokens, String text) {
+        if (null == text) {
+            return;
+        }
+        String normalized = normalize(text);
+        int start = NONE;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean inWord = i < normalized.length()
+                    && Character.isLetterOrDigit(normalized.charAt(i));
+            if (inWord && NONE == start) {
+                start = i;
+            } else if (!inWord && NONE != start) {
+                tokens.add(normalized.substring(start, i));
+                start = NONE;
+            }
+        }
+    }
+
+    /**
+     * Lower cases and strips accents, so that "eloise" finds an accented "Elo&iuml;se"
+     */
+    private static String normalize(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+                return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT).trim();
+            }
+        }
+        // plain ASCII, which most directory names are, has nothing to decompose
+        return text.toLowerCase(Locale.ROOT).trim();
+    }
+
+    private static class PostingList {
+
+        int[] mPositions = new int[2];
+        int mSize;
+        int mToken;
+
+        void add(int position) {
+            if (mSize == mPositions.length) {
+                mPositions = Arrays.copyOf(mPositions, mSize * 2);
+            }
+            mPositions[mSize++] = position;
+        }
+    }
+}
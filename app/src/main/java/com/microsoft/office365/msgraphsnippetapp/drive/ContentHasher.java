@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.drive;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import okio.ByteString;
+
+/**
+ * Computes the content hashes OneDrive reports for files, so that local files can be compared
+ * with their remote copies without downloading them.
+ * <p>
+ * Files larger than {@link #PARALLEL_CHUNK_SIZE} are split into chunks whose quickXorHashes are
+ * computed concurrently on the given executor and combined; smaller files are hashed on the
+ * calling thread. SHA-1 can't be split, so it is only computed when a drive reports no
+ * quickXorHash.
+ */
+public class ContentHasher {
+
+    static final int PARALLEL_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ExecutorService mExecutor;
+
+    /**
+     * @param executor Hashes the chunks of large files; size it to the number of cores
+     */
+    public ContentHasher(ExecutorService executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * @param file The file to hash
+     * @return the file's quickXorHash, in base64
+     * @throws IOException if the file can't be read
+     */
+    public String quickXorHash(final File file) throws IOException {
+        long length = file.length();
+        if (length <= PARALLEL_CHUNK_SIZE) {
+            return hashRange(file, 0, length).toBase64();
+        }
+
+        List<Future<QuickXorHash>> chunks = new ArrayList<>();
+        for (long offset = 0; offset < length; offset += PARALLEL_CHUNK_SIZE) {
+            final long start = offset;
+            final long end = Math.min(offset + PARALLEL_CHUNK_SIZE, length);
+            chunks.add(mExecutor.submit(new Callable<QuickXorHash>() {
+                @Override
+                public QuickXorHash call() throws IOException {
+                    return hashRange(file, start, end - start);
+                }
+            }));
+        }
+        QuickXorHash hash = new QuickXorHash();
+        try {
+            for (Future<QuickXorHash> chunk : chunks) {
+                hash.combine(chunk.get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            for (Future<QuickXorHash> chunk : chunks) {
+                chunk.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while hashing " + file, e);
+        }
+        return hash.toBase64();
+    }
+
+    /**
+     * @param file The file to hash
+     * @return the file's SHA-1, in upper case hex as reported in a DriveItem's file facet
+     * @throws IOException if the file can't be read
+     */
+    public String sha1Hash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            for (int read; -1 != (read = in.read(buffer)); ) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return ByteString.of(digest.digest()).hex().toUpperCase(Locale.US);
+    }
+
+    private static QuickXorHash hashRange(File file, long offset, long length) throws IOException {
+        QuickXorHash hash = new QuickXorHash(offset);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(offset);
+            for (long remaining = length; remaining > 0; ) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (-1 == read) {
+                    throw new IOException(file + " changed while it was being hashed");
+                }
+                hash.update(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.drive;
+
+import com.google.gson.Gson;
+import com.microsoft.office365.microsoftgraphvos.DriveItem;
+import com.microsoft.office365.microsoftgraphvos.UploadSession;
+import com.microsoft.office365.msgraphapiservices.MSGraphDrivesService;
+import com.microsoft.office365.msgraphsnippetapp.mail.FileRangeRequestBody;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+import timber.log.Timber;
+
+/**
+ * Uploads files to a drive folder, skipping the ones whose content is already there.
+ * <p>
+ * Each file is compared with what a {@link DriveMetadataIndex} knows of the remote item of the
+ * same name: a different size means the file changed and is uploaded without hashing;
+ * otherwise its content hash is computed locally and the upload is skipped if it matches the
+ * remote one. Uploaded items are put back into the index, so a repeated run over an unchanged
+ * folder uploads nothing.
+ * <p>
+ * The methods block until the uploads have finished, so call them off the main thread.
+ */
+public class DeduplicatingUploader {
+
+    /**
+     * The largest file the service accepts in a single request
+     */
+    public static final long MAX_SIMPLE_UPLOAD = 4 * 1024 * 1024;
+
+    /**
+     * Upload session ranges must be a multiple of 320 KiB
+     */
+    static final long UPLOAD_RANGE_SIZE = 10 * 320 * 1024;
+
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+    private final MSGraphDrivesService mService;
+    private final String mVersion;
+    private final ContentHasher mHasher;
+    private final DriveMetadataIndex mIndex;
+    private final Gson mGson = new Gson();
+
+    /**
+     * @param service The drives service to upload with
+     * @param version The version of the API to use (beta, v1, etc...)
+     * @param hasher  Hashes the local files
+     * @param index   What is known of the remote items, e.g. from a {@link DriveCrawler}
+     */
+    public DeduplicatingUploader(MSGraphDrivesService service,
+                                 String version,
+                                 ContentHasher hasher,
+                                 DriveMetadataIndex index) {
+        mService = service;
+        mVersion = version;
+        mHasher = hasher;
+        mIndex = index;
+    }
+
+    /**
+     * Uploads the files that differ from their remote copies
+     *
+     * @param parentId The folder to upload to, or "root"
+     * @param files    The files to upload
+     * @return what was uploaded and what was skipped
+     */
+    public Result upload(String parentId, Collection<File> files) {
+        Result result = new Result();
+        for (File file : files) {
+            try {
+                if (isUnchanged(parentId, file)) {
+                    result.mSkippedBytes += file.length();
+                    result.mSkipped++;
+                    continue;
+                }
+                DriveItem item = uploadFile(parentId, file);
+                mIndex.onItems(parentId, Collections.singletonList(item));
+                result.mUploadedBytes += file.length();
+                result.mUploaded++;
+            } catch (IOException e) {
+                Timber.w(e, "Unable to upload %s", file);
+                result.mFailures.put(file, String.valueOf(e.getMessage()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the remote item of the same name has the same content as the file
+     */
+    boolean isUnchanged(String parentId, File file) throws IOException {
+        DriveMetadataIndex.Entry remote = mIndex.getChild(parentId, file.getName());
+        if (null == remote || remote.isFolder || remote.size != file.length()) {
+            return false;
+        }
+        if (null != remote.quickXorHash) {
+            return remote.quickXorHash.equals(mHasher.quickXorHash(file));
+        }
+        if (null != remote.sha1Hash) {
+            return remote.sha1Hash.equalsIgnoreCase(mHasher.sha1Hash(file));
+        }
+        return false;
+    }
+
+    private DriveItem uploadFile(String parentId, File file) throws IOException {
+        if (file.length() <= MAX_SIMPLE_UPLOAD) {
+            return successful(mService.uploadFile(
+                    mVersion,
+                    parentId,
+                    file.getName(),
+                    RequestBody.create(OCTET_STREAM, file)).execute());
+        }
+
+        UploadSession session = successful(
+                mService.createUploadSession(mVersion, parentId, file.getName()).execute());
+        long length = file.length();
+        for (long offset = 0; ; ) {
+            long end = Math.min(offset + UPLOAD_RANGE_SIZE, length);
+            Response<ResponseBody> response = mService.uploadRange(
+                    session.uploadUrl,
+                    "bytes " + offset + "-" + (end - 1) + "/" + length,
+                    new FileRangeRequestBody(file, offset, end - offset)).execute();
+            ResponseBody body = successful(response);
+            if (end == length) {
+                // the last range is answered with the item
+                try {
+                    return mGson.fromJson(body.charStream(), DriveItem.class);
+                } finally {
+                    body.close();
+                }
+            }
+            body.close();
+            offset = end;
+        }
+    }
+
+    private static <T> T successful(Response<T> response) throws IOException {
+        if (response.isSuccessful()) {
+            return response.body();
+        }
+        String error = null == response.errorBody() ? "" : response.errorBody().string();
+        throw new IOException("HTTP " + response.code() + " " + response.message() + " " + error);
+    }
+
+    /**
+     * The outcome of an upload run
+     */
+    public static class Result {
+
+        private int mUploaded;
+        private int mSkipped;
+        private long mUploadedBytes;
+        private long mSkippedBytes;
+        private final Map<File, String> mFailures = new LinkedHashMap<>();
+
+        public int getUploaded() {
+            return mUploaded;
+        }
+
+        public int getSkipped() {
+            return mSkipped;
+        }
+
+        public long getUploadedBytes() {
+            return mUploadedBytes;
+        }
+
+        public long getSkippedBytes() {
+            return mSkippedBytes;
+        }
+
+        /**
+         * @return the files that couldn't be uploaded, mapped to the reason
+         */
+        public Map<File, String> getFailures() {
+            return Collections.unmodifiableMap(mFailures);
+        }
+
+        public boolean isSuccessful() {
+            return mFailures.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return mUploaded + " uploaded (" + mUploadedBytes + " bytes), "
+                    + mSkipped + " skipped (" + mSkippedBytes + " bytes), "
+                    + mFailures.size() + " failed";
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.drive;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import okio.ByteString;
+import timber.log.Timber;
+
+/**
+ * A disk cache of drive item content, keyed by item id and eTag, that never grows past a
+ * byte budget.
+ * <p>
+ * Each item's content is one file, named after the item id. An in-memory map in access order
+ * tells whether an item is cached in constant time and which item was used least recently;
+ * those are evicted first when room is needed. Room is reserved before content is written, a
+ * buffer at a time, so the files on disk, including one being written, stay within the budget.
+ * <p>
+ * Content is written to a temporary file and renamed into place before it is recorded in an
+ * append-only journal, and the journal is replayed when the cache is opened. A crash at any
+ * point leaves at worst an unrecorded file, which is deleted on the next open; a cached item
+ * always has complete content. The journal is rewritten once it is mostly redundant.
+ */
+public class DriveContentCache implements Closeable {
+
+    static final String JOURNAL = "journal";
+    static final String HEADER = "drive-content-cache 1";
+
+    private static final String JOURNAL_TMP = "journal.tmp";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String PUT = "PUT";
+    private static final String DELETE = "DEL";
+    private static final String READ = "READ";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MIN_REDUNDANT_LINES = 2000;
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private Writer mJournal;
+    private int mRedundantLines;
+    private long mSize;
+    private long mReserved;
+
+    private DriveContentCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Opens a cache, restoring what was cached before
+     *
+     * @param directory Where the cache keeps its files; nothing else should be stored there
+     * @param maxBytes  The most content to keep, in bytes
+     * @return the cache
+     * @throws IOException if the directory can't be created or read
+     */
+    public static DriveContentCache open(File directory, long maxBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        DriveContentCache cache = new DriveContentCache(directory, maxBytes);
+        cache.readJournal();
+        cache.deleteUnrecordedFiles();
+        cache.trimTo(maxBytes);
+        cache.rewriteJournal();
+        return cache;
+    }
+
+    /**
+     * Opens an item's cached content
+     *
+     * @param itemId The id of the drive item
+     * @param eTag   The item's current eTag
+     * @return the content, or null if this version of the item isn't cached
+     * @throws IOException if the journal can't be written
+     */
+    public synchronized InputStream get(String itemId, String eTag) throws IOException {
+        Entry entry = mEntries.get(itemId);
+        if (null == entry || !entry.mETag.equals(eTag)) {
+            return null;
+        }
+        InputStream in;
+        try {
+            in = new FileInputStream(file(itemId));
+        } catch (FileNotFoundException e) {
+            // deleted behind our back
+            remove(itemId);
+            return null;
+        }
+        journal(READ, key(itemId));
+        return in;
+    }
+
+    /**
+     * Caches an item's content, replacing any other version of it
+     *
+     * @param itemId  The id of the drive item
+     * @param eTag    The eTag of this version of the item
+     * @param content The content; it is read to the end but not closed
+     * @return true if the content was cached, false if it is larger than the whole budget, in
+     * which case it has been partly read
+     * @throws IOException if the content can't be read or written
+     */
+    public boolean put(String itemId, String eTag, InputStream content) throws IOException {
+        File tmp = new File(mDirectory, key(itemId) + "." + System.nanoTime() + TMP_SUFFIX);
+        // every byte written has been reserved, so this is also the size of the content
+        long reserved = 0;
+        boolean committed = false;
+        try {
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                for (int read; -1 != (read = content.read(buffer)); ) {
+                    if (!reserve(read)) {
+                        return false;
+                    }
+                    reserved += read;
+                    out.write(buffer, 0, read);
+                }
+            }
+            commit(itemId, eTag, tmp, reserved);
+            committed = true;
+            return true;
+        } finally {
+            release(reserved);
+            if (!committed && tmp.exists() && !tmp.delete()) {
+                Timber.w("Unable to delete %s", tmp);
+            }
+        }
+    }
+
+    /**
+     * Removes an item from the cache
+     *
+     * @param itemId The id of the drive item
+     * @throws IOException if the journal can't be written
+     */
+    public synchronized void remove(String itemId) throws IOException {
+        Entry entry = mEntries.remove(itemId);
+        if (null == entry) {
+            return;
+        }
+        delete(itemId, entry);
+        journal(DELETE, key(itemId));
+    }
+
+    /**
+     * @param itemId The id of the drive item
+     * @param eTag   The item's current eTag
+     * @return true if this version of the item is cached
+     */
+    public synchronized boolean contains(String itemId, String eTag) {
+        Entry entry = mEntries.get(itemId);
+        return null != entry && entry.mETag.equals(eTag);
+    }
+
+    /**
+     * @return the bytes of content cached
+     */
+    public synchronized long size() {
+        return mSize;
+    }
+
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (null != mJournal) {
+            mJournal.close();
+            mJournal = null;
+        }
+    }
+
+    private synchronized boolean reserve(long bytes) throws IOException {
+        if (mReserved + bytes > mMaxBytes) {
+            return false;
+        }
+        mReserved += bytes;
+        trimTo(mMaxBytes - mReserved);
+        return true;
+    }
+
+    private synchronized void release(long bytes) {
+        mReserved -= bytes;
+    }
+
+    private synchronized void commit(String itemId, String eTag, File tmp, long size)
+            throws IOException {
+        Entry previous = mEntries.remove(itemId);
+        if (null != previous) {
+            mSize -= previous.mSize;
+            // forget the old version before its file is replaced, so that a crash before the
+            // PUT below leaves an unrecorded file rather than new content under the old eTag
+            journal(DELETE, key(itemId));
+        }
+        if (!tmp.renameTo(file(itemId))) {
+            throw new IOException("Unable to rename " + tmp);
+        }
+        mEntries.put(itemId, new Entry(eTag, size));
+        mSize += size;
+        journal(PUT, key(itemId) + " " + ByteString.encodeUtf8(eTag).hex() + " " + size);
+    }
+
+    private void trimTo(long maxBytes) throws IOException {
+        Iterator<Map.Entry<String, Entry>> leastRecentlyUsed = mEntries.entrySet().iterator();
+        while (mSize > maxBytes && leastRecentlyUsed.hasNext()) {
+            Map.Entry<String, Entry> eldest = leastRecentlyUsed.next();
+            leastRecentlyUsed.remove();
+            delete(eldest.getKey(), eldest.getValue());
+            journal(DELETE, key(eldest.getKey()));
+        }
+    }
+
+    private void delete(String itemId, Entry entry) {
+        mSize -= entry.mSize;
+        File file = file(itemId);
+        if (file.exists() && !file.delete()) {
+            Timber.w("Unable to delete %s", file);
+        }
+    }
+
+    private void journal(String operation, String arguments) throws IOException {
+        if (null == mJournal) {
+            // still opening, the journal is rewritten once the entries are read
+            return;
+        }
+        mJournal.write(operation + " " + arguments + "\n");
+        mJournal.flush();
+        if (!PUT.equals(operation)) {
+            mRedundantLines++;
+        }
+        if (mRedundantLines >= MIN_REDUNDANT_LINES && mRedundantLines >= mEntries.size()) {
+            rewriteJournal();
+        }
+    }
+
+    private void readJournal() throws IOException {
+        File journal = new File(mDirectory, JOURNAL);
+        if (!journal.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(journal))) {
+            if (!HEADER.equals(reader.readLine())) {
+                Timber.w("Discarding a cache journal of an unknown format");
+                return;
+            }
+            for (String line; null != (line = reader.readLine()); ) {
+                String[] parts = line.split(" ");
+                try {
+                    String itemId = ByteString.decodeHex(parts[1]).utf8();
+                    if (PUT.equals(parts[0]) && 4 == parts.length) {
+                        Entry previous = mEntries.put(itemId, new Entry(
+                                ByteString.decodeHex(parts[2]).utf8(), Long.parseLong(parts[3])));
+                        mSize += Long.parseLong(parts[3]) - (null == previous ? 0 : previous.mSize);
+                    } else if (DELETE.equals(parts[0])) {
+                        Entry previous = mEntries.remove(itemId);
+                        mSize -= null == previous ? 0 : previous.mSize;
+                    } else if (READ.equals(parts[0])) {
+                        mEntries.get(itemId);
+                    }
+                } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                    // a line cut short by a crash, which is always the last one
+                    Timber.w("Ignoring a malformed cache journal line");
+                }
+            }
+        }
+    }
+
+    private void deleteUnrecordedFiles() {
+        File[] files = mDirectory.listFiles();
+        for (File file : null == files ? new File[0] : files) {
+            String name = file.getName();
+            if (JOURNAL.equals(name)) {
+                continue;
+            }
+            String itemId = null;
+            try {
+                itemId = ByteString.decodeHex(name).utf8();
+            } catch (IllegalArgumentException e) {
+                // a temporary file or a stranger
+            }
+            if ((null == itemId || !mEntries.containsKey(itemId)) && !file.delete()) {
+                Timber.w("Unable to delete %s", file);
+            }
+        }
+        // and forget the entries whose content is gone
+        List<String> missing = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+            if (!file(entry.getKey()).isFile()) {
+                missing.add(entry.getKey());
+            }
+        }
+        for (String itemId : missing) {
+            mSize -= mEntries.remove(itemId).mSize;
+        }
+    }
+
+    private void rewriteJournal() throws IOException {
+        if (null != mJournal) {
+            mJournal.close();
+        }
+        File tmp = new File(mDirectory, JOURNAL_TMP);
+        try (Writer writer = new BufferedWriter(new FileWriter(tmp))) {
+            writer.write(HEADER + "\n");
+            // least recently used first, so replaying restores the order
+            for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+                writer.write(PUT + " " + key(entry.getKey()) + " "
+                        + ByteString.encodeUtf8(entry.getValue().mETag).hex() + " "
+                        + entry.getValue().mSize + "\n");
+            }
+        }
+        if (!tmp.renameTo(new File(mDirectory, JOURNAL))) {
+            throw new IOException("Unable to replace the cache journal");
+        }
+        mJournal = new BufferedWriter(new FileWriter(new File(mDirectory, JOURNAL), true));
+        mRedundantLines = 0;
+    }
+
+    private File file(String itemId) {
+        return new File(mDirectory, key(itemId));
+    }
+
+    private static String key(String itemId) {
+        return ByteString.encodeUtf8(itemId).hex();
+    }
+
+    private static class Entry {
+
+        final String mETag;
+        final long mSize;
+
+        Entry(String eTag, long size) {
+            mETag = eTag;
+            mSize = size;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.drive;
+
+import com.microsoft.office365.msgraphapiservices.MSGraphDrivesService;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+
+/**
+ * Opens drive item content through a {@link DriveContentCache}, so an item that hasn't changed
+ * since it was last opened is read from disk without touching the network. Content larger than
+ * the whole cache is streamed straight from the service.
+ * <p>
+ * {@link #open} makes network calls on a miss, so call it off the main thread.
+ */
+public class DriveContentLoader {
+
+    private final MSGraphDrivesService mService;
+    private final String mVersion;
+    private final DriveContentCache mCache;
+
+    /**
+     * @param service The drives service to download with, e.g. created from
+     *                {@code SnippetApp.getRetrofit(Priority.PREFETCH)} to open ahead of the user
+     * @param version The version of the API to use (beta, v1, etc...)
+     * @param cache   Where downloaded content is kept
+     */
+    public DriveContentLoader(MSGraphDrivesService service, String version, DriveContentCache cache) {
+        mService = service;
+        mVersion = version;
+        mCache = cache;
+    }
+
+    /**
+     * Opens a version of an item's content
+     *
+     * @param itemId The id of the drive item
+     * @param eTag   The eTag of the version wanted, e.g. from a {@link DriveMetadataIndex}
+     * @return the content, which the caller must close
+     * @throws IOException if the content can't be downloaded or cached
+     */
+    public InputStream open(String itemId, String eTag) throws IOException {
+        InputStream cached = mCache.get(itemId, eTag);
+        if (null != cached) {
+            return cached;
+        }
+
+        ResponseBody body = download(itemId);
+        if (body.contentLength() > mCache.getMaxBytes()) {
+            return body.byteStream();
+        }
+        boolean stored;
+        try {
+            stored = mCache.put(itemId, eTag, body.byteStream());
+        } finally {
+            body.close();
+        }
+        cached = stored ? mCache.get(itemId, eTag) : null;
+        // not cached after all: too large to tell up front, or already evicted by other puts
+        return null != cached ? cached : download(itemId).byteStream();
+    }
+
+    private ResponseBody download(String itemId) throws IOException {
+        Response<ResponseBody> response = mService.getContent(mVersion, itemId).execute();
+        if (!response.isSuccessful()) {
+            String error = null == response.errorBody() ? "" : response.errorBody().string();
+            throw new IOException("HTTP " + response.code() + " downloading " + itemId + " " + error);
+        }
+        return response.body();
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.drive;
+
+import com.microsoft.office365.microsoftgraphvos.DriveItem;
+import com.microsoft.office365.microsoftgraphvos.Envelope;
+import com.microsoft.office365.msgraphapiservices.MSGraphDrivesService;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import retrofit2.Call;
+import retrofit2.Response;
+import timber.log.Timber;
+
+/**
+ * Walks a whole drive, listing every folder in parallel.
+ * <p>
+ * Each folder is a task on a {@link ForkJoinPool}: it pages through the folder's children,
+ * hands each page to the {@link Listener} and forks a task for every subfolder. Forked tasks
+ * queue on the worker that found them and idle workers steal from the others, so a deep
+ * folder doesn't hold up a wide one. Tasks never wait for each other, so every worker is busy
+ * with at most one request and the pool's parallelism bounds how many are in flight.
+ * <p>
+ * {@link #crawl} blocks until every folder has been listed, so call it off the main thread.
+ */
+public class DriveCrawler {
+
+    /**
+     * Receives the children of each folder, a page at a time, on the crawler's threads
+     */
+    public interface Listener {
+
+        void onItems(String folderId, List<DriveItem> items);
+    }
+
+    static final String SELECT =
+            "id,name,size,eTag,lastModifiedDateTime,folder,file,parentReference";
+    static final int PAGE_SIZE = 500;
+    static final int MAX_ATTEMPTS = 4;
+
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+
+    private final MSGraphDrivesService mService;
+    private final String mVersion;
+    private final int mMaxInFlight;
+
+    /**
+     * @param service     The drives service to list folders with, e.g. created from
+     *                    {@code SnippetApp.getRetrofit(Priority.BULK)}
+     * @param version     The version of the API to use (beta, v1, etc...)
+     * @param maxInFlight The most requests in flight at once
+     */
+    public DriveCrawler(MSGraphDrivesService service, String version, int maxInFlight) {
+        mService = service;
+        mVersion = version;
+        mMaxInFlight = maxInFlight;
+    }
+
+    /**
+     * Lists a folder and everything under it
+     *
+     * @param folderId The folder to start from, or "root" for the whole drive
+     * @param listener Receives the children of each folder
+     * @return the outcome of the crawl
+     * @throws InterruptedException if the calling thread is interrupted; the crawl is stopped
+     */
+    public Result crawl(String folderId, Listener listener) throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(mMaxInFlight);
+        Crawl crawl = new Crawl(listener);
+        crawl.fork(pool, folderId);
+        try {
+            crawl.mDone.await();
+        } finally {
+            pool.shutdownNow();
+        }
+        return crawl.mResult;
+    }
+
+    private Envelope<DriveItem> fetch(Call<Envelope<DriveItem>> call) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            IOException error;
+            long delay = INITIAL_BACKOFF_MILLIS << (attempt - 1);
+            try {
+                Response<Envelope<DriveItem>> response = call.execute();
+                if (response.isSuccessful()) {
+                    return response.body();
+                }
+                error = new IOException("HTTP " + response.code() + " " + response.message());
+                if (429 != response.code() && response.code() < 500) {
+                    throw error;
+                }
+                String retryAfter = response.headers().get("Retry-After");
+                if (null != retryAfter) {
+                    try {
+                        delay = TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+                    } catch (NumberFormatException e) {
+                        // not a number of seconds, back off instead
+                    }
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+            if (attempt == MAX_ATTEMPTS) {
+                throw error;
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while backing off", e);
+            }
+            call = call.clone();
+        }
+    }
+
+    private class Crawl {
+
+        final Listener mListener;
+        final Result mResult = new Result();
+        final CountDownLatch mDone = new CountDownLatch(1);
+
+        // folders forked but not yet listed
+        final AtomicInteger mPending = new AtomicInteger();
+
+        Crawl(Listener listener) {
+            mListener = listener;
+        }
+
+        void fork(ForkJoinPool pool, String folderId) {
+            mPending.incrementAndGet();
+            pool.execute(new FolderTask(folderId));
+        }
+
+        void list(String folderId) {
+            Call<Envelope<DriveItem>> call =
+                    mService.getChildren(mVersion, folderId, SELECT, PAGE_SIZE);
+            try {
+                while (null != call) {
+                    Envelope<DriveItem> page = fetch(call);
+                    mResult.mRequests.incrementAndGet();
+                    List<DriveItem> items = null == page.value
+                            ? Collections.<DriveItem>emptyList()
+                            : Arrays.asList(page.value);
+                    mListener.onItems(folderId, items);
+                    mResult.mItems.addAndGet(items.size());
+                    for (DriveItem item : items) {
+                        if (null != item.folder && item.folder.childCount > 0) {
+                            mPending.incrementAndGet();
+                            new FolderTask(item.id).fork();
+                        }
+                    }
+                    call = null == page.nextLink ? null : mService.getChildrenPage(page.nextLink);
+                }
+            } catch (IOException e) {
+                Timber.w(e, "Unable to list folder %s", folderId);
+                mResult.mFailures.put(folderId, String.valueOf(e.getMessage()));
+            }
+        }
+
+        private class FolderTask extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            private final String mFolderId;
+
+            FolderTask(String folderId) {
+                mFolderId = folderId;
+            }
+
+            @Override
+            protected void compute() {
+                try {
+                    list(mFolderId);
+                } finally {
+                    if (0 == mPending.decrementAndGet()) {
+                        mDone.countDown();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The outcome of a crawl
+     */
+    public static class Result {
+
+        private final AtomicInteger mItems = new AtomicInteger();
+        private final AtomicInteger mRequests = new AtomicInteger();
+        private final Map<String, String> mFailures = new ConcurrentHashMap<>();
+
+        /**
+         * @return the number of items listed
+         */
+        public int getItemCount() {
+            return mItems.get();
+        }
+
+        /**
+         * @return the number of pages fetched
+         */
+        public int getRequestCount() {
+            return mRequests.get();
+        }
+
+        /**
+         * @return the ids of the folders that couldn't be listed, mapped to the reason
+         */
+        public Map<String, String> getFailures() {
+            return Collections.unmodifiableMap(mFailures);
+        }
+
+        public boolean isSuccessful() {
+            return mFailures.isEmpty();
+        }
+    }
+}
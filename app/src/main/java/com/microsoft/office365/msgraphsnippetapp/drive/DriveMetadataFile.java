@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.drive;
+
+import com.microsoft.office365.msgraphsnippetapp.util.MappedRecordFile;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A {@link DriveMetadataIndex} saved to a {@link MappedRecordFile}, so a drive can be browsed
+ * as soon as the app starts instead of after it has been crawled again.
+ * <p>
+ * Items are saved grouped by folder, and each folder has a record of where its children
+ * start, so both {@link #get} and {@link #getChildren} read only the records they return.
+ * Open the saved file first and {@link #refresh} it off the main thread, then swap the new
+ * file in and close the old one.
+ */
+public class DriveMetadataFile implements Closeable {
+
+    static final int ITEMS = 1;
+    static final int FOLDERS = 2;
+
+    // item strings
+    private static final int NAME = 0;
+    private static final int PARENT_ID = 1;
+    private static final int E_TAG = 2;
+    private static final int LAST_MODIFIED = 3;
+    private static final int QUICK_XOR_HASH = 4;
+    private static final int SHA1_HASH = 5;
+    private static final int ITEM_STRINGS = 6;
+
+    // item longs
+    private static final int SIZE = 0;
+    private static final int IS_FOLDER = 1;
+    private static final int ITEM_LONGS = 2;
+
+    // folder longs
+    private static final int FIRST_ROW = 0;
+    private static final int CHILD_COUNT = 1;
+    private static final int FOLDER_LONGS = 2;
+
+    private final MappedRecordFile mFile;
+    private final MappedRecordFile.Section mItems;
+    private final MappedRecordFile.Section mFolders;
+
+    private DriveMetadataFile(MappedRecordFile file) throws IOException {
+        mFile = file;
+        mItems = file.getSection(ITEMS);
+        mFolders = file.getSection(FOLDERS);
+        if (null == mItems || null == mFolders) {
+            file.close();
+            throw new IOException("Not a drive metadata file");
+        }
+    }
+
+    /**
+     * Maps a saved index
+     *
+     * @param file The file written by {@link #write}
+     * @return the index
+     * @throws IOException if the file can't be read, or is damaged or of another version
+     */
+    public static DriveMetadataFile open(File file) throws IOException {
+        return new DriveMetadataFile(MappedRecordFile.open(file));
+    }
+
+    /**
+     * Saves an index, replacing the file in one step. The index shouldn't be changing, e.g.
+     * its crawl should be over.
+     *
+     * @param index The index to save
+     * @param file  Where to save it
+     * @throws IOException if the file can't be written
+     */
+    public static void write(DriveMetadataIndex index, File file) throws IOException {
+        List<DriveMetadataIndex.Entry> entries = new ArrayList<>(index.getEntries());
+        Collections.sort(entries, new Comparator<DriveMetadataIndex.Entry>() {
+            @Override
+            public int compare(DriveMetadataIndex.Entry lhs, DriveMetadataIndex.Entry rhs) {
+                return lhs.parentId.compareTo(rhs.parentId);
+            }
+        });
+        MappedRecordFile.Writer writer = new MappedRecordFile.Writer();
+        MappedRecordFile.SectionWriter items = writer.section(ITEMS, ITEM_STRINGS, ITEM_LONGS);
+        MappedRecordFile.SectionWriter folders = writer.section(FOLDERS, 0, FOLDER_LONGS);
+        int firstRow = 0;
+        for (int row = 0; row < entries.size(); row++) {
+            DriveMetadataIndex.Entry entry = entries.get(row);
+            items.add(entry.id,
+                    new long[]{entry.size, entry.isFolder ? 1 : 0},
+                    entry.name,
+                    entry.parentId,
+                    entry.eTag,
+                    entry.lastModifiedDateTime,
+                    entry.quickXorHash,
+                    entry.sha1Hash);
+            boolean lastChild = row + 1 == entries.size()
+                    || !entry.parentId.equals(entries.get(row + 1).parentId);
+            if (lastChild) {
+                folders.add(entry.parentId, new long[]{firstRow, row + 1 - firstRow});
+                firstRow = row + 1;
+            }
+        }
+        writer.writeTo(file);
+    }
+
+    /**
+     * Crawls the drive again and saves it. This blocks for as long as the crawl takes, so call
+     * it off the main thread.
+     *
+     * @param crawler The crawler to walk the drive with
+     * @param file    Where to save the index
+     * @return the new index, mapped, or null if the crawl failed and the file was left as it was
+     * @throws IOException          if the file can't be written
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public static DriveMetadataFile refresh(DriveCrawler crawler, File file)
+            throws IOException, InterruptedException {
+        DriveMetadataIndex index = new DriveMetadataIndex();
+        if (!crawler.crawl("root", index).isSuccessful()) {
+            // a partial crawl would hide the folders that failed
+            return null;
+        }
+        write(index, file);
+        return open(file);
+    }
+
+    /**
+     * @return when the index was saved, in milliseconds since the epoch
+     */
+    public long getCreatedMillis() {
+        return mFile.getCreatedMillis();
+    }
+
+    /**
+     * @return the number of items saved
+     */
+    public int size() {
+        return mItems.size();
+    }
+
+    /**
+     * @param id The id of an item
+     * @return the item, or null if it wasn't saved
+     */
+    public DriveMetadataIndex.Entry get(String id) {
+        int row = mItems.find(id);
+        return row < 0 ? null : entry(row);
+    }
+
+    /**
+     * @param folderId The id of a folder, or "root"
+     * @return the folder's children
+     */
+    public List<DriveMetadataIndex.Entry> getChildren(String folderId) {
+        int folder = mFolders.find(folderId);
+        if (folder < 0) {
+            return Collections.emptyList();
+        }
+        int firstRow = (int) mFolders.getLong(folder, FIRST_ROW);
+        int count = (int) mFolders.getLong(folder, CHILD_COUNT);
+        List<DriveMetadataIndex.Entry> children = new ArrayList<>(count);
+        for (int row = firstRow; row < firstRow + count; row++) {
+            children.add(entry(row));
+        }
+        return children;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    private DriveMetadataIndex.Entry entry(int row) {
+        return new DriveMetadataIndex.Entry(mItems.getId(row),
+                mItems.getString(row, NAME),
+                mItems.getString(row, PARENT_ID),
+                mItems.getLong(row, SIZE),
+                mItems.getString(row, E_TAG),
+                mItems.getString(row, LAST_MODIFIED),
+                0 != mItems.getLong(row, IS_FOLDER),
+                mItems.getString(row, QUICK_XOR_HASH),
+                mItems.getString(row, SHA1_HASH));
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.drive;
+
+import com.microsoft.office365.microsoftgraphvos.DriveItem;
+import com.microsoft.office365.microsoftgraphvos.Hashes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local index of drive item metadata, filled by a {@link DriveCrawler} as it walks the drive.
+ * Items can be looked up by id or listed by folder while the crawl is still running. Only the
+ * few properties needed to browse and compare items are kept, so a drive of a few hundred
+ * thousand items fits comfortably in memory.
+ */
+public class DriveMetadataIndex implements DriveCrawler.Listener {
+
+    private final ConcurrentMap<String, Entry> mEntries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, Entry>> mChildren =
+            new ConcurrentHashMap<>();
+    private final AtomicLong mTotalSize = new AtomicLong();
+
+    @Override
+    public void onItems(String folderId, List<DriveItem> items) {
+        ConcurrentMap<String, Entry> children = mChildren.get(folderId);
+        if (null == children) {
+            ConcurrentMap<String, Entry> created = new ConcurrentHashMap<>();
+            children = mChildren.putIfAbsent(folderId, created);
+            if (null == children) {
+                children = created;
+            }
+        }
+        for (DriveItem item : items) {
+            Entry entry = new Entry(item, folderId);
+            Entry previous = mEntries.put(entry.id, entry);
+            mTotalSize.addAndGet(fileSize(entry) - fileSize(previous));
+            children.put(entry.id, entry);
+            if (null != previous && !folderId.equals(previous.parentId)) {
+                // the item moved
+                Map<String, Entry> previousSiblings = mChildren.get(previous.parentId);
+                if (null != previousSiblings) {
+                    previousSiblings.remove(entry.id);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param id The id of an item
+     * @return the item, or null if it hasn't been indexed
+     */
+    public Entry get(String id) {
+        return mEntries.get(id);
+    }
+
+    /**
+     * @param folderId The id of a folder, or "root"
+     * @return the folder's children indexed so far
+     */
+    public List<Entry> getChildren(String folderId) {
+        Map<String, Entry> children = mChildren.get(folderId);
+        return null == children
+                ? Collections.<Entry>emptyList()
+                : new ArrayList<>(children.values());
+    }
+
+    /**
+     * @param folderId The id of a folder, or "root"
+     * @param name     The name of an item in the folder
+     * @return the item, or null if the folder has no item of that name indexed
+     */
+    public Entry getChild(String folderId, String name) {
+        Map<String, Entry> children = mChildren.get(folderId);
+        if (null != children) {
+            // names are case insensitive on OneDrive
+            for (Entry entry : children.values()) {
+                if (name.equalsIgnoreCase(entry.name)) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param id The id of an item
+     * @return the item's path from the root, e.g. /Documents/Report.docx, or null if it hasn't
+     * been indexed
+     */
+    public String getPath(String id) {
+        Entry entry = mEntries.get(id);
+        if (null == entry) {
+            return null;
+        }
+        List<String> names = new ArrayList<>();
+        for (; null != entry; entry = mEntries.get(entry.parentId)) {
+            names.add(entry.name);
+        }
+        StringBuilder path = new StringBuilder();
+        for (int i = names.size() - 1; i >= 0; i--) {
+            path.append('/').append(names.get(i));
+        }
+        return path.toString();
+    }
+
+    /**
+     * @return every item indexed, as a live view
+     */
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(mEntries.values());
+    }
+
+    /**
+     * @return the number of items indexed
+     */
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * @return the total size in bytes of the files indexed
+     */
+    public long getTotalSize() {
+        return mTotalSize.get();
+    }
+
+    private static long fileSize(Entry entry) {
+        return null == entry || entry.isFolder ? 0 : entry.size;
+    }
+
+    /**
+     * The metadata kept for a drive item
+     */
+    public static class Entry {
+
+        public final String id;
+        public final String name;
+        public final String parentId;
+        public final long size;
+        public final String eTag;
+        public final String lastModifiedDateTime;
+        public final boolean isFolder;
+        public final String quickXorHash;
+        public final String sha1Hash;
+
+        Entry(DriveItem item, String parentId) {
+            this(item.id,
+                    item.name,
+                    parentId,
+                    null == item.size ? 0 : item.size,
+                    item.eTag,
+                    item.lastModifiedDateTime,
+                    null != item.folder,
+                    null == hashes(item) ? null : hashes(item).quickXorHash,
+                    null == hashes(item) ? null : hashes(item).sha1Hash);
+        }
+
+        Entry(String id,
+              String name,
+              String parentId,
+              long size,
+              String eTag,
+              String lastModifiedDateTime,
+              boolean isFolder,
+              String quickXorHash,
+              String sha1Hash) {
+            this.id = id;
+            this.name = name;
+            this.parentId = parentId;
+            this.size = size;
+            this.eTag = eTag;
+            this.lastModifiedDateTime = lastModifiedDateTime;
+            this.isFolder = isFolder;
+            this.quickXorHash = quickXorHash;
+            this.sha1Hash = sha1Hash;
+        }
+
+        private static Hashes hashes(DriveItem item) {
+            return null == item.fileFacet ? null : item.fileFacet.hashes;
+        }
+    }
+}
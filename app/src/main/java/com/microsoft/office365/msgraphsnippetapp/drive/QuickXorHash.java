@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.drive;
+
+import okio.ByteString;
+
+/**
+ * The quickXorHash OneDrive reports for every file: each byte is XORed into a 160-bit circular
+ * register at a position that moves 11 bits per byte, and the length is XORed into the last 64
+ * bits at the end.
+ * <p>
+ * Because the hash is a plain XOR of per-byte contributions, a file can be hashed in parts: a
+ * hash started at the offset of its part and fed only that part can be {@link #combine combined}
+ * with the others, in any order, into the hash of the whole file.
+ */
+public class QuickXorHash {
+
+    private static final int WIDTH_IN_BITS = 160;
+    private static final int SHIFT = 11;
+    private static final int BITS_IN_LAST_CELL = 32;
+
+    private final long[] mData = new long[(WIDTH_IN_BITS - 1) / 64 + 1];
+    private long mLength;
+    private int mShift;
+
+    public QuickXorHash() {
+        this(0);
+    }
+
+    /**
+     * @param offset Where in the file the bytes fed to this hash start
+     */
+    public QuickXorHash(long offset) {
+        mShift = (int) ((offset % WIDTH_IN_BITS) * SHIFT % WIDTH_IN_BITS);
+    }
+
+    public void update(byte[] bytes, int offset, int length) {
+        int cell = mShift / 64;
+        int cellOffset = mShift % 64;
+        int iterations = Math.min(length, WIDTH_IN_BITS);
+        for (int i = 0; i < iterations; i++) {
+            boolean isLastCell = cell == mData.length - 1;
+            int bitsInCell = isLastCell ? BITS_IN_LAST_CELL : 64;
+
+            // every WIDTH_IN_BITS-th byte lands on the same bits, so fold them together first
+            long folded = 0;
+            for (int j = offset + i; j < offset + length; j += WIDTH_IN_BITS) {
+                folded ^= bytes[j] & 0xFF;
+            }
+            mData[cell] ^= folded << cellOffset;
+            if (cellOffset > bitsInCell - 8) {
+                // the byte straddles two cells
+                mData[isLastCell ? 0 : cell + 1] ^= folded >>> (bitsInCell - cellOffset);
+            }
+
+            cellOffset += SHIFT;
+            if (cellOffset >= bitsInCell) {
+                cell = isLastCell ? 0 : cell + 1;
+                cellOffset -= bitsInCell;
+            }
+        }
+        mShift = (int) ((mShift + (long) SHIFT * (length % WIDTH_IN_BITS)) % WIDTH_IN_BITS);
+        mLength += length;
+    }
+
+    /**
+     * Folds in the hash of another part of the same file
+     *
+     * @param other A hash started at the offset of its part
+     */
+    public void combine(QuickXorHash other) {
+        for (int i = 0; i < mData.length; i++) {
+            mData[i] ^= other.mData[i];
+        }
+        mLength += other.mLength;
+    }
+
+    /**
+     * @return the 20 byte hash
+     */
+    public byte[] digest() {
+        byte[] digest = new byte[(WIDTH_IN_BITS - 1) / 8 + 1];
+        for (int i = 0; i < digest.length; i++) {
+            digest[i] = (byte) (mData[i / 8] >>> (8 * (i % 8)));
+        }
+        for (int i = 0; i < 8; i++) {
+            digest[digest.length - 8 + i] ^= (byte) (mLength >>> (8 * i));
+        }
+        return digest;
+    }
+
+    /**
+     * @return the hash in base64, as reported in a DriveItem's file facet
+     */
+    public String toBase64() {
+        return ByteString.of(digest()).base64();
+    }
+}
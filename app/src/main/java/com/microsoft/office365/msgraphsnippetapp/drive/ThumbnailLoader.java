@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.drive;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.ImageView;
+
+import com.microsoft.office365.microsoftgraphvos.ThumbnailSet;
+import com.microsoft.office365.msgraphapiservices.MSGraphDrivesService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Response;
+import timber.log.Timber;
+
+/**
+ * Loads drive item thumbnails into ImageViews.
+ * <p>
+ * Decoded thumbnails are kept in a memory cache bounded by their size in bytes, and the
+ * downloaded images in a {@link DriveContentCache}, so a thumbnail is downloaded once per
+ * version of its item. Downloading and decoding happen on a small pool of threads that takes
+ * the most recent request first, so the rows on screen load before the ones scrolled past.
+ * Images are decoded at a power of two below their size that still covers the view, in
+ * RGB_565, to keep the memory per thumbnail small.
+ * <p>
+ * Each ImageView has at most one request: loading another thumbnail into it, or recycling its
+ * row, cancels the one in progress. Call the methods on the main thread.
+ */
+public class ThumbnailLoader {
+
+    static final int SMALL_SIZE = 96;
+    static final int MEDIUM_SIZE = 176;
+
+    private final MSGraphDrivesService mService;
+    private final String mVersion;
+    private final DriveContentCache mDiskCache;
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Map<ImageView, Request> mRequests = new WeakHashMap<>();
+
+    /**
+     * @param service        The drives service to download thumbnails with, e.g. created
+     *                       from {@code SnippetApp.getRetrofit(Priority.PREFETCH)}
+     * @param version        The version of the API to use (beta, v1, etc...)
+     * @param diskCache      Where downloaded thumbnails are kept
+     * @param maxMemoryBytes The most memory the decoded thumbnails may take
+     * @param threads        How many thumbnails to download and decode at once
+     */
+    public ThumbnailLoader(MSGraphDrivesService service,
+                           String version,
+                           DriveContentCache diskCache,
+                           int maxMemoryBytes,
+                           int threads) {
+        mService = service;
+        mVersion = version;
+        mDiskCache = diskCache;
+        mMemoryCache = new LruCache<String, Bitmap>(maxMemoryBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+        mExecutor = new ThreadPoolExecutor(
+                threads, threads, 0, TimeUnit.MILLISECONDS, new LastInFirstOutQueue());
+    }
+
+    /**
+     * Shows an item's thumbnail in a view, cancelling whatever the view was loading
+     *
+     * @param view   The view to show the thumbnail in
+     * @param itemId The id of the drive item
+     * @param eTag   The item's eTag, so a changed item gets a new thumbnail
+     * @param size   The size of the view in pixels
+     */
+    public void load(ImageView view, String itemId, String eTag, int size) {
+        cancel(view);
+        String thumbnailSize = thumbnailSize(size);
+        String key = itemId + "/" + thumbnailSize + "/" + eTag;
+        Bitmap bitmap = mMemoryCache.get(key);
+        view.setImageBitmap(bitmap);
+        if (null != bitmap) {
+            return;
+        }
+        Request request = new Request(view, key, itemId, eTag, thumbnailSize, size);
+        mRequests.put(view, request);
+        request.mFuture = mExecutor.submit(request);
+    }
+
+    /**
+     * Stops loading a thumbnail into a view
+     *
+     * @param view The view
+     */
+    public void cancel(ImageView view) {
+        Request request = mRequests.remove(view);
+        if (null != request) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * @return a listener that cancels the thumbnails of a list's rows as they are recycled
+     */
+    public AbsListView.RecyclerListener getRecyclerListener() {
+        return new AbsListView.RecyclerListener() {
+            @Override
+            public void onMovedToScrapHeap(View view) {
+                cancelAll(view);
+            }
+        };
+    }
+
+    /**
+     * Cancels every request and empties the memory cache
+     */
+    public void clear() {
+        for (Request request : mRequests.values()) {
+            request.cancel();
+        }
+        mRequests.clear();
+        mMemoryCache.evictAll();
+    }
+
+    private void cancelAll(View view) {
+        if (view instanceof ImageView) {
+            cancel((ImageView) view);
+        } else if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                cancelAll(group.getChildAt(i));
+            }
+        }
+    }
+
+    private void deliver(final Request request, final Bitmap bitmap) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // the view may have moved on to another item in the meantime
+                if (mRequests.get(request.mView) == request && !request.mCancelled) {
+                    mRequests.remove(request.mView);
+                    if (null != bitmap) {
+                        request.mView.setImageBitmap(bitmap);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Picks the smallest predefined thumbnail that covers the view, or a custom one for views
+     * larger than the medium thumbnail so that large thumbnails aren't downloaded needlessly
+     */
+    static String thumbnailSize(int size) {
+        if (size <= SMALL_SIZE) {
+            return ThumbnailSet.SMALL;
+        }
+        if (size <= MEDIUM_SIZE) {
+            return ThumbnailSet.MEDIUM;
+        }
+        return "c" + size + "x" + size;
+    }
+
+    static int sampleSize(int width, int height, int size) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= size && height / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private class Request implements Runnable {
+
+        final ImageView mView;
+        final String mKey;
+        final String mItemId;
+        final String mETag;
+        final String mThumbnailSize;
+        final int mSize;
+        volatile boolean mCancelled;
+        volatile Future<?> mFuture;
+        volatile Call<ResponseBody> mCall;
+
+        Request(ImageView view,
+                String key,
+                String itemId,
+                String eTag,
+                String thumbnailSize,
+                int size) {
+            mView = view;
+            mKey = key;
+            mItemId = itemId;
+            mETag = eTag;
+            mThumbnailSize = thumbnailSize;
+            mSize = size;
+        }
+
+        void cancel() {
+            mCancelled = true;
+            Future<?> future = mFuture;
+            if (null != future) {
+                future.cancel(false);
+            }
+            Call<ResponseBody> call = mCall;
+            if (null != call) {
+                call.cancel();
+            }
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+            Bitmap bitmap = mMemoryCache.get(mKey);
+            try {
+                if (null == bitmap) {
+                    bitmap = decode();
+                }
+                if (null != bitmap) {
+                    mMemoryCache.put(mKey, bitmap);
+                }
+            } catch (IOException e) {
+                if (!mCancelled) {
+                    Timber.w(e, "Unable to load the thumbnail of %s", mItemId);
+                }
+            }
+            // delivered even without a thumbnail, so the request is let go of
+            deliver(this, bitmap);
+        }
+
+        private Bitmap decode() throws IOException {
+            String diskKey = mItemId + "/" + mThumbnailSize;
+            if (!mDiskCache.contains(diskKey, mETag)) {
+                mCall = mService.getThumbnailContent(mVersion, mItemId, mThumbnailSize);
+                if (mCancelled) {
+                    return null;
+                }
+                Response<ResponseBody> response = mCall.execute();
+                if (!response.isSuccessful()) {
+                    // most often the item has no thumbnail, e.g. a folder
+                    closeQuietly(response.errorBody());
+                    return null;
+                }
+                try {
+                    mDiskCache.put(diskKey, mETag, response.body().byteStream());
+                } finally {
+                    response.body().close();
+                }
+            }
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            decodeFromDisk(diskKey, options);
+            if (options.outWidth <= 0 || mCancelled) {
+                return null;
+            }
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = sampleSize(options.outWidth, options.outHeight, mSize);
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            return decodeFromDisk(diskKey, options);
+        }
+
+        private Bitmap decodeFromDisk(String diskKey, BitmapFactory.Options options)
+                throws IOException {
+            InputStream in = mDiskCache.get(diskKey, mETag);
+            if (null == in) {
+                // evicted in the meantime
+                return null;
+            }
+            try {
+                return BitmapFactory.decodeStream(in, null, options);
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    private static void closeQuietly(ResponseBody body) {
+        if (null != body) {
+            body.close();
+        }
+    }
+
+    /**
+     * A work queue that hands out the newest task first
+     */
+    private static class LastInFirstOutQueue extends LinkedBlockingDeque<Runnable> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public boolean offer(Runnable runnable) {
+            return offerFirst(runnable);
+        }
+    }
+}
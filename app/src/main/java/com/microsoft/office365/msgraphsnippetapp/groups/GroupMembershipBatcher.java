@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.groups;
+
+import com.microsoft.office365.microsoftgraphvos.DirectoryObjectReference;
+import com.microsoft.office365.microsoftgraphvos.GroupMembersBind;
+import com.microsoft.office365.msgraphapiservices.MSGraphGroupsService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Response;
+import timber.log.Timber;
+
+/**
+ * Adds and removes group members in bulk. Members are added up to
+ * {@link #MAX_MEMBERS_PER_REQUEST} at a time with a <code>members@odata.bind</code> PATCH, and
+ * the chunks are sent concurrently on the given executor, whose size bounds how many requests
+ * are in flight. If the service rejects a chunk as invalid, its members are retried one at a time
+ * so that the failure can be reported against the member that caused it.
+ * <p>
+ * A request that is throttled (429), finds the service unavailable (503, 504) or gets no
+ * response is sent again, whole, up to {@link #MAX_ATTEMPTS} times in all, after the
+ * <code>Retry-After</code> time or an exponential backoff.
+ * <p>
+ * The methods block until every request has completed, so call them off the main thread.
+ */
+public class GroupMembershipBatcher {
+
+    /**
+     * The most <code>members@odata.bind</code> references the service accepts in one request
+     */
+    public static final int MAX_MEMBERS_PER_REQUEST = 20;
+
+    static final int MAX_ATTEMPTS = 4;
+
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60 * 1000;
+
+    private final MSGraphGroupsService mService;
+    private final String mVersion;
+    private final String mDirectoryObjectsUrl;
+    private final ExecutorService mExecutor;
+
+    /**
+     * @param service  The groups service to send requests with
+     * @param version  The version of the API to use (beta, v1, etc...)
+     * @param endpoint The root of the API, e.g. https://graph.microsoft.com
+     * @param executor Runs the requests; its size bounds how many are in flight at once
+     */
+    public GroupMembershipBatcher(MSGraphGroupsService service,
+                                  String version,
+                                  String endpoint,
+                                  ExecutorService executor) {
+        mService = service;
+        mVersion = version;
+        mDirectoryObjectsUrl = endpoint + "/" + version + "/directoryObjects/";
+        mExecutor = executor;
+    }
+
+    /**
+     * Adds members to a group
+     *
+     * @param groupId   The group to add the members to
+     * @param memberIds The ids of the users, groups or contacts to add
+     * @return the outcome for each member
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public Result addMembers(final String groupId, Collection<String> memberIds)
+            throws InterruptedException {
+        final Result result = new Result();
+        List<String> members = new ArrayList<>(new LinkedHashSet<>(memberIds));
+        List<Future<?>> chunks = new ArrayList<>();
+        for (int start = 0; start < members.size(); start += MAX_MEMBERS_PER_REQUEST) {
+            final List<String> chunk = members.subList(
+                    start, Math.min(start + MAX_MEMBERS_PER_REQUEST, members.size()));
+            chunks.add(mExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    addChunk(groupId, chunk, result);
+                }
+            }));
+        }
+        await(chunks);
+        return result;
+    }
+
+    /**
+     * Removes members from a group. The service has no bulk form of this request, so each
+     * member is removed with its own request, concurrently.
+     *
+     * @param groupId   The group to remove the members from
+     * @param memberIds The ids of the directory objects to remove
+     * @return the outcome for each member
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public Result removeMembers(final String groupId, Collection<String> memberIds)
+            throws InterruptedException {
+        final Result result = new Result();
+        List<Future<?>> requests = new ArrayList<>();
+        for (final String memberId : new LinkedHashSet<>(memberIds)) {
+            requests.add(mExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    execute(mService.removeGroupMember(mVersion, groupId, memberId),
+                            memberId,
+                            result);
+                }
+            }));
+        }
+        await(requests);
+        return result;
+    }
+
+    private void addChunk(String groupId, List<String> chunk, Result result) {
+        GroupMembersBind bind = new GroupMembersBind();
+        bind.members = new String[chunk.size()];
+        for (int i = 0; i < chunk.size(); i++) {
+            bind.members[i] = mDirectoryObjectsUrl + chunk.get(i);
+        }
+        Response<ResponseBody> response;
+        try {
+            response = send(mService.addGroupMembers(mVersion, groupId, bind));
+        } catch (IOException e) {
+            Timber.w(e, "Adding %d members to %s failed", chunk.size(), groupId);
+            for (String memberId : chunk) {
+                result.mFailures.put(memberId, String.valueOf(e.getMessage()));
+            }
+            return;
+        }
+        if (response.isSuccessful()) {
+            closeQuietly(response);
+            result.mSucceeded.addAll(chunk);
+            return;
+        }
+        if (400 != response.code()) {
+            // not about any one member, so retrying them one at a time would fail the same way
+            String failure = response.code() + " " + errorBody(response);
+            closeQuietly(response);
+            for (String memberId : chunk) {
+                result.mFailures.put(memberId, failure);
+            }
+            return;
+        }
+        closeQuietly(response);
+        Timber.w("Adding %d members to %s was rejected, retrying one at a time",
+                chunk.size(), groupId);
+        // the whole chunk is rejected if any member is, so find out which ones
+        for (String memberId : chunk) {
+            DirectoryObjectReference reference = new DirectoryObjectReference();
+            reference.odataId = mDirectoryObjectsUrl + memberId;
+            execute(mService.addGroupMember(mVersion, groupId, reference), memberId, result);
+        }
+    }
+
+    private static void execute(Call<ResponseBody> call, String memberId, Result result) {
+        try {
+            Response<ResponseBody> response = send(call);
+            if (response.isSuccessful()) {
+                result.mSucceeded.add(memberId);
+            } else {
+                result.mFailures.put(memberId, response.code() + " " + errorBody(response));
+            }
+            closeQuietly(response);
+        } catch (IOException e) {
+            result.mFailures.put(memberId, String.valueOf(e.getMessage()));
+        }
+    }
+
+    // sends the call, and again while it is throttled or gets no response, up to MAX_ATTEMPTS
+    private static Response<ResponseBody> send(Call<ResponseBody> call) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            long delay;
+            try {
+                Response<ResponseBody> response = call.execute();
+                if (!isRetryable(response.code()) || MAX_ATTEMPTS == attempt) {
+                    return response;
+                }
+                delay = retryAfter(response.headers().get("Retry-After"), attempt);
+                closeQuietly(response);
+            } catch (IOException e) {
+                if (MAX_ATTEMPTS == attempt) {
+                    throw e;
+                }
+                delay = backoff(attempt);
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while backing off", e);
+            }
+            call = call.clone();
+        }
+    }
+
+    private static boolean isRetryable(int status) {
+        return 429 == status || 503 == status || 504 == status;
+    }
+
+    private static long retryAfter(String header, int attempt) {
+        if (null != header) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(header.trim()));
+            } catch (NumberFormatException e) {
+                // not a number of seconds, back off instead
+            }
+        }
+        return backoff(attempt);
+    }
+
+    private static long backoff(int attempt) {
+        return Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(attempt - 1, 16));
+    }
+
+    private static String errorBody(Response<ResponseBody> response) {
+        try {
+            return null == response.errorBody() ? response.message() : response.errorBody().string();
+        } catch (IOException e) {
+            return response.message();
+        }
+    }
+
+    private static void closeQuietly(Response<ResponseBody> response) {
+        if (null != response.body()) {
+            response.body().close();
+        }
+        if (null != response.errorBody()) {
+            response.errorBody().close();
+        }
+    }
+
+    private static void await(List<Future<?>> futures) throws InterruptedException {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            // the tasks report their own failures, so this is a programming error
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The outcome of a bulk membership operation
+     */
+    public static class Result {
+
+        private final Collection<String> mSucceeded =
+                Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        private final Map<String, String> mFailures = new ConcurrentHashMap<>();
+
+        /**
+         * @return the ids of the members that were added or removed
+         */
+        public Collection<String> getSucceeded() {
+            return Collections.unmodifiableCollection(mSucceeded);
+        }
+
+        /**
+         * @return the ids of the members that failed, mapped to the reason given by the service
+         */
+        public Map<String, String> getFailures() {
+            return Collections.unmodifiableMap(mFailures);
+        }
+
+        public boolean isSuccessful() {
+            return mFailures.isEmpty();
+        }
+    }
+}
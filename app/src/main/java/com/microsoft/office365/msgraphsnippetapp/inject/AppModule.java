@@ -4,17 +4,14 @@
  */
 package com.microsoft.office365.msgraphsnippetapp.inject;
 
-import android.content.Context;
-import android.content.SharedPreferences;
-
 import com.microsoft.office365.msgraphsnippetapp.ServiceConstants;
 import com.microsoft.office365.msgraphsnippetapp.application.SnippetApp;
-import com.microsoft.office365.msgraphsnippetapp.util.SharedPrefsUtil;
 
 import java.io.IOException;
 
 import dagger.Module;
 import dagger.Provides;
+import okhttp3.HttpUrl;
 import okhttp3.Interceptor;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -27,6 +24,9 @@ public class AppModule {
 
     public static final String PREFS = "com.microsoft.o365_android_unified_API_REST_snippets";
 
+    private static final String GRAPH_HOST =
+            HttpUrl.parse(ServiceConstants.AUTHENTICATION_RESOURCE_ID).host();
+
     @Provides
     @SuppressWarnings("unused") // not actually unused -- used by Dagger
     public String providesRestEndpoint() {
@@ -45,15 +45,14 @@ public class AppModule {
         return new Interceptor() {
             @Override
             public Response intercept(Chain chain) throws IOException {
-                // apply the Authorization header if we had a token...
-                final SharedPreferences preferences
-                        = SnippetApp.getApp().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
-                final String token =
-                        preferences.getString(SharedPrefsUtil.PREF_AUTH_TOKEN, null);
-
+                // the Authorization header is added by each Retrofit's AccountSessionInterceptor,
+                // for the account its services call as
                 Request request = chain.request();
+                // upload session urls are on other hosts, so only Graph requests are tagged
+                if (!GRAPH_HOST.equals(request.url().host())) {
+                    return chain.proceed(request);
+                }
                 request = request.newBuilder()
-                        .addHeader("Authorization", "Bearer " + token)
                         // This header has been added to identify this sample in the Microsoft Graph service.
                         // If you're using this code for your project please remove the following line.
                         .addHeader("SampleID", "android-java-snippets-rest-sample")
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.mail;
+
+import com.google.gson.JsonParser;
+import com.microsoft.office365.microsoftgraphvos.AttachmentItem;
+import com.microsoft.office365.microsoftgraphvos.Message;
+import com.microsoft.office365.microsoftgraphvos.UploadSession;
+import com.microsoft.office365.microsoftgraphvos.UploadSessionRequest;
+import com.microsoft.office365.msgraphapiservices.MSGraphMailService;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLConnection;
+import java.util.List;
+
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+import timber.log.Timber;
+
+/**
+ * Sends a Message with file attachments without ever holding an attachment in memory.
+ * <p>
+ * The message is saved as a draft first. Attachments of up to {@link #MAX_INLINE_ATTACHMENT}
+ * bytes are added in one request whose base64 content is encoded from the file as it is
+ * written; larger ones go through an upload session, one {@link #UPLOAD_RANGE_SIZE} range at
+ * a time, each streamed from disk. Peak memory stays at a few buffers whatever the size of the
+ * attachments. The draft is sent once every attachment has been added.
+ * <p>
+ * The methods block until the service has answered, so call them off the main thread.
+ */
+public class AttachmentMessageSender {
+
+    /**
+     * The largest attachment the service accepts in a single request
+     */
+    public static final long MAX_INLINE_ATTACHMENT = 3 * 1024 * 1024;
+
+    /**
+     * Upload session ranges must be a multiple of 320 KiB
+     */
+    static final long UPLOAD_RANGE_SIZE = 10 * 320 * 1024;
+
+    static final int MAX_RANGE_ATTEMPTS = 3;
+
+    private final MSGraphMailService mService;
+    private final String mVersion;
+
+    /**
+     * @param service The mail service to send requests with
+     * @param version The version of the API to use (beta, v1, etc...)
+     */
+    public AttachmentMessageSender(MSGraphMailService service, String version) {
+        mService = service;
+        mVersion = version;
+    }
+
+    /**
+     * Creates a draft, attaches the files to it and sends it
+     *
+     * @param message     The message to send
+     * @param attachments The files to attach
+     * @return the id the message had as a draft
+     * @throws IOException if a request fails or a file can't be read
+     */
+    public String send(Message message, List<File> attachments) throws IOException {
+        Response<ResponseBody> draft = mService.createDraft(mVersion, message).execute();
+        String messageId = new JsonParser().parse(successful(draft).charStream())
+                .getAsJsonObject().get("id").getAsString();
+        close(draft.body());
+
+        for (File attachment : attachments) {
+            attach(messageId, attachment);
+        }
+
+        close(successful(mService.sendDraft(mVersion, messageId).execute()));
+        return messageId;
+    }
+
+    /**
+     * Adds a file to a draft, in one request or through an upload session depending on its size
+     *
+     * @param messageId  The draft to attach to
+     * @param attachment The file to attach
+     * @throws IOException if a request fails or the file can't be read
+     */
+    public void attach(String messageId, File attachment) throws IOException {
+        String contentType = contentType(attachment);
+        if (attachment.length() <= MAX_INLINE_ATTACHMENT) {
+            Base64AttachmentRequestBody body = new Base64AttachmentRequestBody(attachment, contentType);
+            close(successful(mService.addAttachment(mVersion, messageId, body).execute()));
+            return;
+        }
+
+        UploadSessionRequest request = new UploadSessionRequest();
+        request.attachmentItem = new AttachmentItem();
+        request.attachmentItem.name = attachment.getName();
+        request.attachmentItem.size = attachment.length();
+        request.attachmentItem.contentType = contentType;
+        Response<UploadSession> session =
+                mService.createAttachmentUploadSession(mVersion, messageId, request).execute();
+        upload(successful(session).uploadUrl, attachment);
+    }
+
+    private void upload(String uploadUrl, File file) throws IOException {
+        long length = file.length();
+        long offset = 0;
+        int attempt = 1;
+        while (offset < length) {
+            long end = Math.min(offset + UPLOAD_RANGE_SIZE, length);
+            String contentRange = "bytes " + offset + "-" + (end - 1) + "/" + length;
+            Response<ResponseBody> response;
+            try {
+                response = mService.uploadRange(
+                        uploadUrl,
+                        contentRange,
+                        new FileRangeRequestBody(file, offset, end - offset)).execute();
+            } catch (IOException e) {
+                // the connection dropped, so send the same range again
+                if (attempt++ == MAX_RANGE_ATTEMPTS) {
+                    throw e;
+                }
+                Timber.w(e, "Uploading %s failed, retrying", contentRange);
+                continue;
+            }
+            close(successful(response));
+            offset = end;
+            attempt = 1;
+        }
+    }
+
+    private static String contentType(File file) {
+        String contentType = URLConnection.guessContentTypeFromName(file.getName());
+        return null == contentType ? "application/octet-stream" : contentType;
+    }
+
+    private static void close(ResponseBody body) {
+        if (null != body) {
+            body.close();
+        }
+    }
+
+    private static <T> T successful(Response<T> response) throws IOException {
+        if (response.isSuccessful()) {
+            return response.body();
+        }
+        String error = null == response.errorBody() ? "" : response.errorBody().string();
+        throw new IOException("HTTP " + response.code() + " " + response.message() + " " + error);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.mail;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+/**
+ * The JSON of a fileAttachment whose <code>contentBytes</code> are base64 encoded from the
+ * file as the body is written to the network, a few kilobytes at a time, instead of the whole
+ * file being encoded into a string first
+ */
+class Base64AttachmentRequestBody extends RequestBody {
+
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    // a multiple of 3, so that no chunk but the last is padded
+    private static final int CHUNK_SIZE = 3 * 16 * 1024;
+
+    private final File mFile;
+    private final String mPrefix;
+    private final String mSuffix = "\"}";
+
+    Base64AttachmentRequestBody(File file, String contentType) {
+        mFile = file;
+        Gson gson = new Gson();
+        mPrefix = "{\"@odata.type\":\"#microsoft.graph.fileAttachment\""
+                + ",\"name\":" + gson.toJson(file.getName())
+                + ",\"contentType\":" + gson.toJson(contentType)
+                + ",\"contentBytes\":\"";
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+
+    @Override
+    public long contentLength() {
+        long encoded = (mFile.length() + 2) / 3 * 4;
+        return ByteString.encodeUtf8(mPrefix).size() + encoded + mSuffix.length();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        sink.writeUtf8(mPrefix);
+        BufferedSource source = Okio.buffer(Okio.source(mFile));
+        try {
+            while (!source.exhausted()) {
+                // buffer a whole chunk, so that only the last one is padded
+                source.request(CHUNK_SIZE);
+                long size = Math.min(CHUNK_SIZE, source.buffer().size());
+                sink.writeUtf8(source.readByteString(size).base64());
+            }
+        } finally {
+            source.close();
+        }
+        sink.writeUtf8(mSuffix);
+    }
+}
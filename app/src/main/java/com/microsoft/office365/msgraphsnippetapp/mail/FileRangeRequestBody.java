@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.mail;
+
+import java.io.File;
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSource;
+import okio.BufferedSink;
+import okio.Okio;
+
+/**
+ * A request body that streams a range of a file from disk as it is written to the network,
+ * so the range is never held in memory
+ */
+public class FileRangeRequestBody extends RequestBody {
+
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+
+    private final File mFile;
+    private final long mOffset;
+    private final long mLength;
+
+    public FileRangeRequestBody(File file, long offset, long length) {
+        mFile = file;
+        mOffset = offset;
+        mLength = length;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return OCTET_STREAM;
+    }
+
+    @Override
+    public long contentLength() {
+        return mLength;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        BufferedSource source = Okio.buffer(Okio.source(mFile));
+        try {
+            source.skip(mOffset);
+            sink.write(source, mLength);
+        } finally {
+            source.close();
+        }
+    }
+}
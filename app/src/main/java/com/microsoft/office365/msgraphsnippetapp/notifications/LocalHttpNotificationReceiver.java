@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.notifications;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.microsoft.office365.microsoftgraphvos.ChangeNotification;
+import com.microsoft.office365.microsoftgraphvos.Envelope;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import timber.log.Timber;
+
+/**
+ * A {@link NotificationReceiver} backed by a minimal HTTP server on a local port.
+ * <p>
+ * The service only posts to public HTTPS URLs, so in the app this is put behind a tunnel or
+ * relay whose address is given as the public URL; in tests, notifications can be posted to it
+ * directly. Connections are handled one at a time on a single thread: validation requests are
+ * answered with their token and notification posts with 202 Accepted, which is sent before the
+ * listener is called so the service is never kept waiting.
+ */
+public class LocalHttpNotificationReceiver implements NotificationReceiver {
+
+    static final int MAX_BODY_BYTES = 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Type NOTIFICATIONS =
+            new TypeToken<Envelope<ChangeNotification>>() { }.getType();
+    private static final int SO_TIMEOUT_MILLIS = 10 * 1000;
+
+    private final int mPort;
+    private final String mPublicUrl;
+    private final Gson mGson = new Gson();
+    private ServerSocket mServerSocket;
+
+    /**
+     * @param port      The local port to listen on, or 0 for any free port
+     * @param publicUrl The URL the service reaches this receiver at, or null to use the local
+     *                  address
+     */
+    public LocalHttpNotificationReceiver(int port, String publicUrl) {
+        mPort = port;
+        mPublicUrl = publicUrl;
+    }
+
+    @Override
+    public synchronized void start(final Listener listener) throws IOException {
+        if (null != mServerSocket) {
+            throw new IllegalStateException("The receiver has already been started");
+        }
+        mServerSocket = new ServerSocket(mPort, 50, InetAddress.getLoopbackAddress());
+        final ServerSocket serverSocket = mServerSocket;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept(serverSocket, listener);
+            }
+        }, "notification-receiver");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized String getNotificationUrl() {
+        if (null != mPublicUrl) {
+            return mPublicUrl;
+        }
+        if (null == mServerSocket) {
+            throw new IllegalStateException("The receiver hasn't been started");
+        }
+        return "http://localhost:" + mServerSocket.getLocalPort() + "/";
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (null != mServerSocket) {
+            mServerSocket.close();
+            mServerSocket = null;
+        }
+    }
+
+    private void accept(ServerSocket serverSocket, Listener listener) {
+        while (!serverSocket.isClosed()) {
+            List<ChangeNotification> notifications;
+            try (Socket socket = serverSocket.accept()) {
+                socket.setSoTimeout(SO_TIMEOUT_MILLIS);
+                notifications = handle(
+                        new BufferedInputStream(socket.getInputStream()), socket.getOutputStream());
+            } catch (SocketException e) {
+                // the server socket was closed
+                continue;
+            } catch (IOException | RuntimeException e) {
+                Timber.w(e, "Unable to handle a notification request");
+                continue;
+            }
+            if (!notifications.isEmpty()) {
+                try {
+                    listener.onNotifications(notifications);
+                } catch (RuntimeException e) {
+                    // this is the only thread receiving notifications; keep it running
+                    Timber.e(e, "Unable to deliver notifications");
+                }
+            }
+        }
+    }
+
+    private List<ChangeNotification> handle(InputStream in, OutputStream out) throws IOException {
+        String[] requestLine = readLine(in).split(" ");
+        int contentLength = 0;
+        for (String header; !(header = readLine(in)).isEmpty(); ) {
+            int colon = header.indexOf(':');
+            if (colon > 0 && "content-length".equals(
+                    header.substring(0, colon).trim().toLowerCase(Locale.US))) {
+                try {
+                    contentLength = Integer.parseInt(header.substring(colon + 1).trim());
+                } catch (NumberFormatException e) {
+                    contentLength = -1;
+                }
+            }
+        }
+        if (requestLine.length < 2 || !"POST".equals(requestLine[0])) {
+            respond(out, "405 Method Not Allowed", "");
+            return Collections.emptyList();
+        }
+
+        String validationToken = queryParameter(requestLine[1], "validationToken");
+        if (null != validationToken) {
+            respond(out, "200 OK", validationToken);
+            return Collections.emptyList();
+        }
+
+        if (contentLength < 0) {
+            respond(out, "400 Bad Request", "");
+            return Collections.emptyList();
+        }
+        if (contentLength > MAX_BODY_BYTES) {
+            respond(out, "413 Payload Too Large", "");
+            return Collections.emptyList();
+        }
+        byte[] body = new byte[contentLength];
+        for (int read = 0, n; read < contentLength; read += n) {
+            if (-1 == (n = in.read(body, read, contentLength - read))) {
+                throw new IOException("Notification body ended early");
+            }
+        }
+        Envelope<ChangeNotification> envelope;
+        try {
+            envelope = mGson.fromJson(new String(body, UTF_8), NOTIFICATIONS);
+        } catch (JsonParseException e) {
+            respond(out, "400 Bad Request", "");
+            return Collections.emptyList();
+        }
+        respond(out, "202 Accepted", "");
+        return null == envelope || null == envelope.value
+                ? Collections.<ChangeNotification>emptyList()
+                : Arrays.asList(envelope.value);
+    }
+
+    private static String queryParameter(String target, String name) throws IOException {
+        int query = target.indexOf('?');
+        if (-1 == query) {
+            return null;
+        }
+        for (String parameter : target.substring(query + 1).split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0 && name.equals(parameter.substring(0, equals))) {
+                return URLDecoder.decode(parameter.substring(equals + 1), "UTF-8");
+            }
+        }
+        return null;
+    }
+
+    private static void respond(OutputStream out, String status, String body) throws IOException {
+        byte[] content = body.getBytes(UTF_8);
+        String head = "HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: text/plain; charset=utf-8\r\n"
+                + "Content-Length: " + content.length + "\r\n"
+                + "Connection: close\r\n\r\n";
+        out.write(head.getBytes(UTF_8));
+        out.write(content);
+        out.flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b; '\n' != (b = in.read()); ) {
+            if (-1 == b) {
+                throw new IOException("Request ended early");
+            }
+            if ('\r' != b) {
+                line.write(b);
+            }
+            if (line.size() > 8 * 1024) {
+                throw new IOException("Request line too long");
+            }
+        }
+        return line.toString("UTF-8");
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.notifications;
+
+import com.microsoft.office365.microsoftgraphvos.ChangeNotification;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * An endpoint that the service posts change notifications to. Implementations answer the
+ * validation request the service sends when a subscription is created, and hand every
+ * notification they receive to the listener.
+ */
+public interface NotificationReceiver extends Closeable {
+
+    /**
+     * Receives the notifications posted to a {@link NotificationReceiver}. It is called on the
+     * receiver's thread, so hand any slow work off to another thread.
+     */
+    interface Listener {
+
+        void onNotifications(List<ChangeNotification> notifications);
+    }
+
+    /**
+     * Starts accepting notifications
+     *
+     * @param listener Receives the notifications
+     * @throws IOException if the endpoint can't be opened
+     */
+    void start(Listener listener) throws IOException;
+
+    /**
+     * @return the URL subscriptions should send their notifications to
+     */
+    String getNotificationUrl();
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.notifications;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.microsoft.office365.microsoftgraphvos.ChangeNotification;
+import com.microsoft.office365.microsoftgraphvos.Subscription;
+import com.microsoft.office365.msgraphapiservices.MSGraphSubscriptionsService;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+import timber.log.Timber;
+
+/**
+ * Creates, renews and deletes subscriptions to change notifications, and turns the
+ * notifications into fetches of just the resources that changed, so that nothing has to be
+ * polled.
+ * <p>
+ * Each subscription is renewed {@link #RENEW_MARGIN_MILLIS} before it expires. Notifications
+ * whose clientState doesn't match the secret the subscription was created with are dropped.
+ * When several notifications arrive for a resource of a subscription before it has been
+ * fetched, it is fetched once. A fetch that is throttled (429), fails on the server (5xx) or gets
+ * no response is tried again, up to {@link #MAX_FETCH_ATTEMPTS} times in all, after the
+ * <code>Retry-After</code> time or an exponential backoff. Renewals and fetches run on the given
+ * executor.
+ */
+public class SubscriptionManager implements NotificationReceiver.Listener, Closeable {
+
+    /**
+     * The longest a subscription to mail, events or contacts may last
+     */
+    public static final long MAX_LIFETIME_MILLIS = TimeUnit.MINUTES.toMillis(4230);
+
+    static final long RENEW_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    static final long RENEW_RETRY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    static final int MAX_FETCH_ATTEMPTS = 5;
+    static final long FETCH_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    /**
+     * Receives the changes to a subscribed resource. It is called on the manager's executor.
+     */
+    public interface ChangeListener {
+
+        /**
+         * @param notification The notification
+         * @param resource     The resource as it is now
+         */
+        void onChanged(ChangeNotification notification, JsonElement resource);
+
+        /**
+         * @param notification The notification of a resource that no longer exists
+         */
+        void onDeleted(ChangeNotification notification);
+    }
+
+    private final MSGraphSubscriptionsService mService;
+    private final String mVersion;
+    private final NotificationReceiver mReceiver;
+    private final ScheduledExecutorService mExecutor;
+    private final Map<String, Entry> mEntries = new ConcurrentHashMap<>();
+
+    // subscription and resource pairs with a fetch queued that hasn't started yet
+    private final Set<String> mQueuedFetches =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * @param service  The subscriptions service to send requests with
+     * @param version  The version of the API to use (beta, v1, etc...)
+     * @param receiver Where the notifications are sent; it must already be started with this
+     *                 manager as its listener
+     * @param executor Runs renewals and fetches
+     */
+    public SubscriptionManager(MSGraphSubscriptionsService service,
+                               String version,
+                               NotificationReceiver receiver,
+                               ScheduledExecutorService executor) {
+        mService = service;
+        mVersion = version;
+        mReceiver = receiver;
+        mExecutor = executor;
+    }
+
+    /**
+     * Subscribes to changes to a resource and keeps the subscription alive until it is
+     * unsubscribed. This makes a network call, so call it off the main thread.
+     *
+     * @param resource   The resource to watch, e.g. me/mailFolders('Inbox')/messages
+     * @param changeType The changes to watch, e.g. "created,updated"
+     * @param lifetime   How long each subscription period lasts, in milliseconds
+     * @param listener   Receives the changes
+     * @return the subscription
+     * @throws IOException if the subscription can't be created
+     */
+    public Subscription subscribe(String resource,
+                                  String changeType,
+                                  long lifetime,
+                                  ChangeListener listener) throws IOException {
+        Subscription request = new Subscription();
+        request.resource = resource;
+        request.changeType = changeType;
+        request.notificationUrl = mReceiver.getNotificationUrl();
+        request.clientState = UUID.randomUUID().toString();
+        request.expirationDateTime = expiration(lifetime);
+        Subscription subscription = successful(
+                mService.createSubscription(mVersion, request).execute());
+
+        Entry entry = new Entry(subscription, request.clientState, lifetime, listener);
+        mEntries.put(subscription.id, entry);
+        scheduleRenewal(entry, renewalDelay(subscription.expirationDateTime));
+        return subscription;
+    }
+
+    /**
+     * Deletes a subscription and stops renewing it. This makes a network call, so call it off
+     * the main thread.
+     *
+     * @param subscriptionId The subscription to delete
+     * @throws IOException if the subscription can't be deleted
+     */
+    public void unsubscribe(String subscriptionId) throws IOException {
+        Entry entry = mEntries.remove(subscriptionId);
+        if (null != entry) {
+            entry.cancelRenewal();
+        }
+        Response<ResponseBody> response =
+                mService.deleteSubscription(mVersion, subscriptionId).execute();
+        close(response);
+        // an expired subscription is gone already
+        if (!response.isSuccessful() && 404 != response.code()) {
+            throw new IOException("HTTP " + response.code() + " deleting " + subscriptionId);
+        }
+    }
+
+    /**
+     * Deletes every subscription
+     */
+    @Override
+    public void close() {
+        for (String subscriptionId : new ArrayList<>(mEntries.keySet())) {
+            try {
+                unsubscribe(subscriptionId);
+            } catch (IOException e) {
+                Timber.w(e, "Unable to delete subscription %s", subscriptionId);
+            }
+        }
+    }
+
+    @Override
+    public void onNotifications(List<ChangeNotification> notifications) {
+        for (final ChangeNotification notification : notifications) {
+            final Entry entry = mEntries.get(notification.subscriptionId);
+            if (null == entry || !entry.mClientState.equals(notification.clientState)) {
+                Timber.w("Dropping a notification for unknown subscription %s",
+                        notification.subscriptionId);
+                continue;
+            }
+            if (Subscription.CHANGE_DELETED.equals(notification.changeType)) {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        entry.mListener.onDeleted(notification);
+                    }
+                });
+            } else if (mQueuedFetches.add(fetchKey(notification))) {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        fetch(notification, entry, 1);
+                    }
+                });
+            }
+        }
+    }
+
+    private void fetch(ChangeNotification notification, Entry entry, int attempt) {
+        // a notification arriving from here on queues another fetch, so it isn't missed
+        mQueuedFetches.remove(fetchKey(notification));
+        if (mEntries.get(notification.subscriptionId) != entry) {
+            return;
+        }
+        try {
+            Response<ResponseBody> response =
+                    mService.getResource(mVersion, notification.resource).execute();
+            if (response.isSuccessful()) {
+                JsonElement resource = new JsonParser().parse(response.body().charStream());
+                close(response);
+                entry.mListener.onChanged(notification, resource);
+            } else if (404 == response.code()) {
+                close(response);
+                entry.mListener.onDeleted(notification);
+            } else {
+                close(response);
+                Timber.w("HTTP %d fetching %s", response.code(), notification.resource);
+                if (isRetryable(response.code())) {
+                    scheduleFetch(notification, entry, attempt,
+                            retryAfter(response.headers().get("Retry-After"), attempt));
+                }
+            }
+        } catch (IOException e) {
+            Timber.w(e, "Unable to fetch %s", notification.resource);
+            scheduleFetch(notification, entry, attempt, backoff(attempt));
+        }
+    }
+
+    private void scheduleFetch(final ChangeNotification notification,
+                               final Entry entry,
+                               final int attempt,
+                               long delayMillis) {
+        if (MAX_FETCH_ATTEMPTS == attempt) {
+            Timber.w("Giving up fetching %s after %d attempts", notification.resource, attempt);
+            return;
+        }
+        // a fetch queued since by a newer notification stands in for this one
+        if (mQueuedFetches.add(fetchKey(notification))) {
+            mExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    fetch(notification, entry, attempt + 1);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void renew(Entry entry) {
+        if (mEntries.get(entry.mSubscription.id) != entry) {
+            return;
+        }
+        Subscription request = new Subscription();
+        request.expirationDateTime = expiration(entry.mLifetime);
+        try {
+            Response<Subscription> response = mService.renewSubscription(
+                    mVersion, entry.mSubscription.id, request).execute();
+            if (404 == response.code()) {
+                // the subscription lapsed or was removed by the service, so start a new one;
+                // the old entry stays registered until that succeeds, so a failure is retried
+                Subscription replacement = subscribe(entry.mSubscription.resource,
+                        entry.mSubscription.changeType,
+                        entry.mLifetime,
+                        entry.mListener);
+                if (!mEntries.remove(entry.mSubscription.id, entry)) {
+                    // unsubscribed while the new subscription was being created
+                    unsubscribe(replacement.id);
+                }
+                return;
+            }
+            Subscription renewed = successful(response);
+            scheduleRenewal(entry, renewalDelay(renewed.expirationDateTime));
+        } catch (IOException e) {
+            Timber.w(e, "Unable to renew subscription %s", entry.mSubscription.id);
+            scheduleRenewal(entry, RENEW_RETRY_MILLIS);
+        }
+    }
+
+    private void scheduleRenewal(final Entry entry, long delayMillis) {
+        entry.mRenewal = mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                renew(entry);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static String fetchKey(ChangeNotification notification) {
+        return notification.subscriptionId + " " + notification.resource;
+    }
+
+    private static boolean isRetryable(int status) {
+        return 429 == status || 500 <= status;
+    }
+
+    private static long retryAfter(String header, int attempt) {
+        if (null != header) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(header.trim()));
+            } catch (NumberFormatException e) {
+                // not a number of seconds, back off instead
+            }
+        }
+        return backoff(attempt);
+    }
+
+    private static long backoff(int attempt) {
+        return Math.min(RENEW_RETRY_MILLIS, FETCH_RETRY_MILLIS << Math.min(attempt - 1, 16));
+    }
+
+    private static long renewalDelay(String expirationDateTime) {
+        long expiresIn = new DateTime(expirationDateTime).getMillis() - System.currentTimeMillis();
+        return Math.max(0, Math.max(expiresIn / 2, expiresIn - RENEW_MARGIN_MILLIS));
+    }
+
+    private static String expiration(long lifetime) {
+        return DateTime.now(DateTimeZone.UTC).plus(lifetime).toString();
+    }
+
+    private static void close(Response<ResponseBody> response) {
+        if (null != response.body()) {
+            response.body().close();
+        }
+        if (null != response.errorBody()) {
+            response.errorBody().close();
+        }
+    }
+
+    private static <T> T successful(Response<T> response) throws IOException {
+        if (response.isSuccessful()) {
+            return response.body();
+        }
+        String error = null == response.errorBody() ? "" : response.errorBody().string();
+        throw new IOException("HTTP " + response.code() + " " + response.message() + " " + error);
+    }
+
+    private static class Entry {
+
+        final Subscription mSubscription;
+        final String mClientState;
+        final long mLifetime;
+        final ChangeListener mListener;
+        volatile ScheduledFuture<?> mRenewal;
+
+        Entry(Subscription subscription, String clientState, long lifetime, ChangeListener listener) {
+            mSubscription = subscription;
+            mClientState = clientState;
+            mLifetime = lifetime;
+            mListener = listener;
+        }
+
+        void cancelRenewal() {
+            ScheduledFuture<?> renewal = mRenewal;
+            if (null != renewal) {
+                renewal.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.provisioning;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads users from comma separated values. The first row names the columns, using the field
+ * names of {@link UserRecord}; unknown columns are ignored. Fields may be quoted, with
+ * <code>""</code> standing for a quote, and quoted fields may span lines.
+ */
+public class CsvUserRecordReader implements UserRecordReader {
+
+    private final BufferedReader mReader;
+    private String[] mColumns;
+    private long mSequence;
+
+    public CsvUserRecordReader(Reader reader) {
+        mReader = new BufferedReader(reader);
+    }
+
+    @Override
+    public UserRecord next() throws IOException {
+        if (null == mColumns) {
+            List<String> header = readRow();
+            if (null == header) {
+                return null;
+            }
+            mColumns = header.toArray(new String[header.size()]);
+        }
+
+        List<String> row;
+        do {
+            row = readRow();
+            if (null == row) {
+                return null;
+            }
+        } while (1 == row.size() && row.get(0).isEmpty());
+
+        UserRecord record = new UserRecord();
+        record.sequence = mSequence++;
+        if (row.size() > mColumns.length) {
+            record.parseError = "Expected " + mColumns.length + " fields, found " + row.size();
+            return record;
+        }
+        for (int i = 0; i < row.size(); i++) {
+            String value = row.get(i).trim();
+            if (!value.isEmpty()) {
+                set(record, mColumns[i].trim(), value);
+            }
+        }
+        return record;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+
+    private static void set(UserRecord record, String column, String value) {
+        switch (column) {
+            case "displayName":
+                record.displayName = value;
+                break;
+            case "mailNickname":
+                record.mailNickname = value;
+                break;
+            case "userPrincipalName":
+                record.userPrincipalName = value;
+                break;
+            case "password":
+                record.password = value;
+                break;
+            case "accountEnabled":
+                record.accountEnabled = Boolean.valueOf(value);
+                break;
+            case "forceChangePasswordNextSignIn":
+                record.forceChangePasswordNextSignIn = Boolean.valueOf(value);
+                break;
+            default:
+                // not a column we provision
+        }
+    }
+
+    private List<String> readRow() throws IOException {
+        int c = mReader.read();
+        if (-1 == c) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (; -1 != c; c = mReader.read()) {
+            if (quoted) {
+                if ('"' != c) {
+                    field.append((char) c);
+                    continue;
+                }
+                mReader.mark(1);
+                if ('"' == mReader.read()) {
+                    field.append('"');
+                } else {
+                    mReader.reset();
+                    quoted = false;
+                }
+            } else if ('"' == c) {
+                quoted = true;
+            } else if (',' == c) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if ('\n' == c) {
+                break;
+            } else if ('\r' != c) {
+                field.append((char) c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.provisioning;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads one user per line, each line a JSON object such as
+ * <code>{"displayName": "Ada", "mailNickname": "ada", ...}</code>. Blank lines are skipped.
+ */
+public class JsonLinesUserRecordReader implements UserRecordReader {
+
+    private final BufferedReader mReader;
+    private final Gson mGson = new Gson();
+    private long mSequence;
+
+    public JsonLinesUserRecordReader(Reader reader) {
+        mReader = new BufferedReader(reader);
+    }
+
+    @Override
+    public UserRecord next() throws IOException {
+        String line;
+        do {
+            line = mReader.readLine();
+            if (null == line) {
+                return null;
+            }
+        } while (line.trim().isEmpty());
+
+        UserRecord record;
+        try {
+            record = mGson.fromJson(line, UserRecord.class);
+        } catch (JsonParseException e) {
+            record = null;
+            line = e.getMessage();
+        }
+        if (null == record) {
+            record = new UserRecord();
+            record.parseError = "Malformed JSON: " + line;
+        }
+        record.sequence = mSequence++;
+        return record;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.provisioning;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Remembers how far a provisioning run has got, so that a run that is stopped can be resumed
+ * without creating anyone twice. Records finish out of order, so the checkpoint saves the
+ * sequence number below which every record has finished, followed by the sequence numbers of
+ * the records that have finished above it.
+ */
+public class ProvisioningCheckpoint {
+
+    private final File mFile;
+    private final TreeSet<Long> mFinishedAhead = new TreeSet<>();
+    private long mWatermark;
+
+    private ProvisioningCheckpoint(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Opens a checkpoint, resuming from it if the file already exists
+     *
+     * @param file Where the checkpoint is kept
+     * @return the checkpoint
+     * @throws IOException if the existing checkpoint can't be read
+     */
+    public static ProvisioningCheckpoint open(File file) throws IOException {
+        ProvisioningCheckpoint checkpoint = new ProvisioningCheckpoint(file);
+        if (file.exists()) {
+            String[] sequences = FileUtils.readFileToString(file, "UTF-8").trim().split("\\s+");
+            try {
+                checkpoint.mWatermark = Long.parseLong(sequences[0]);
+                for (int i = 1; i < sequences.length; i++) {
+                    checkpoint.mFinishedAhead.add(Long.parseLong(sequences[i]));
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("Corrupt provisioning checkpoint " + file, e);
+            }
+        }
+        return checkpoint;
+    }
+
+    /**
+     * @return the sequence number below which every record has finished
+     */
+    public synchronized long getWatermark() {
+        return mWatermark;
+    }
+
+    /**
+     * @param sequence The sequence number of a record
+     * @return true if the record has finished, whether it succeeded or failed
+     */
+    public synchronized boolean isFinished(long sequence) {
+        return sequence < mWatermark || mFinishedAhead.contains(sequence);
+    }
+
+    /**
+     * Records that some records have finished, whether they succeeded or failed, and saves
+     * the checkpoint
+     *
+     * @param sequences The sequence numbers of the finished records
+     * @throws IOException if the checkpoint can't be saved
+     */
+    public synchronized void finished(Collection<Long> sequences) throws IOException {
+        mFinishedAhead.addAll(sequences);
+        long watermark = mWatermark;
+        while (!mFinishedAhead.isEmpty() && mFinishedAhead.first() == watermark) {
+            mFinishedAhead.pollFirst();
+            watermark++;
+        }
+        mWatermark = watermark;
+        save();
+    }
+
+    private void save() throws IOException {
+        // write a new file and move it into place so a crash never leaves half a checkpoint
+        File temp = new File(mFile.getPath() + ".tmp");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+        try {
+            writer.write(Long.toString(mWatermark));
+            for (Long sequence : mFinishedAhead) {
+                writer.write(' ');
+                writer.write(Long.toString(sequence));
+            }
+        } finally {
+            writer.close();
+        }
+        if (!temp.renameTo(mFile)) {
+            throw new IOException("Unable to save provisioning checkpoint " + mFile);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.provisioning;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import timber.log.Timber;
+
+/**
+ * The outcome of a provisioning run. Counts are kept in memory, along with every record that
+ * wasn't created; if a log is given, one CSV row per record is also written to it as the run
+ * goes, so the full result of a large run never has to be held in memory.
+ */
+public class ProvisioningReport {
+
+    public static final String CREATED = "created";
+    public static final String FAILED = "failed";
+    public static final String INVALID = "invalid";
+
+    private final Writer mLog;
+    private final List<Entry> mProblems = new ArrayList<>();
+    private long mCreated;
+    private long mFailed;
+    private long mInvalid;
+    private long mSkipped;
+    private long mStartedAt;
+    private long mFinishedAt;
+
+    /**
+     * @param log Receives a CSV row for each record, or null to keep only the summary
+     */
+    public ProvisioningReport(Writer log) {
+        mLog = log;
+    }
+
+    synchronized void started() throws IOException {
+        mStartedAt = System.currentTimeMillis();
+        if (null != mLog) {
+            mLog.write("sequence,userPrincipalName,outcome,detail\n");
+        }
+    }
+
+    synchronized void finished() throws IOException {
+        mFinishedAt = System.currentTimeMillis();
+        if (null != mLog) {
+            mLog.flush();
+        }
+    }
+
+    synchronized void created(UserRecord record, String id) {
+        mCreated++;
+        log(new Entry(record, CREATED, id));
+    }
+
+    synchronized void failed(UserRecord record, String reason) {
+        mFailed++;
+        Entry entry = new Entry(record, FAILED, reason);
+        mProblems.add(entry);
+        log(entry);
+    }
+
+    synchronized void invalid(UserRecord record, String reason) {
+        mInvalid++;
+        Entry entry = new Entry(record, INVALID, reason);
+        mProblems.add(entry);
+        log(entry);
+    }
+
+    synchronized void skipped() {
+        mSkipped++;
+    }
+
+    public synchronized long getCreated() {
+        return mCreated;
+    }
+
+    public synchronized long getFailed() {
+        return mFailed;
+    }
+
+    public synchronized long getInvalid() {
+        return mInvalid;
+    }
+
+    /**
+     * @return the number of records skipped because an earlier run had already finished them
+     */
+    public synchronized long getSkipped() {
+        return mSkipped;
+    }
+
+    /**
+     * @return the records that failed or were invalid, in the order they finished
+     */
+    public synchronized List<Entry> getProblems() {
+        return Collections.unmodifiableList(new ArrayList<>(mProblems));
+    }
+
+    /**
+     * @return the users created per second over the run
+     */
+    public synchronized double getCreatedPerSecond() {
+        long elapsed = (0 == mFinishedAt ? System.currentTimeMillis() : mFinishedAt) - mStartedAt;
+        return elapsed <= 0 ? 0 : mCreated * 1000.0 / elapsed;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d created, %d failed, %d invalid, %d skipped (%.1f users/s)",
+                mCreated, mFailed, mInvalid, mSkipped, getCreatedPerSecond());
+    }
+
+    private void log(Entry entry) {
+        if (null == mLog) {
+            return;
+        }
+        try {
+            mLog.write(entry.sequence + ","
+                    + csv(entry.userPrincipalName) + ","
+                    + entry.outcome + ","
+                    + csv(entry.detail) + "\n");
+        } catch (IOException e) {
+            Timber.e(e, "Unable to write the provisioning log");
+        }
+    }
+
+    private static String csv(String value) {
+        if (null == value) {
+            return "";
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * The outcome of one record
+     */
+    public static class Entry {
+
+        public final long sequence;
+        public final String userPrincipalName;
+        public final String outcome;
+
+        /**
+         * The id of the created user, or why the record wasn't created
+         */
+        public final String detail;
+
+        Entry(UserRecord record, String outcome, String detail) {
+            sequence = record.sequence;
+            userPrincipalName = record.userPrincipalName;
+            this.outcome = outcome;
+            this.detail = detail;
+        }
+    }
+}
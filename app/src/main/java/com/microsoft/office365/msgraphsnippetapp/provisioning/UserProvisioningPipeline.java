@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.provisioning;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.microsoft.office365.microsoftgraphvos.BatchRequest;
+import com.microsoft.office365.microsoftgraphvos.BatchRequestContent;
+import com.microsoft.office365.microsoftgraphvos.BatchResponse;
+import com.microsoft.office365.microsoftgraphvos.BatchResponseContent;
+import com.microsoft.office365.msgraphapiservices.MSGraphBatchService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import retrofit2.Response;
+import timber.log.Timber;
+
+/**
+ * Creates users in bulk from a {@link UserRecordReader}.
+ * <p>
+ * Records are read and validated one at a time, then packed {@link #MAX_BATCH_SIZE} to a
+ * <code>$batch</code> request. At most <code>concurrency</code> batches are in flight; reading
+ * waits for a free slot, so the source is never read far ahead of what has been sent. When the
+ * service throttles a request, every worker holds off until the <code>Retry-After</code> time
+ * has passed, so the run settles at the rate the tenant allows instead of hammering it.
+ * <p>
+ * Progress is saved to a {@link ProvisioningCheckpoint}; running again with the same checkpoint
+ * and source skips the records that have already finished. {@link #run} blocks until every
+ * record has finished, so call it off the main thread.
+ */
+public class UserProvisioningPipeline {
+
+    /**
+     * The most requests the service accepts in one <code>$batch</code>
+     */
+    public static final int MAX_BATCH_SIZE = 20;
+
+    static final int MAX_ATTEMPTS = 6;
+
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60 * 1000;
+
+    private final MSGraphBatchService mService;
+    private final String mVersion;
+    private final int mConcurrency;
+    private final ProvisioningCheckpoint mCheckpoint;
+
+    // no request is sent before this time, set when the service throttles us
+    private final AtomicLong mResumeAt = new AtomicLong();
+
+    /**
+     * @param service     The batch service to send requests with, e.g. created from
+     *                    {@code SnippetApp.getRetrofit(Priority.BULK)}
+     * @param version     The version of the API to use (beta, v1, etc...)
+     * @param concurrency The most batches in flight at once
+     * @param checkpoint  Where progress is saved and resumed from
+     */
+    public UserProvisioningPipeline(MSGraphBatchService service,
+                                    String version,
+                                    int concurrency,
+                                    ProvisioningCheckpoint checkpoint) {
+        mService = service;
+        mVersion = version;
+        mConcurrency = concurrency;
+        mCheckpoint = checkpoint;
+    }
+
+    /**
+     * Provisions every record of a source
+     *
+     * @param reader The source of users to create; it is closed when the run ends
+     * @param report Receives the outcome of each record
+     * @return the report
+     * @throws IOException          if the source can't be read or the checkpoint can't be saved
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public ProvisioningReport run(UserRecordReader reader, ProvisioningReport report)
+            throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(mConcurrency);
+        Semaphore slots = new Semaphore(mConcurrency);
+        AtomicReference<IOException> error = new AtomicReference<>();
+        Set<String> userPrincipalNames = new HashSet<>();
+        List<UserRecord> batch = new ArrayList<>(MAX_BATCH_SIZE);
+
+        report.started();
+        try {
+            for (UserRecord record; null != (record = reader.next()) && null == error.get(); ) {
+                if (mCheckpoint.isFinished(record.sequence)) {
+                    report.skipped();
+                    continue;
+                }
+                String invalid = UserRecordValidator.validate(record);
+                if (null == invalid
+                        && !userPrincipalNames.add(record.userPrincipalName.toLowerCase(Locale.US))) {
+                    invalid = "Duplicate userPrincipalName";
+                }
+                if (null != invalid) {
+                    report.invalid(record, invalid);
+                    mCheckpoint.finished(Collections.singleton(record.sequence));
+                    continue;
+                }
+                batch.add(record);
+                if (MAX_BATCH_SIZE == batch.size()) {
+                    dispatch(batch, report, executor, slots, error);
+                    batch = new ArrayList<>(MAX_BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                dispatch(batch, report, executor, slots, error);
+            }
+        } finally {
+            executor.shutdown();
+            if (!executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+            reader.close();
+            report.finished();
+        }
+        if (null != error.get()) {
+            throw error.get();
+        }
+        return report;
+    }
+
+    private void dispatch(final List<UserRecord> batch,
+                          final ProvisioningReport report,
+                          ExecutorService executor,
+                          final Semaphore slots,
+                          final AtomicReference<IOException> error) throws InterruptedException {
+        slots.acquire();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    send(batch, report);
+                } catch (IOException e) {
+                    error.compareAndSet(null, e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    slots.release();
+                }
+            }
+        });
+    }
+
+    private void send(List<UserRecord> batch, ProvisioningReport report)
+            throws IOException, InterruptedException {
+        List<UserRecord> pending = batch;
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            awaitResume();
+            Map<String, UserRecord> byId = new LinkedHashMap<>();
+            for (UserRecord record : pending) {
+                byId.put(Long.toString(record.sequence), record);
+            }
+
+            Response<BatchResponseContent> response;
+            try {
+                response = mService.batch(mVersion, toBatch(pending)).execute();
+            } catch (IOException e) {
+                Timber.w(e, "Provisioning batch failed on attempt %d", attempt);
+                if (attempt == MAX_ATTEMPTS) {
+                    fail(pending, "Request failed: " + e.getMessage(), report);
+                    return;
+                }
+                holdOff(backoff(attempt));
+                continue;
+            }
+
+            if (!response.isSuccessful()) {
+                if (isRetryable(response.code()) && attempt < MAX_ATTEMPTS) {
+                    holdOff(retryAfter(response.headers().get("Retry-After"), attempt));
+                    continue;
+                }
+                fail(pending, "Batch failed with " + response.code(), report);
+                return;
+            }
+
+            List<UserRecord> retry = new ArrayList<>();
+            List<Long> finished = new ArrayList<>();
+            long retryAfter = 0;
+            BatchResponse[] responses = null == response.body() ? null : response.body().responses;
+            for (BatchResponse item : null == responses ? new BatchResponse[0] : responses) {
+                UserRecord record = byId.remove(item.id);
+                if (null == record) {
+                    continue;
+                }
+                if (item.status >= 200 && item.status < 300) {
+                    report.created(record, stringMember(item.body, "id"));
+                    finished.add(record.sequence);
+                } else if (isRetryable(item.status)) {
+                    retry.add(record);
+                    String header = null == item.headers ? null : item.headers.get("Retry-After");
+                    retryAfter = Math.max(retryAfter, retryAfter(header, attempt));
+                } else {
+                    report.failed(record, item.status + " " + errorMessage(item.body));
+                    finished.add(record.sequence);
+                }
+            }
+            // any request the service didn't answer is sent again
+            retry.addAll(byId.values());
+            if (!byId.isEmpty()) {
+                retryAfter = Math.max(retryAfter, backoff(attempt));
+            }
+            mCheckpoint.finished(finished);
+
+            if (!retry.isEmpty() && attempt == MAX_ATTEMPTS) {
+                fail(retry, "Still throttled after " + MAX_ATTEMPTS + " attempts", report);
+                return;
+            }
+            if (!retry.isEmpty()) {
+                holdOff(retryAfter);
+            }
+            pending = retry;
+        }
+    }
+
+    private BatchRequestContent toBatch(List<UserRecord> records) {
+        Map<String, String> headers = Collections.singletonMap("Content-Type", "application/json");
+        BatchRequestContent content = new BatchRequestContent();
+        content.requests = new BatchRequest[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            BatchRequest request = new BatchRequest();
+            request.id = Long.toString(records.get(i).sequence);
+            request.method = "POST";
+            request.url = "/users";
+            request.headers = headers;
+            request.body = records.get(i).toUser();
+            content.requests[i] = request;
+        }
+        return content;
+    }
+
+    private void fail(List<UserRecord> records, String reason, ProvisioningReport report)
+            throws IOException {
+        List<Long> finished = new ArrayList<>();
+        for (UserRecord record : records) {
+            report.failed(record, reason);
+            finished.add(record.sequence);
+        }
+        mCheckpoint.finished(finished);
+    }
+
+    private void awaitResume() throws InterruptedException {
+        for (long wait; (wait = mResumeAt.get() - System.currentTimeMillis()) > 0; ) {
+            Thread.sleep(wait);
+        }
+    }
+
+    private void holdOff(long delayMillis) {
+        long resumeAt = System.currentTimeMillis() + delayMillis;
+        for (long current; (current = mResumeAt.get()) < resumeAt; ) {
+            if (mResumeAt.compareAndSet(current, resumeAt)) {
+                break;
+            }
+        }
+    }
+
+    private static boolean isRetryable(int status) {
+        return 429 == status || 503 == status || 504 == status;
+    }
+
+    private static long retryAfter(String header, int attempt) {
+        if (null != header) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(header.trim()));
+            } catch (NumberFormatException e) {
+                // not a number of seconds, back off instead
+            }
+        }
+        return backoff(attempt);
+    }
+
+    private static long backoff(int attempt) {
+        return Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(attempt - 1, 16));
+    }
+
+    private static String errorMessage(JsonElement body) {
+        if (null != body && body.isJsonObject() && body.getAsJsonObject().has("error")) {
+            String message = stringMember(body.getAsJsonObject().get("error"), "message");
+            if (null != message) {
+                return message;
+            }
+        }
+        return null == body ? "" : body.toString();
+    }
+
+    private static String stringMember(JsonElement element, String name) {
+        if (null == element || !element.isJsonObject()) {
+            return null;
+        }
+        JsonObject object = element.getAsJsonObject();
+        return object.has(name) && object.get(name).isJsonPrimitive()
+                ? object.get(name).getAsString()
+                : null;
+    }
+}
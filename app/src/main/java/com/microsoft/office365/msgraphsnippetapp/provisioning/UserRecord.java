@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.provisioning;
+
+import com.microsoft.office365.microsoftgraphvos.PasswordProfile;
+import com.microsoft.office365.microsoftgraphvos.User;
+
+/**
+ * One user to provision, as read from a CSV or JSON lines source. The field names are the
+ * CSV column headers and JSON property names.
+ */
+public class UserRecord {
+
+    public String displayName;
+    public String mailNickname;
+    public String userPrincipalName;
+    public String password;
+    public Boolean accountEnabled;
+    public Boolean forceChangePasswordNextSignIn;
+
+    /**
+     * The position of the record in its source, starting at 0
+     */
+    transient long sequence;
+
+    /**
+     * Why the record couldn't be read, or null if it was read
+     */
+    transient String parseError;
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the body of the request that creates this user
+     */
+    public User toUser() {
+        User user = new User();
+        user.accountEnabled = null == accountEnabled || accountEnabled;
+        user.displayName = displayName;
+        user.mailNickname = mailNickname;
+        user.userPrincipalName = userPrincipalName;
+
+        PasswordProfile passwordProfile = new PasswordProfile();
+        passwordProfile.password = password;
+        passwordProfile.forceChangePasswordNextSignIn =
+                null == forceChangePasswordNextSignIn || forceChangePasswordNextSignIn;
+        user.passwordProfile = passwordProfile;
+
+        return user;
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.provisioning;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads users to provision one at a time from a streaming source
+ */
+public interface UserRecordReader extends Closeable {
+
+    /**
+     * Reads the next record. A record that can't be parsed is still returned, with its
+     * parse error set, so that one bad line doesn't stop the whole run.
+     *
+     * @return the next record, or null at the end of the source
+     * @throws IOException if the source can't be read
+     */
+    UserRecord next() throws IOException;
+}
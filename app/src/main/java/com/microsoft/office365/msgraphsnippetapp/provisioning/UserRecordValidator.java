@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.provisioning;
+
+import java.util.regex.Pattern;
+
+/**
+ * Checks a record against the rules the service applies when a user is created, so that a
+ * bad record is reported without spending a request on it
+ */
+public class UserRecordValidator {
+
+    // the characters the service allows in a mail nickname and the user name part of a UPN
+    private static final Pattern MAIL_NICKNAME = Pattern.compile("[A-Za-z0-9!#$%&'*+\\-/=?^_`{|}~.]{1,64}");
+    private static final Pattern USER_PRINCIPAL_NAME = Pattern.compile(
+            "[A-Za-z0-9!#$%&'*+\\-/=?^_`{|}~.]{1,64}@[A-Za-z0-9\\-]+(\\.[A-Za-z0-9\\-]+)+");
+    private static final int MAX_DISPLAY_NAME = 256;
+    private static final int MIN_PASSWORD = 8;
+    private static final int MAX_PASSWORD = 256;
+
+    private UserRecordValidator() {
+    }
+
+    /**
+     * @param record The record to check
+     * @return why the record is invalid, or null if it is valid
+     */
+    public static String validate(UserRecord record) {
+        if (null != record.parseError) {
+            return record.parseError;
+        }
+        if (isEmpty(record.displayName)) {
+            return "displayName is required";
+        }
+        if (record.displayName.length() > MAX_DISPLAY_NAME) {
+            return "displayName is longer than " + MAX_DISPLAY_NAME + " characters";
+        }
+        if (isEmpty(record.mailNickname)) {
+            return "mailNickname is required";
+        }
+        if (!MAIL_NICKNAME.matcher(record.mailNickname).matches()
+                || record.mailNickname.startsWith(".") || record.mailNickname.endsWith(".")) {
+            return "mailNickname contains characters that aren't allowed";
+        }
+        if (isEmpty(record.userPrincipalName)) {
+            return "userPrincipalName is required";
+        }
+        if (!USER_PRINCIPAL_NAME.matcher(record.userPrincipalName).matches()) {
+            return "userPrincipalName isn't of the form alias@domain";
+        }
+        if (isEmpty(record.password)) {
+            return "password is required";
+        }
+        if (record.password.length() < MIN_PASSWORD || record.password.length() > MAX_PASSWORD) {
+            return "password must be " + MIN_PASSWORD + " to " + MAX_PASSWORD + " characters";
+        }
+        if (characterClasses(record.password) < 3) {
+            return "password must use three of lower case, upper case, digits and symbols";
+        }
+        return null;
+    }
+
+    private static boolean isEmpty(String value) {
+        return null == value || value.trim().isEmpty();
+    }
+
+    private static int characterClasses(String password) {
+        boolean lower = false, upper = false, digit = false, symbol = false;
+        for (int i = 0; i < password.length(); i++) {
+            char c = password.charAt(i);
+            if (Character.isLowerCase(c)) {
+                lower = true;
+            } else if (Character.isUpperCase(c)) {
+                upper = true;
+            } else if (Character.isDigit(c)) {
+                digit = true;
+            } else {
+                symbol = true;
+            }
+        }
+        return (lower ? 1 : 0) + (upper ? 1 : 0) + (digit ? 1 : 0) + (symbol ? 1 : 0);
+    }
+}
@@ -4,66 +4,47 @@
  */
 package com.microsoft.office365.msgraphsnippetapp.snippet;
 
-import com.microsoft.office365.msgraphsnippetapp.application.SnippetApp;
-
 import retrofit2.Callback;
 
-import static com.microsoft.office365.msgraphsnippetapp.R.string.beta;
-
 public abstract class AbstractSnippet<Service, Result> {
 
-    private static final int mNameIndex = 0;
-    private static final int mDescIndex = 1;
-    private static final int mUrlIndex = 2;
-    private static final int mO365VersionIndex = 3;
-    private static final int mIsAdminRequiredIndex = 4;
-
-    public final Service mService;
+    private final SnippetCategory<Service> mCategory;
     boolean mIsAdminRequired;
+    private boolean mIsBeta;
     private String mName, mDesc, mUrl, mO365Version;
 
     /**
      * Snippet constructor
      *
      * @param category         Snippet category as corresponds to UI displayed sections (organization, me, groups, etc...)
-     * @param descriptionArray The String array for the specified snippet
+     * @param snippetIndex     The index of the snippet in the {@link SnippetRegistry}
      */
     public AbstractSnippet(
             SnippetCategory<Service> category,
-            Integer descriptionArray) {
+            Integer snippetIndex) {
         //Get snippet configuration information from the
-        //XML configuration for the snippet
-        getSnippetArrayContent(category, descriptionArray);
+        //registry generated from the XML configuration for the snippet
+        getSnippetRegistryContent(category, snippetIndex);
 
-        mService = category.mService;
+        mCategory = category;
     }
 
 
     /**
-     * Gets the items from the specified snippet XML string array and stores the values
-     * in private class fields
+     * Gets the precomputed values of the specified snippet from the {@link SnippetRegistry}
+     * and stores them in private class fields
      *
      * @param category         Snippet category as corresponds to UI displayed sections (organization, me, groups, etc...)
-     * @param descriptionArray The String array for the specified snippet
+     * @param snippetIndex     The index of the snippet in the {@link SnippetRegistry}
      */
-    private void getSnippetArrayContent(SnippetCategory<Service> category, Integer descriptionArray) {
-        if (null != descriptionArray) {
-            String[] params = SnippetApp.getApp().getResources().getStringArray(descriptionArray);
-
-            try {
-                mName = params[mNameIndex];
-                mDesc = params[mDescIndex];
-                mUrl = params[mUrlIndex];
-                mO365Version = params[mO365VersionIndex];
-                String isAdminRequired = params[mIsAdminRequiredIndex];
-                mIsAdminRequired = isAdminRequired.equalsIgnoreCase("true");
-            } catch (IndexOutOfBoundsException ex) {
-                throw new RuntimeException(
-                        "Invalid array in "
-                                + category.mSection
-                                + " snippet XML file"
-                        , ex);
-            }
+    private void getSnippetRegistryContent(SnippetCategory<Service> category, Integer snippetIndex) {
+        if (null != snippetIndex) {
+            mName = SnippetRegistry.NAMES[snippetIndex];
+            mDesc = SnippetRegistry.DESCRIPTIONS[snippetIndex];
+            mUrl = SnippetRegistry.URLS[snippetIndex];
+            mO365Version = SnippetRegistry.VERSIONS[snippetIndex];
+            mIsBeta = SnippetRegistry.BETA[snippetIndex];
+            mIsAdminRequired = SnippetRegistry.ADMIN_REQUIRED[snippetIndex];
         } else {
             mName = category.mSection;
             mDesc = mUrl = null;
@@ -83,8 +64,16 @@ public abstract class AbstractSnippet<Service, Result> {
     }
 
     public boolean isBeta() {
-        String betaString = SnippetApp.getApp().getString(beta);
-        return mO365Version.equalsIgnoreCase(betaString);
+        return mIsBeta;
+    }
+
+    /**
+     * Returns the service this snippet runs against, creating it if it has not been warmed up yet
+     *
+     * @return the Retrofit service of this snippet's category
+     */
+    public Service getService() {
+        return mCategory.getService();
     }
 
     public String getName() {
@@ -103,6 +92,19 @@ public abstract class AbstractSnippet<Service, Result> {
         return mIsAdminRequired;
     }
 
+    /**
+     * Runs the snippet against its category's service
+     *
+     * @param callback Receives the outcome of the snippet, on the main thread
+     * @return a handle that cancels every call the snippet makes
+     */
+    public SnippetCall request(Callback<Result> callback) {
+        SnippetCall snippetCall = new SnippetCall();
+        request(snippetCall.track(getService(), mCategory.getServiceClass()),
+                snippetCall.wrap(callback));
+        return snippetCall;
+    }
+
     public abstract void request(Service service, Callback<Result> callback);
 
 }
@@ -9,12 +9,12 @@ import com.microsoft.office365.msgraphapiservices.MSGraphContactService;
 import okhttp3.ResponseBody;
 import retrofit2.Callback;
 
-import static com.microsoft.office365.msgraphsnippetapp.R.array.get_all_contacts;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.get_all_contacts;
 
 public abstract class ContactsSnippets<Result> extends AbstractSnippet<MSGraphContactService, Result> {
 
-    public ContactsSnippets(Integer descriptionArray) {
-        super(SnippetCategory.contactSnippetCategory, descriptionArray);
+    public ContactsSnippets(Integer snippetIndex) {
+        super(SnippetCategory.contactSnippetCategory, snippetIndex);
     }
 
 
@@ -19,22 +19,22 @@ import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
 
-import static com.microsoft.office365.msgraphsnippetapp.R.array.create_me_file;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.create_me_folder;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.delete_me_file;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.download_me_file;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.get_me_drive;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.get_me_files;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.get_organization_drives;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.rename_me_file;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.update_me_file;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.create_me_file;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.create_me_folder;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.delete_me_file;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.download_me_file;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.get_me_drive;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.get_me_files;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.get_organization_drives;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.rename_me_file;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.update_me_file;
 
 abstract class DrivesSnippets<Result> extends AbstractSnippet<MSGraphDrivesService, Result> {
 
     private static final String fileContents = "A plain text file";
 
-    public DrivesSnippets(Integer descriptionArray) {
-        super(SnippetCategory.drivesSnippetCategory, descriptionArray);
+    public DrivesSnippets(Integer snippetIndex) {
+        super(SnippetCategory.drivesSnippetCategory, snippetIndex);
     }
 
     static DrivesSnippets[] getDrivesSnippets() {
@@ -5,14 +5,15 @@
 package com.microsoft.office365.msgraphsnippetapp.snippet;
 
 import com.microsoft.office365.microsoftgraphvos.Attendee;
-import com.microsoft.office365.microsoftgraphvos.DateTimeTimeZone;
 import com.microsoft.office365.microsoftgraphvos.EmailAddress;
 import com.microsoft.office365.microsoftgraphvos.Event;
 import com.microsoft.office365.microsoftgraphvos.ItemBody;
 import com.microsoft.office365.microsoftgraphvos.Location;
 import com.microsoft.office365.msgraphapiservices.MSGraphEventsService;
+import com.microsoft.office365.msgraphsnippetapp.calendar.EventTimes;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -23,15 +24,21 @@ import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
 
-import static com.microsoft.office365.msgraphsnippetapp.R.array.create_event;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.delete_event;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.get_user_events;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.update_event;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.create_event;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.delete_event;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.get_user_calendar_view;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.get_user_events;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.update_event;
 
 public abstract class EventsSnippets<Result> extends AbstractSnippet<MSGraphEventsService, Result> {
 
-    public EventsSnippets(Integer descriptionArray) {
-        super(SnippetCategory.eventsSnippetCategory, descriptionArray);
+    /**
+     * Asks the service to return event times in UTC rather than in each event's own time zone
+     */
+    public static final String PREFER_UTC = "outlook.timezone=\"UTC\"";
+
+    public EventsSnippets(Integer snippetIndex) {
+        super(SnippetCategory.eventsSnippetCategory, snippetIndex);
     }
 
     static EventsSnippets[] getEventsSnippets() {
@@ -61,6 +68,27 @@ public abstract class EventsSnippets<Result> extends AbstractSnippet<MSGraphEven
                     }
                 },
 
+                /*
+                 * Get the signed-in user's events for the next 7 days, with recurring events
+                 * expanded into their occurrences.
+                 * GET https://graph.microsoft.com/{version}/me/calendarView?startDateTime={start}&endDateTime={end}
+                 * @see https://graph.microsoft.io/docs/api-reference/v1.0/api/user_list_calendarview
+                 */
+                new EventsSnippets<ResponseBody>(get_user_calendar_view) {
+
+                    @Override
+                    public void request(
+                            MSGraphEventsService MSGraphEventsService,
+                            Callback<ResponseBody> callback) {
+                        DateTime start = DateTime.now(DateTimeZone.UTC);
+                        MSGraphEventsService.getCalendarView(
+                                getVersion(),
+                                start.toString(),
+                                start.plusDays(7).toString(),
+                                PREFER_UTC).enqueue(callback);
+                    }
+                },
+
                 /*
                  * Adds an event to the signed-in user\'s calendar.
                  * POST https://graph.microsoft.com/{version}/me/events
@@ -166,18 +194,12 @@ public abstract class EventsSnippets<Result> extends AbstractSnippet<MSGraphEven
         Event event = new Event();
         event.subject = "Microsoft Graph API Discussion";
 
-        // set start time to now
-        DateTimeTimeZone start = new DateTimeTimeZone();
-        start.dateTime = DateTime.now().toString();
-        event.start = start;
+        // set start time to now, in UTC
+        DateTime now = DateTime.now();
+        event.start = EventTimes.toDateTimeTimeZone(now.getMillis(), "UTC");
 
         // and end in 1 hr
-        DateTimeTimeZone end = new DateTimeTimeZone();
-        end.dateTime = DateTime.now().plusHours(1).toString();
-        event.end = end;
-
-        // set the timezone
-        start.timeZone = end.timeZone = "UTC";
+        event.end = EventTimes.toDateTimeTimeZone(now.plusHours(1).getMillis(), "UTC");
 
         // set a location
         Location location = new Location();
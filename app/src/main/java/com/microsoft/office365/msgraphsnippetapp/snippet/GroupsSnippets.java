@@ -21,18 +21,18 @@ import retrofit2.Callback;
 import retrofit2.Response;
 import timber.log.Timber;
 
-import static com.microsoft.office365.msgraphsnippetapp.R.array.delete_a_group;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.get_a_group;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.get_all_groups;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.get_group_members;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.get_group_owners;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.insert_a_group;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.update_a_group;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.delete_a_group;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.get_a_group;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.get_all_groups;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.get_group_members;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.get_group_owners;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.insert_a_group;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.update_a_group;
 
 public abstract class GroupsSnippets<Result> extends AbstractSnippet<MSGraphGroupsService, Result> {
 
-    public GroupsSnippets(Integer descriptionArray) {
-        super(SnippetCategory.groupSnippetCategory, descriptionArray);
+    public GroupsSnippets(Integer snippetIndex) {
+        super(SnippetCategory.groupSnippetCategory, snippetIndex);
     }
 
     static GroupsSnippets[] getGroupsSnippets() {
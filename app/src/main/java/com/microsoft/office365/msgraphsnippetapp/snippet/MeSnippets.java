@@ -11,21 +11,21 @@ import com.microsoft.office365.msgraphsnippetapp.application.SnippetApp;
 import okhttp3.ResponseBody;
 import retrofit2.Callback;
 
-import static com.microsoft.office365.msgraphsnippetapp.R.array.get_me;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.get_me_direct_reports;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.get_me_group_membership;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.get_me_manager;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.get_me_photo;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.get_me_responsibilities;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.get_me;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.get_me_direct_reports;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.get_me_group_membership;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.get_me_manager;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.get_me_photo;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.get_me_responsibilities;
 
 public abstract class MeSnippets<Result> extends AbstractSnippet<MSGraphMeService, Result> {
     /**
      * Snippet constructor
      *
-     * @param descriptionArray The String array for the specified snippet
+     * @param snippetIndex     The index of the snippet in the {@link SnippetRegistry}
      */
-    public MeSnippets(Integer descriptionArray) {
-        super(SnippetCategory.meSnippetCategory, descriptionArray);
+    public MeSnippets(Integer snippetIndex) {
+        super(SnippetCategory.meSnippetCategory, snippetIndex);
     }
 
     static MeSnippets[] getMeSnippets() {
@@ -19,17 +19,17 @@ import com.microsoft.office365.msgraphsnippetapp.util.SharedPrefsUtil;
 import okhttp3.ResponseBody;
 import retrofit2.Callback;
 
-import static com.microsoft.office365.msgraphsnippetapp.R.array.get_user_messages;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.send_an_email_message;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.get_user_messages;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.send_an_email_message;
 
 public abstract class MessageSnippets<Result> extends AbstractSnippet<MSGraphMailService, Result> {
     /**
      * Snippet constructor
      *
-     * @param descriptionArray The String array for the specified snippet
+     * @param snippetIndex     The index of the snippet in the {@link SnippetRegistry}
      */
-    public MessageSnippets(Integer descriptionArray) {
-        super(SnippetCategory.mailSnippetCategory, descriptionArray);
+    public MessageSnippets(Integer snippetIndex) {
+        super(SnippetCategory.mailSnippetCategory, snippetIndex);
     }
 
     static MessageSnippets[] getMessageSnippets() {
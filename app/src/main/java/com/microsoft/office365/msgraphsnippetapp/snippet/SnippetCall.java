@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.snippet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import timber.log.Timber;
+
+/**
+ * A handle on a running snippet, from {@link AbstractSnippet#request(Callback)}.
+ * <p>
+ * Every {@link Call} the snippet makes goes through a service that records it here, including
+ * the later calls of a chain such as creating a file and then downloading it. {@link #cancel}
+ * cancels all of them, stops any further call of the chain from being sent, and lets go of the
+ * callback, so whatever the callback refers to, such as a fragment, can be collected at once.
+ * A call is forgotten as soon as it completes.
+ */
+public class SnippetCall {
+
+    private final List<Call<?>> mCalls = new ArrayList<>();
+    private Callback<?> mCallback;
+    private boolean mCanceled;
+
+    SnippetCall() {
+    }
+
+    /**
+     * Cancels every call of the snippet. The callback is not called after this.
+     */
+    public void cancel() {
+        List<Call<?>> calls;
+        synchronized (this) {
+            if (mCanceled) {
+                return;
+            }
+            mCanceled = true;
+            mCallback = null;
+            calls = new ArrayList<>(mCalls);
+            mCalls.clear();
+        }
+        for (Call<?> call : calls) {
+            call.cancel();
+        }
+    }
+
+    public synchronized boolean isCanceled() {
+        return mCanceled;
+    }
+
+    /**
+     * @return a service whose calls are recorded by this handle
+     */
+    @SuppressWarnings("unchecked")
+    <S> S track(final S service, Class<S> serviceClass) {
+        return (S) Proxy.newProxyInstance(
+                serviceClass.getClassLoader(),
+                new Class<?>[]{serviceClass},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                            throws Throwable {
+                        Object result;
+                        try {
+                            result = method.invoke(service, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                        if (result instanceof Call) {
+                            return add((Call<?>) result);
+                        }
+                        return result;
+                    }
+                });
+    }
+
+    /**
+     * @return a callback that forwards to the given one until this handle is canceled
+     */
+    <T> Callback<T> wrap(Callback<T> callback) {
+        synchronized (this) {
+            mCallback = callback;
+        }
+        return new Callback<T>() {
+            @Override
+            public void onResponse(Call<T> call, Response<T> response) {
+                Callback<T> target = target();
+                if (null != target) {
+                    target.onResponse(call, response);
+                } else if (response.body() instanceof Closeable) {
+                    // answered as it was canceled; nobody will read the body
+                    try {
+                        ((Closeable) response.body()).close();
+                    } catch (IOException e) {
+                        Timber.w(e, "Unable to close a canceled response");
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Call<T> call, Throwable t) {
+                Callback<T> target = target();
+                if (null != target) {
+                    target.onFailure(call, t);
+                }
+            }
+
+            @SuppressWarnings("unchecked")
+            private Callback<T> target() {
+                synchronized (SnippetCall.this) {
+                    return (Callback<T>) mCallback;
+                }
+            }
+        };
+    }
+
+    private <T> Call<T> add(Call<T> call) {
+        synchronized (this) {
+            if (!mCanceled) {
+                mCalls.add(call);
+                return new TrackedCall<>(call);
+            }
+        }
+        // a chain went on to its next call after it was canceled
+        call.cancel();
+        return call;
+    }
+
+    private synchronized void remove(Call<?> call) {
+        mCalls.remove(call);
+    }
+
+    /**
+     * Forgets its call once the call completes, and records its clones
+     */
+    private class TrackedCall<T> implements Call<T> {
+
+        private final Call<T> mDelegate;
+
+        TrackedCall(Call<T> delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public Response<T> execute() throws IOException {
+            try {
+                return mDelegate.execute();
+            } finally {
+                remove(mDelegate);
+            }
+        }
+
+        @Override
+        public void enqueue(final Callback<T> callback) {
+            mDelegate.enqueue(new Callback<T>() {
+                @Override
+                public void onResponse(Call<T> call, Response<T> response) {
+                    remove(mDelegate);
+                    callback.onResponse(call, response);
+                }
+
+                @Override
+                public void onFailure(Call<T> call, Throwable t) {
+                    remove(mDelegate);
+                    callback.onFailure(call, t);
+                }
+            });
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return mDelegate.isExecuted();
+        }
+
+        @Override
+        public void cancel() {
+            mDelegate.cancel();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mDelegate.isCanceled();
+        }
+
+        @Override
+        public Call<T> clone() {
+            return add(mDelegate.clone());
+        }
+
+        @Override
+        public Request request() {
+            return mDelegate.request();
+        }
+    }
+}
@@ -4,6 +4,8 @@
  */
 package com.microsoft.office365.msgraphsnippetapp.snippet;
 
+import com.microsoft.office365.auth.AccountSession;
+import com.microsoft.office365.auth.AuthenticationManager;
 import com.microsoft.office365.msgraphapiservices.MSGraphContactService;
 import com.microsoft.office365.msgraphapiservices.MSGraphDrivesService;
 import com.microsoft.office365.msgraphapiservices.MSGraphEventsService;
@@ -13,45 +15,104 @@ import com.microsoft.office365.msgraphapiservices.MSGraphMeService;
 import com.microsoft.office365.msgraphapiservices.MSGraphUserService;
 import com.microsoft.office365.msgraphsnippetapp.application.SnippetApp;
 
-import static com.microsoft.office365.msgraphsnippetapp.R.string.section_contacts;
-import static com.microsoft.office365.msgraphsnippetapp.R.string.section_drives;
-import static com.microsoft.office365.msgraphsnippetapp.R.string.section_events;
-import static com.microsoft.office365.msgraphsnippetapp.R.string.section_groups;
-import static com.microsoft.office365.msgraphsnippetapp.R.string.section_me;
-import static com.microsoft.office365.msgraphsnippetapp.R.string.section_messages;
-import static com.microsoft.office365.msgraphsnippetapp.R.string.section_user;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import retrofit2.Retrofit;
+
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.section_contacts;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.section_drives;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.section_events;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.section_groups;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.section_me;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.section_messages;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.section_user;
 
 public class SnippetCategory<T> {
     static final SnippetCategory<MSGraphContactService> contactSnippetCategory
-            = new SnippetCategory<>(section_contacts, create(MSGraphContactService.class));
+            = new SnippetCategory<>(section_contacts, MSGraphContactService.class);
 
     static final SnippetCategory<MSGraphEventsService> eventsSnippetCategory
-            = new SnippetCategory<>(section_events, create(MSGraphEventsService.class));
+            = new SnippetCategory<>(section_events, MSGraphEventsService.class);
 
     static final SnippetCategory<MSGraphGroupsService> groupSnippetCategory
-            = new SnippetCategory<>(section_groups, create(MSGraphGroupsService.class));
+            = new SnippetCategory<>(section_groups, MSGraphGroupsService.class);
 
     static final SnippetCategory<MSGraphUserService> userSnippetCategory
-            = new SnippetCategory<>(section_user, create(MSGraphUserService.class));
+            = new SnippetCategory<>(section_user, MSGraphUserService.class);
 
     static final SnippetCategory<MSGraphMailService> mailSnippetCategory
-            = new SnippetCategory<>(section_messages, create(MSGraphMailService.class));
+            = new SnippetCategory<>(section_messages, MSGraphMailService.class);
 
     static final SnippetCategory<MSGraphMeService> meSnippetCategory
-            = new SnippetCategory<>(section_me, create(MSGraphMeService.class));
+            = new SnippetCategory<>(section_me, MSGraphMeService.class);
 
     static final SnippetCategory<MSGraphDrivesService> drivesSnippetCategory
-            = new SnippetCategory<>(section_drives, create(MSGraphDrivesService.class));
+            = new SnippetCategory<>(section_drives, MSGraphDrivesService.class);
+
+    private static final SnippetCategory<?>[] sCategories = {
+            contactSnippetCategory,
+            eventsSnippetCategory,
+            groupSnippetCategory,
+            userSnippetCategory,
+            mailSnippetCategory,
+            meSnippetCategory,
+            drivesSnippetCategory
+    };
+
+    // the key of the service made before any account is signed in; it calls as whichever
+    // account is selected at the time of each call
+    private static final String NO_ACCOUNT = "";
 
     final String mSection;
-    final T mService;
+    private final Class<T> mServiceClass;
+    // by account id
+    private final ConcurrentMap<String, T> mServices = new ConcurrentHashMap<>();
+
+    SnippetCategory(int sectionIndex, Class<T> serviceClass) {
+        mSection = SnippetRegistry.SECTIONS[sectionIndex];
+        mServiceClass = serviceClass;
+    }
+
+    /**
+     * Returns the Retrofit service for this category of the selected account, creating it on
+     * first use
+     *
+     * @return the service used by every snippet in this category, which calls as the account
+     * signed in most recently
+     */
+    T getService() {
+        AccountSession session = AuthenticationManager.getDefaultSession();
+        if (null == session) {
+            return getService(NO_ACCOUNT, SnippetApp.getApp().getRetrofit());
+        }
+        return getService(session.getAccountId(), SnippetApp.getApp().getRetrofit(session));
+    }
+
+    private T getService(String accountId, Retrofit retrofit) {
+        T service = mServices.get(accountId);
+        if (null == service) {
+            service = retrofit.create(mServiceClass);
+            T previous = mServices.putIfAbsent(accountId, service);
+            if (null != previous) {
+                service = previous;
+            }
+        }
+        return service;
+    }
 
-    SnippetCategory(int sectionId, T service) {
-        mSection = SnippetApp.getApp().getString(sectionId);
-        mService = service;
+    Class<T> getServiceClass() {
+        return mServiceClass;
     }
 
-    private static <T> T create(Class<T> clazz) {
-        return SnippetApp.getApp().getRetrofit().create(clazz);
+    /**
+     * Creates the service of every category for the selected account ahead of its first use.
+     * Call this off the main thread; the Retrofit instance validates each service method as
+     * it is created.
+     */
+    public static void warmUp() {
+        for (SnippetCategory<?> category : sCategories) {
+            category.getService();
+        }
     }
 }
\ No newline at end of file
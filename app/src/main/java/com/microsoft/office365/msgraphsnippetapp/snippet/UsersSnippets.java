@@ -16,15 +16,15 @@ import java.util.UUID;
 import okhttp3.ResponseBody;
 import retrofit2.Callback;
 
-import static com.microsoft.office365.msgraphsnippetapp.R.array.get_organization_filtered_users;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.get_organization_users;
-import static com.microsoft.office365.msgraphsnippetapp.R.array.insert_organization_user;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.get_organization_filtered_users;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.get_organization_users;
+import static com.microsoft.office365.msgraphsnippetapp.snippet.SnippetRegistry.insert_organization_user;
 import static com.microsoft.office365.msgraphsnippetapp.util.SharedPrefsUtil.PREF_USER_TENANT;
 
 public abstract class UsersSnippets<Result> extends AbstractSnippet<MSGraphUserService, Result> {
 
-    public UsersSnippets(Integer descriptionArray) {
-        super(SnippetCategory.userSnippetCategory, descriptionArray);
+    public UsersSnippets(Integer snippetIndex) {
+        super(SnippetCategory.userSnippetCategory, snippetIndex);
     }
 
     static UsersSnippets[] getUsersSnippets() {
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.util;
+
+import com.microsoft.office365.auth.AccountSession;
+import com.microsoft.office365.auth.AuthenticationManager;
+import com.microsoft.office365.msgraphsnippetapp.ServiceConstants;
+
+import java.io.IOException;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Authorizes Graph requests as one account, or as the selected account at the time of each
+ * request, replacing whatever Authorization header an earlier interceptor added. The session
+ * is looked up again for every request, so one signed out and back in is used as it is now.
+ * A request made while no such account is signed in is sent without authorization.
+ */
+public class AccountSessionInterceptor implements Interceptor {
+
+    private static final String GRAPH_HOST =
+            HttpUrl.parse(ServiceConstants.AUTHENTICATION_RESOURCE_ID).host();
+
+    private final String mAccountId;
+
+    /**
+     * Authorizes requests as the account signed in most recently
+     */
+    public AccountSessionInterceptor() {
+        this(null);
+    }
+
+    /**
+     * @param accountId The account to authorize requests as, from
+     *                  {@link AccountSession#getAccountId()}
+     */
+    public AccountSessionInterceptor(String accountId) {
+        mAccountId = accountId;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        // upload session urls are on other hosts and carry their own authorization
+        if (!GRAPH_HOST.equals(request.url().host())) {
+            return chain.proceed(request);
+        }
+        AccountSession session = null == mAccountId
+                ? AuthenticationManager.getDefaultSession()
+                : AuthenticationManager.getSession(mAccountId);
+        if (null == session) {
+            return chain.proceed(request);
+        }
+        return chain.proceed(request.newBuilder()
+                .header("Authorization", "Bearer " + session.getAccessToken())
+                .build());
+    }
+}
@@ -0,0 +1,581 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.util;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Encodes lists of Graph entities, such as a cached page of events, in a compact binary form
+ * that decodes several times faster than their JSON.
+ * <p>
+ * The layout comes from the fields of the entity class, found once by reflection: there are no
+ * property names in the data, numbers and lengths are varints, and a short string that repeats,
+ * such as a time zone or a department, is written once and referred to after that, so decoding
+ * also shares one instance of it. Every field of a type must be a primitive, a boxed number or
+ * boolean, a String, another such type, or an array of Strings or of such types.
+ * <p>
+ * The data starts with a fingerprint of the layout, so data written before a class gained,
+ * lost or changed a field is rejected by {@link #decode} instead of being misread. Keep the
+ * data only as a cache.
+ *
+ * @param <T> The type of the entities
+ */
+public class BinaryCodec<T> {
+
+    static final int MAGIC = 0x47424331; // GBC1
+    // strings up to this many bytes are written once per encoding and referred to after that
+    static final int MAX_SHARED_LENGTH = 64;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final ConcurrentMap<Class<?>, BinaryCodec<?>> sCodecs =
+            new ConcurrentHashMap<>();
+
+    private static final int STRING = 0;
+    private static final int BOOLEAN = 1;
+    private static final int INT = 2;
+    private static final int LONG = 3;
+    private static final int DOUBLE = 4;
+    private static final int BOXED_BOOLEAN = 5;
+    private static final int BOXED_INT = 6;
+    private static final int BOXED_LONG = 7;
+    private static final int BOXED_DOUBLE = 8;
+    private static final int OBJECT = 9;
+    private static final int STRING_ARRAY = 10;
+    private static final int OBJECT_ARRAY = 11;
+
+    private final Class<T> mType;
+    private final Constructor<T> mConstructor;
+    private final Field[] mFields;
+    private final int[] mKinds;
+    // the codec of each OBJECT or OBJECT_ARRAY field
+    private final BinaryCodec<?>[] mCodecs;
+    private final int mFingerprint;
+
+    /**
+     * @param type An entity class, e.g. {@code Event.class}
+     * @return the codec of the class
+     * @throws IllegalArgumentException if the class has a field that can't be encoded
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> BinaryCodec<T> of(Class<T> type) {
+        BinaryCodec<T> codec = (BinaryCodec<T>) sCodecs.get(type);
+        if (null == codec) {
+            codec = new BinaryCodec<>(type, new HashSet<Class<?>>());
+            BinaryCodec<T> raced = (BinaryCodec<T>) sCodecs.putIfAbsent(type, codec);
+            if (null != raced) {
+                codec = raced;
+            }
+        }
+        return codec;
+    }
+
+    private BinaryCodec(Class<T> type, Set<Class<?>> building) {
+        if (!building.add(type)) {
+            throw new IllegalArgumentException(type.getName() + " refers to itself");
+        }
+        mType = type;
+        try {
+            mConstructor = type.getDeclaredConstructor();
+            mConstructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(type.getName() + " has no no-arg constructor", e);
+        }
+        List<Field> fields = fields(type);
+        mFields = fields.toArray(new Field[fields.size()]);
+        mKinds = new int[mFields.length];
+        mCodecs = new BinaryCodec<?>[mFields.length];
+        int fingerprint = 1;
+        for (int i = 0; i < mFields.length; i++) {
+            Field field = mFields[i];
+            field.setAccessible(true);
+            mKinds[i] = kind(field);
+            if (OBJECT == mKinds[i] || OBJECT_ARRAY == mKinds[i]) {
+                Class<?> nested = OBJECT == mKinds[i]
+                        ? field.getType()
+                        : field.getType().getComponentType();
+                BinaryCodec<?> codec = sCodecs.get(nested);
+                mCodecs[i] = null != codec ? codec : codecOf(nested, building);
+            }
+            fingerprint = 31 * fingerprint + field.getName().hashCode();
+            fingerprint = 31 * fingerprint + mKinds[i];
+            if (null != mCodecs[i]) {
+                fingerprint = 31 * fingerprint + mCodecs[i].mFingerprint;
+            }
+        }
+        mFingerprint = fingerprint;
+        building.remove(type);
+    }
+
+    private static <N> BinaryCodec<N> codecOf(Class<N> type, Set<Class<?>> building) {
+        BinaryCodec<N> codec = new BinaryCodec<>(type, building);
+        sCodecs.putIfAbsent(type, codec);
+        return codec;
+    }
+
+    /**
+     * @param entities The entities, none of them null
+     * @return their encoding
+     */
+    public byte[] encode(List<T> entities) {
+        Writer out = new Writer();
+        out.writeInt(MAGIC);
+        out.writeInt(mFingerprint);
+        out.writeVarint(entities.size());
+        try {
+            for (T entity : entities) {
+                write(out, entity);
+            }
+        } catch (IllegalAccessException e) {
+            // the fields were made accessible when the codec was built
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param data An encoding from {@link #encode}
+     * @return the entities
+     * @throws IOException if the data is not an encoding of this class as it is now
+     */
+    public List<T> decode(byte[] data) throws IOException {
+        Reader in = new Reader(data);
+        if (data.length < 8 || MAGIC != in.readInt()) {
+            throw new IOException("Not an encoding of " + mType.getName());
+        }
+        if (mFingerprint != in.readInt()) {
+            throw new IOException("Encoded with another version of " + mType.getName());
+        }
+        try {
+            int count = in.readVarint();
+            if (count < 0) {
+                throw new IOException("Bad count " + count);
+            }
+            List<T> entities = new ArrayList<>(Math.min(count, data.length));
+            for (int i = 0; i < count; i++) {
+                entities.add(read(in));
+            }
+            return entities;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Truncated encoding of " + mType.getName(), e);
+        } catch (IllegalAccessException | InstantiationException | InvocationTargetException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void write(Writer out, Object entity) throws IllegalAccessException {
+        for (int i = 0; i < mFields.length; i++) {
+            Field field = mFields[i];
+            switch (mKinds[i]) {
+                case STRING:
+                    out.writeString((String) field.get(entity));
+                    break;
+                case BOOLEAN:
+                    out.writeByte(field.getBoolean(entity) ? 1 : 0);
+                    break;
+                case INT:
+                    out.writeVarint(zigZag(field.getInt(entity)));
+                    break;
+                case LONG:
+                    out.writeVarLong(zigZag(field.getLong(entity)));
+                    break;
+                case DOUBLE:
+                    out.writeLong(Double.doubleToRawLongBits(field.getDouble(entity)));
+                    break;
+                case BOXED_BOOLEAN: {
+                    Boolean value = (Boolean) field.get(entity);
+                    out.writeByte(null == value ? 0 : value ? 2 : 1);
+                    break;
+                }
+                case BOXED_INT: {
+                    Integer value = (Integer) field.get(entity);
+                    out.writeByte(null == value ? 0 : 1);
+                    if (null != value) {
+                        out.writeVarint(zigZag(value));
+                    }
+                    break;
+                }
+                case BOXED_LONG: {
+                    Long value = (Long) field.get(entity);
+                    out.writeByte(null == value ? 0 : 1);
+                    if (null != value) {
+                        out.writeVarLong(zigZag(value));
+                    }
+                    break;
+                }
+                case BOXED_DOUBLE: {
+                    Double value = (Double) field.get(entity);
+                    out.writeByte(null == value ? 0 : 1);
+                    if (null != value) {
+                        out.writeLong(Double.doubleToRawLongBits(value));
+                    }
+                    break;
+                }
+                case OBJECT: {
+                    Object value = field.get(entity);
+                    out.writeByte(null == value ? 0 : 1);
+                    if (null != value) {
+                        mCodecs[i].write(out, value);
+                    }
+                    break;
+                }
+                case STRING_ARRAY: {
+                    String[] values = (String[]) field.get(entity);
+                    out.writeVarint(null == values ? 0 : values.length + 1);
+                    if (null != values) {
+                        for (String value : values) {
+                            out.writeString(value);
+                        }
+                    }
+                    break;
+                }
+                default: {
+                    Object[] values = (Object[]) field.get(entity);
+                    out.writeVarint(null == values ? 0 : values.length + 1);
+                    if (null != values) {
+                        for (Object value : values) {
+                            out.writeByte(null == value ? 0 : 1);
+                            if (null != value) {
+                                mCodecs[i].write(out, value);
+                            }
+                        }
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    private T read(Reader in)
+            throws IOException, IllegalAccessException, InstantiationException,
+            InvocationTargetException {
+        T entity = mConstructor.newInstance();
+        for (int i = 0; i < mFields.length; i++) {
+            Field field = mFields[i];
+            switch (mKinds[i]) {
+                case STRING:
+                    field.set(entity, in.readString());
+                    break;
+                case BOOLEAN:
+                    field.setBoolean(entity, 0 != in.readByte());
+                    break;
+                case INT:
+                    field.setInt(entity, unZigZag(in.readVarint()));
+                    break;
+                case LONG:
+                    field.setLong(entity, unZigZag(in.readVarLong()));
+                    break;
+                case DOUBLE:
+                    field.setDouble(entity, Double.longBitsToDouble(in.readLong()));
+                    break;
+                case BOXED_BOOLEAN: {
+                    int value = in.readByte();
+                    field.set(entity, 0 == value ? null : Boolean.valueOf(2 == value));
+                    break;
+                }
+                case BOXED_INT:
+                    field.set(entity, 0 == in.readByte()
+                            ? null
+                            : Integer.valueOf(unZigZag(in.readVarint())));
+                    break;
+                case BOXED_LONG:
+                    field.set(entity, 0 == in.readByte()
+                            ? null
+                            : Long.valueOf(unZigZag(in.readVarLong())));
+                    break;
+                case BOXED_DOUBLE:
+                    field.set(entity, 0 == in.readByte()
+                            ? null
+                            : Double.valueOf(Double.longBitsToDouble(in.readLong())));
+                    break;
+                case OBJECT:
+                    field.set(entity, 0 == in.readByte() ? null : mCodecs[i].read(in));
+                    break;
+                case STRING_ARRAY: {
+                    int length = in.readVarint() - 1;
+                    String[] values = null;
+                    if (length >= 0) {
+                        values = new String[in.checkLength(length)];
+                        for (int j = 0; j < length; j++) {
+                            values[j] = in.readString();
+                        }
+                    }
+                    field.set(entity, values);
+                    break;
+                }
+                default: {
+                    int length = in.readVarint() - 1;
+                    Object[] values = null;
+                    if (length >= 0) {
+                        values = (Object[]) Array.newInstance(
+                                mCodecs[i].mType, in.checkLength(length));
+                        for (int j = 0; j < length; j++) {
+                            values[j] = 0 == in.readByte() ? null : mCodecs[i].read(in);
+                        }
+                    }
+                    field.set(entity, values);
+                    break;
+                }
+            }
+        }
+        return entity;
+    }
+
+    // the instance fields of a class and its superclasses, superclass first, each by name
+    private static List<Field> fields(Class<?> type) {
+        List<Field> fields = new ArrayList<>();
+        if (null != type.getSuperclass() && Object.class != type.getSuperclass()) {
+            fields.addAll(fields(type.getSuperclass()));
+        }
+        List<Field> declared = new ArrayList<>();
+        for (Field field : type.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers)
+                    && !Modifier.isTransient(modifiers)
+                    && !field.isSynthetic()) {
+                declared.add(field);
+            }
+        }
+        Collections.sort(declared, new Comparator<Field>() {
+            @Override
+            public int compare(Field a, Field b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        fields.addAll(declared);
+        return fields;
+    }
+
+    private static int kind(Field field) {
+        Class<?> type = field.getType();
+        if (String.class == type) {
+            return STRING;
+        } else if (boolean.class == type) {
+            return BOOLEAN;
+        } else if (int.class == type) {
+            return INT;
+        } else if (long.class == type) {
+            return LONG;
+        } else if (double.class == type) {
+            return DOUBLE;
+        } else if (Boolean.class == type) {
+            return BOXED_BOOLEAN;
+        } else if (Integer.class == type) {
+            return BOXED_INT;
+        } else if (Long.class == type) {
+            return BOXED_LONG;
+        } else if (Double.class == type) {
+            return BOXED_DOUBLE;
+        } else if (String[].class == type) {
+            return STRING_ARRAY;
+        } else if (type.isArray() && isEntity(type.getComponentType())) {
+            return OBJECT_ARRAY;
+        } else if (isEntity(type)) {
+            return OBJECT;
+        }
+        throw new IllegalArgumentException("Can't encode " + field.getDeclaringClass().getName()
+                + "." + field.getName() + " of " + field.getGenericType());
+    }
+
+    // a class of fields, such as the value objects, rather than a library or generic type
+    private static boolean isEntity(Class<?> type) {
+        return !type.isPrimitive()
+                && !type.isArray()
+                && !type.isInterface()
+                && !Modifier.isAbstract(type.getModifiers())
+                && 0 == type.getTypeParameters().length
+                && Object.class != type
+                && !type.getName().startsWith("java.")
+                && !type.getName().startsWith("com.google.gson.");
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * A growing buffer with the strings it has written
+     */
+    private static class Writer {
+
+        private byte[] mBuffer = new byte[1024];
+        private int mSize;
+        private final Map<String, Integer> mShared = new HashMap<>();
+
+        void writeByte(int value) {
+            ensure(1);
+            mBuffer[mSize++] = (byte) value;
+        }
+
+        void writeInt(int value) {
+            ensure(4);
+            mBuffer[mSize++] = (byte) (value >>> 24);
+            mBuffer[mSize++] = (byte) (value >>> 16);
+            mBuffer[mSize++] = (byte) (value >>> 8);
+            mBuffer[mSize++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7f) != 0) {
+                mBuffer[mSize++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            mBuffer[mSize++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7fL) != 0) {
+                mBuffer[mSize++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            mBuffer[mSize++] = (byte) value;
+        }
+
+        // 0 for null, (length << 1) | 1 for a new string, (index + 1) << 1 for a repeated one
+        void writeString(String value) {
+            if (null == value) {
+                writeVarint(0);
+                return;
+            }
+            Integer index = mShared.get(value);
+            if (null != index) {
+                writeVarint((index + 1) << 1);
+                return;
+            }
+            byte[] bytes = value.getBytes(UTF_8);
+            if (bytes.length <= MAX_SHARED_LENGTH) {
+                mShared.put(value, mShared.size());
+            }
+            writeVarint((bytes.length << 1) | 1);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, mBuffer, mSize, bytes.length);
+            mSize += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(mBuffer, mSize);
+        }
+
+        private void ensure(int length) {
+            if (mSize + length > mBuffer.length) {
+                mBuffer = Arrays.copyOf(mBuffer, Math.max(mBuffer.length * 2, mSize + length));
+            }
+        }
+    }
+
+    /**
+     * Reads a buffer from the front, with the strings it has read
+     */
+    private static class Reader {
+
+        private final byte[] mBuffer;
+        private int mPosition;
+        private final List<String> mShared = new ArrayList<>();
+
+        Reader(byte[] buffer) {
+            mBuffer = buffer;
+        }
+
+        int readByte() {
+            return mBuffer[mPosition++] & 0xff;
+        }
+
+        int readInt() {
+            return readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+        }
+
+        long readLong() {
+            return (long) readInt() << 32 | readInt() & 0xffffffffL;
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7f) << shift;
+                if (b < 0x80) {
+                    return value;
+                }
+            }
+            throw new ArrayIndexOutOfBoundsException("Malformed varint");
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7f) << shift;
+                if (b < 0x80) {
+                    return value;
+                }
+            }
+            throw new ArrayIndexOutOfBoundsException("Malformed varint");
+        }
+
+        String readString() throws IOException {
+            int tag = readVarint();
+            if (0 == tag) {
+                return null;
+            }
+            if (0 == (tag & 1)) {
+                int index = (tag >>> 1) - 1;
+                if (index >= mShared.size()) {
+                    throw new IOException("Bad string reference " + index);
+                }
+                return mShared.get(index);
+            }
+            int length = checkLength(tag >>> 1);
+            String value = new String(mBuffer, mPosition, length, UTF_8);
+            mPosition += length;
+            if (length <= MAX_SHARED_LENGTH) {
+                mShared.add(value);
+            }
+            return value;
+        }
+
+        // a length that can't fit in what is left is corrupt data, not a huge allocation
+        int checkLength(int length) throws IOException {
+            if (length < 0 || length > mBuffer.length - mPosition) {
+                throw new IOException("Bad length " + length);
+            }
+            return length;
+        }
+    }
+}
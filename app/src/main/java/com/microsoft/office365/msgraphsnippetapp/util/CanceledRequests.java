@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.util;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import okhttp3.Request;
+
+/**
+ * The requests whose calls were canceled on purpose, such as those of a snippet the user left
+ * or the slower copy of a hedged GET. Whatever such a call then fails with, e.g. a
+ * SocketException while its body is read, says nothing about the service. OkHttp 3.4 doesn't
+ * let an interceptor see its call, so whoever cancels a call adds its request here first.
+ * Requests are held weakly, and compared by identity.
+ */
+public final class CanceledRequests {
+
+    private static final Map<Request, Boolean> sCanceled =
+            Collections.synchronizedMap(new WeakHashMap<Request, Boolean>());
+
+    private CanceledRequests() {
+    }
+
+    /**
+     * @param request The request of a call about to be canceled
+     */
+    public static void add(Request request) {
+        sCanceled.put(request, Boolean.TRUE);
+    }
+
+    /**
+     * @param request A request, as an interceptor sees it
+     * @return true if its call was canceled
+     */
+    public static boolean contains(Request request) {
+        return sCanceled.containsKey(request);
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.util;
+
+import com.microsoft.office365.msgraphsnippetapp.ServiceConstants;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import timber.log.Timber;
+
+/**
+ * Fails requests to a workload at once, with a {@link CircuitOpenException}, while that
+ * workload is failing, so that they don't hold threads and connections other workloads need.
+ * <p>
+ * Each workload, such as drive, messages or groups, has a breaker of its own that watches the
+ * outcome of its last requests. A request fails if it gets no response, a 429 or a 5xx, or if
+ * its headers take longer than {@code slowMillis}. Once at least {@code minRequests} of the
+ * last {@code window} requests are known and {@code failureRate} of them have failed, the
+ * breaker opens and requests fail without being sent. After {@code openMillis} it lets
+ * {@code probes} requests through: if they all succeed it closes again, and if any fails it
+ * stays open for another {@code openMillis}.
+ */
+public class CircuitBreakerInterceptor implements Interceptor {
+
+    /**
+     * The states of a breaker
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final String GRAPH_HOST =
+            HttpUrl.parse(ServiceConstants.AUTHENTICATION_RESOURCE_ID).host();
+    // the message OkHttp fails a call canceled by anyone else with
+    private static final String CANCELED = "Canceled";
+
+    private final int mWindow;
+    private final int mMinRequests;
+    private final double mFailureRate;
+    private final long mSlowNanos;
+    private final long mOpenNanos;
+    private final int mProbes;
+    private final ConcurrentMap<String, Breaker> mBreakers = new ConcurrentHashMap<>();
+
+    /**
+     * @param window      The number of recent requests whose outcomes are kept, up to 64
+     * @param minRequests The fewest outcomes to judge a workload by
+     * @param failureRate The fraction of failed outcomes that opens the breaker, e.g. 0.5
+     * @param slowMillis  How long to wait for headers before counting a request as failed
+     * @param openMillis  How long the breaker stays open before probing
+     * @param probes      The number of requests that must succeed to close the breaker
+     */
+    public CircuitBreakerInterceptor(int window,
+                                     int minRequests,
+                                     double failureRate,
+                                     long slowMillis,
+                                     long openMillis,
+                                     int probes) {
+        if (window < 1 || window > Long.SIZE || minRequests > window) {
+            throw new IllegalArgumentException("window must be 1-64 and at least minRequests");
+        }
+        mWindow = window;
+        mMinRequests = minRequests;
+        mFailureRate = failureRate;
+        mSlowNanos = TimeUnit.MILLISECONDS.toNanos(slowMillis);
+        mOpenNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        mProbes = probes;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        String workload = workload(chain.request().url());
+        Breaker breaker = breaker(workload);
+        boolean probe = breaker.acquire(workload);
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException e) {
+            // a canceled call says nothing about the workload, whatever it failed with; this
+            // interceptor is first, so its request is the one the call was made with
+            if (CanceledRequests.contains(chain.request()) || CANCELED.equals(e.getMessage())) {
+                breaker.release(probe);
+            } else {
+                breaker.record(workload, probe, false);
+            }
+            throw e;
+        }
+        int code = response.code();
+        boolean failed = 429 == code || code >= 500 || System.nanoTime() - start > mSlowNanos;
+        breaker.record(workload, probe, !failed);
+        return response;
+    }
+
+    /**
+     * @param workload A workload, as named by {@link #workload}
+     * @return the state of its breaker
+     */
+    public State getState(String workload) {
+        Breaker breaker = mBreakers.get(workload);
+        return null == breaker ? State.CLOSED : breaker.getState();
+    }
+
+    /**
+     * Names the workload a request is to: the first segment of its path after the version
+     * and the user, e.g. drive for /v1.0/me/drive/root/children or groups for
+     * /v1.0/groups/{id}/members. Requests to other hosts, such as upload sessions, are named
+     * by their host.
+     *
+     * @param url The url of a request
+     * @return the workload
+     */
+    public static String workload(HttpUrl url) {
+        List<String> segments = url.pathSegments();
+        if (!GRAPH_HOST.equals(url.host())) {
+            return url.host();
+        }
+        int i = 1;
+        if (i < segments.size()
+                && ("me".equals(segments.get(i)) || "myOrganization".equals(segments.get(i)))) {
+            i++;
+        }
+        if (i + 2 < segments.size() && "users".equals(segments.get(i))) {
+            // a workload of another user
+            i += 2;
+        }
+        if (i < segments.size() && !segments.get(i).isEmpty()) {
+            return segments.get(i);
+        }
+        return segments.get(Math.min(i, segments.size()) - 1);
+    }
+
+    private Breaker breaker(String workload) {
+        Breaker breaker = mBreakers.get(workload);
+        if (null == breaker) {
+            breaker = new Breaker();
+            Breaker raced = mBreakers.putIfAbsent(workload, breaker);
+            if (null != raced) {
+                breaker = raced;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * The breaker of one workload
+     */
+    private class Breaker {
+
+        private State mState = State.CLOSED;
+        // the last outcomes, a bit each, set for a failure
+        private long mFailures;
+        private int mOutcomes;
+        private int mNext;
+        private long mOpenedNanos;
+        private int mProbesInFlight;
+        private int mProbesSucceeded;
+
+        synchronized State getState() {
+            return mState;
+        }
+
+        // returns true if the request is a probe
+        synchronized boolean acquire(String workload) throws CircuitOpenException {
+            if (State.OPEN == mState) {
+                long waited = System.nanoTime() - mOpenedNanos;
+                if (waited < mOpenNanos) {
+                    throw new CircuitOpenException(workload,
+                            TimeUnit.NANOSECONDS.toMillis(mOpenNanos - waited));
+                }
+                mState = State.HALF_OPEN;
+                mProbesInFlight = 0;
+                mProbesSucceeded = 0;
+            }
+            if (State.HALF_OPEN == mState) {
+                if (mProbesInFlight + mProbesSucceeded >= mProbes) {
+                    throw new CircuitOpenException(workload, 0);
+                }
+                mProbesInFlight++;
+                return true;
+            }
+            return false;
+        }
+
+        // a request ended without an outcome, e.g. it was canceled
+        synchronized void release(boolean probe) {
+            if (probe && State.HALF_OPEN == mState) {
+                // a probe of an earlier round may end after the counts were reset
+                mProbesInFlight = Math.max(0, mProbesInFlight - 1);
+            }
+        }
+
+        synchronized void record(String workload, boolean probe, boolean succeeded) {
+            switch (mState) {
+                case HALF_OPEN:
+                    if (!probe) {
+                        // sent before the breaker opened
+                        break;
+                    }
+                    mProbesInFlight = Math.max(0, mProbesInFlight - 1);
+                    if (!succeeded) {
+                        open(workload);
+                    } else if (++mProbesSucceeded >= mProbes) {
+                        Timber.i("Requests to %s are succeeding again", workload);
+                        mState = State.CLOSED;
+                        mFailures = 0;
+                        mOutcomes = 0;
+                        mNext = 0;
+                    }
+                    break;
+                case CLOSED:
+                    long bit = 1L << mNext;
+                    mFailures = succeeded ? mFailures & ~bit : mFailures | bit;
+                    mNext = (mNext + 1) % mWindow;
+                    mOutcomes = Math.min(mWindow, mOutcomes + 1);
+                    if (mOutcomes >= mMinRequests
+                            && Long.bitCount(mFailures) >= mFailureRate * mOutcomes) {
+                        open(workload);
+                    }
+                    break;
+                default:
+                    // sent before the breaker opened
+                    break;
+            }
+        }
+
+        private void open(String workload) {
+            Timber.w("Requests to %s are failing; failing them fast for %dms",
+                    workload, TimeUnit.NANOSECONDS.toMillis(mOpenNanos));
+            mState = State.OPEN;
+            mOpenedNanos = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.util;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request to a workload that has been failing, see
+ * {@link CircuitBreakerInterceptor}
+ */
+public class CircuitOpenException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String mWorkload;
+    private final long mRetryAfterMillis;
+
+    public CircuitOpenException(String workload, long retryAfterMillis) {
+        super("Requests to " + workload + " are failing; not retrying for "
+                + retryAfterMillis + "ms");
+        mWorkload = workload;
+        mRetryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return the workload whose requests are failing, e.g. "drive"
+     */
+    public String getWorkload() {
+        return mWorkload;
+    }
+
+    /**
+     * @return how long until requests to the workload are tried again, or 0 if they are being
+     * tried now and this request had to wait its turn
+     */
+    public long getRetryAfterMillis() {
+        return mRetryAfterMillis;
+    }
+}
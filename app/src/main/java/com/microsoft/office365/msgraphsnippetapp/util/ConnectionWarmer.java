@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import timber.log.Timber;
+
+/**
+ * Opens the connections the first requests will need before they are made, so that the
+ * first call after launch or sign-in doesn't wait for DNS, TCP and a full TLS handshake.
+ * <p>
+ * The Graph connection is opened with a HEAD request through a client that shares the
+ * connection pool and the TLS socket factory of the given client but none of its
+ * interceptors, so it carries no token and isn't counted by the breaker. The pooled HTTP/2
+ * connection is then reused by the first call, and its TLS session, cached by the shared
+ * socket factory, lets later connections resume rather than handshake in full. The login host
+ * is resolved and connected to through {@link HttpURLConnection}, which the sign-in library
+ * uses, so that its connection and TLS session are in the platform's caches.
+ */
+public class ConnectionWarmer {
+
+    private final OkHttpClient mClient;
+    private final String mGraphUrl;
+    private final String mLoginUrl;
+    private boolean mWarming;
+    private long mLastWarmUpMillis = -1;
+
+    /**
+     * @param client   The client whose pool the Graph connection is kept in
+     * @param graphUrl A url on the Graph host
+     * @param loginUrl A url on the login host
+     */
+    public ConnectionWarmer(OkHttpClient client, String graphUrl, String loginUrl) {
+        OkHttpClient.Builder builder = client.newBuilder();
+        builder.interceptors().clear();
+        builder.networkInterceptors().clear();
+        mClient = builder.build();
+        mGraphUrl = graphUrl;
+        mLoginUrl = loginUrl;
+    }
+
+    /**
+     * Connects to both hosts, on the calling thread, unless another thread is doing so.
+     * Failures are logged and otherwise ignored: the first call will connect as it would have.
+     *
+     * @return true if both connections were opened by this call
+     */
+    public boolean warmUp() {
+        synchronized (this) {
+            if (mWarming) {
+                return false;
+            }
+            mWarming = true;
+        }
+        long start = System.nanoTime();
+        boolean warmed = false;
+        long millis;
+        try {
+            warmed = connect();
+        } finally {
+            millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            synchronized (this) {
+                mWarming = false;
+                if (warmed) {
+                    mLastWarmUpMillis = millis;
+                }
+            }
+        }
+        Timber.d("Warmed up connections in %dms", millis);
+        return warmed;
+    }
+
+    /**
+     * @return how long the last successful warm-up took, or -1 if there hasn't been one
+     */
+    public synchronized long getLastWarmUpMillis() {
+        return mLastWarmUpMillis;
+    }
+
+    /**
+     * @return the number of connections, open or idle, in the shared pool
+     */
+    public int getConnectionCount() {
+        return mClient.connectionPool().connectionCount();
+    }
+
+    // returns true if both connections were opened
+    private boolean connect() {
+        boolean connected = true;
+        try {
+            warmGraph();
+        } catch (IOException e) {
+            Timber.w(e, "Unable to warm up the connection to %s", mGraphUrl);
+            connected = false;
+        }
+        try {
+            warmLogin();
+        } catch (IOException e) {
+            Timber.w(e, "Unable to warm up the connection to %s", mLoginUrl);
+            connected = false;
+        }
+        return connected;
+    }
+
+    private void warmGraph() throws IOException {
+        Response response = mClient.newCall(new Request.Builder()
+                .url(mGraphUrl)
+                .head()
+                .build())
+                .execute();
+        // whatever the status, the connection is now in the pool
+        response.close();
+    }
+
+    private void warmLogin() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(mLoginUrl).openConnection();
+        // as long as the client would wait, so a host that doesn't answer can't hold up warm-ups
+        connection.setConnectTimeout(mClient.connectTimeoutMillis());
+        connection.setReadTimeout(mClient.readTimeoutMillis());
+        connection.setRequestMethod("HEAD");
+        connection.setInstanceFollowRedirects(false);
+        // closing the stream, rather than disconnecting, keeps the connection alive for reuse
+        InputStream stream = connection.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST
+                ? connection.getErrorStream()
+                : connection.getInputStream();
+        if (null != stream) {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.util;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * Decodes a collection response one entity at a time.
+ * <p>
+ * The body is read as a stream of JSON tokens: each element of its {@code value} array is
+ * decoded on its own and handed to a {@link Sink} before the next one is read. The other
+ * properties of the page are skipped, except for {@code @odata.nextLink}, which may come
+ * before or after the array.
+ * <p>
+ * Only one entity and a small read buffer are in memory at once, however large the page, if
+ * the calls are {@code @Streaming}, such as {@code MSGraphUserService.streamUsers}. Retrofit
+ * reads the whole body of any other call before it is returned.
+ *
+ * @param <T> The type of the entities
+ */
+public class JsonCollectionDecoder<T> {
+
+    /**
+     * Receives the entities of a page, in order, on the decoding thread
+     */
+    public interface Sink<T> {
+
+        /**
+         * @param entity The next entity
+         * @return false to stop decoding the page
+         * @throws IOException to stop decoding with an error
+         */
+        boolean accept(T entity) throws IOException;
+    }
+
+    /**
+     * Makes the call for the page an @odata.nextLink points to, e.g. with
+     * {@code MSGraphUserService.streamUsersPage}
+     */
+    public interface NextPage {
+
+        Call<ResponseBody> call(String nextLink);
+    }
+
+    static final String VALUE = "value";
+    static final String NEXT_LINK = "@odata.nextLink";
+
+    private final Gson mGson;
+    private final Type mType;
+
+    /**
+     * @param gson The Gson to decode each entity with
+     * @param type The type of the entities, e.g. {@code User.class}
+     */
+    public JsonCollectionDecoder(Gson gson, Type type) {
+        mGson = gson;
+        mType = type;
+    }
+
+    /**
+     * Decodes the entities of every page of a collection, following each page's
+     * {@code @odata.nextLink}. Pages are fetched one after another, so a single page is held
+     * at a time and only the entity being decoded from it.
+     *
+     * @param call     The call for the first page
+     * @param nextPage Makes the calls for the following pages
+     * @param sink     Receives the entities
+     * @return the number of entities handed to the sink
+     * @throws IOException if a call fails or a body can't be decoded
+     */
+    public int decodeAll(Call<ResponseBody> call, NextPage nextPage, Sink<? super T> sink)
+            throws IOException {
+        int count = 0;
+        while (null != call) {
+            Page page = decode(call, sink);
+            count += page.getCount();
+            call = page.isStopped() || null == page.getNextLink()
+                    ? null
+                    : nextPage.call(page.getNextLink());
+        }
+        return count;
+    }
+
+    /**
+     * Executes a call for a page and decodes its entities
+     *
+     * @param call The call for the page
+     * @param sink Receives the entities
+     * @return the outcome of the page
+     * @throws IOException if the call fails or the body can't be decoded
+     */
+    public Page decode(Call<ResponseBody> call, Sink<? super T> sink) throws IOException {
+        Response<ResponseBody> response = call.execute();
+        if (!response.isSuccessful()) {
+            String error = null == response.errorBody() ? "" : response.errorBody().string();
+            throw new IOException("HTTP " + response.code() + " " + response.message() + " " + error);
+        }
+        return decode(response.body(), sink);
+    }
+
+    /**
+     * Decodes the entities of a page
+     *
+     * @param body The body of the page, closed once decoded
+     * @param sink Receives the entities
+     * @return the outcome of the page
+     * @throws IOException if the body can't be read or decoded
+     */
+    public Page decode(ResponseBody body, Sink<? super T> sink) throws IOException {
+        try {
+            return decode(body.charStream(), sink);
+        } finally {
+            body.close();
+        }
+    }
+
+    /**
+     * Decodes the entities of a page
+     *
+     * @param in   The text of the page; it is not closed
+     * @param sink Receives the entities
+     * @return the outcome of the page
+     * @throws IOException if the text can't be read or decoded
+     */
+    public Page decode(Reader in, Sink<? super T> sink) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        Page page = new Page();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (VALUE.equals(name) && JsonToken.BEGIN_ARRAY == reader.peek()) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    T entity = mGson.fromJson(reader, mType);
+                    page.mCount++;
+                    if (!sink.accept(entity)) {
+                        // the rest of the body is never read
+                        page.mStopped = true;
+                        return page;
+                    }
+                }
+                reader.endArray();
+            } else if (NEXT_LINK.equals(name) && JsonToken.STRING == reader.peek()) {
+                page.mNextLink = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return page;
+    }
+
+    /**
+     * The outcome of decoding a page
+     */
+    public static class Page {
+
+        private int mCount;
+        private String mNextLink;
+        private boolean mStopped;
+
+        /**
+         * @return the number of entities handed to the sink
+         */
+        public int getCount() {
+            return mCount;
+        }
+
+        /**
+         * @return the link to the next page, or null if this is the last page or decoding
+         * stopped before the link was read
+         */
+        public String getNextLink() {
+            return mNextLink;
+        }
+
+        /**
+         * @return true if the sink stopped decoding before the end of the page
+         */
+        public boolean isStopped() {
+            return mStopped;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.util;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.ResponseBody;
+
+/**
+ * Pretty-prints a response body on a worker thread, one JSON token at a time, into a
+ * {@link Writer}. The writer is flushed and the main thread notified each time another
+ * {@link #PROGRESS_INTERVAL} characters have been written, so the caller can show the text as
+ * it arrives without the whole body ever being held in memory. Bodies that aren't JSON are
+ * passed through as-is.
+ */
+public class JsonStreamFormatter implements Runnable {
+
+    /**
+     * Follows the formatting. Every method is called on the main thread.
+     */
+    public interface Listener {
+        /**
+         * More text has been written and flushed
+         */
+        void onProgress();
+
+        void onComplete();
+
+        void onError(Throwable t);
+    }
+
+    static final int PROGRESS_INTERVAL = 64 * 1024;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final String INDENT = "  ";
+    private static final int LOOKAHEAD = 1024;
+
+    private static final ExecutorService sExecutor = Executors.newCachedThreadPool();
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private final ResponseBody mBody;
+    private final Writer mOut;
+    private final Listener mListener;
+    private final AtomicBoolean mProgressPending = new AtomicBoolean();
+    private volatile boolean mCancelled;
+    private Future<?> mFuture;
+    // guarded by this
+    private boolean mStarted;
+    private boolean mFinished;
+    private Closeable mCloseWhenFinished;
+
+    private JsonStreamFormatter(ResponseBody body, Writer out, Listener listener) {
+        mBody = body;
+        mOut = out;
+        mListener = listener;
+    }
+
+    /**
+     * Starts formatting the body on a worker thread
+     *
+     * @param body     The body to format, closed once formatting ends
+     * @param out      Receives the formatted text, closed once formatting completes
+     * @param listener Follows the formatting on the main thread
+     * @return a handle that can cancel the formatting
+     */
+    public static JsonStreamFormatter format(ResponseBody body, Writer out, Listener listener) {
+        JsonStreamFormatter formatter = new JsonStreamFormatter(body, out, listener);
+        formatter.mFuture = sExecutor.submit(formatter);
+        return formatter;
+    }
+
+    /**
+     * Stops formatting; no further listener methods are called
+     */
+    public void cancel() {
+        cancel(null);
+    }
+
+    /**
+     * Stops formatting, and closes {@code closeable} once the worker has stopped, e.g. the
+     * document the output is written to; no further listener methods are called
+     *
+     * @param closeable Closed on the worker once it no longer writes, or at once if it has
+     *                  already finished
+     */
+    public void cancel(Closeable closeable) {
+        boolean finished;
+        boolean started;
+        synchronized (this) {
+            mCancelled = true;
+            finished = mFinished;
+            started = mStarted;
+            if (!finished) {
+                mCloseWhenFinished = closeable;
+            }
+        }
+        if (finished) {
+            closeQuietly(closeable);
+        } else if (started && null != mFuture) {
+            // a worker that hasn't started yet sees the cancellation and closes it then;
+            // cancelling its future would keep it from ever running
+            mFuture.cancel(true);
+        }
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            mStarted = true;
+        }
+        try {
+            if (mCancelled) {
+                return;
+            }
+            copy(mBody.charStream(), new ProgressWriter());
+            mOut.close();
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    mListener.onComplete();
+                }
+            });
+        } catch (final IOException | RuntimeException e) {
+            if (!mCancelled) {
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mListener.onError(e);
+                    }
+                });
+            }
+        } finally {
+            mBody.close();
+            Closeable closeable;
+            synchronized (this) {
+                mFinished = true;
+                closeable = mCloseWhenFinished;
+            }
+            closeQuietly(closeable);
+        }
+    }
+
+    /**
+     * Copies the text of {@code in} to {@code out}, pretty-printing it token by token if it
+     * is a JSON object or array and copying it unchanged otherwise
+     *
+     * @param in  The text to format
+     * @param out Receives the formatted text
+     * @throws IOException if reading, parsing or writing fails
+     */
+    public static void copy(Reader in, Writer out) throws IOException {
+        BufferedReader reader = new BufferedReader(in);
+        if (startsWithJson(reader)) {
+            JsonWriter writer = new JsonWriter(out);
+            writer.setIndent(INDENT);
+            copyTokens(new JsonReader(reader), writer);
+            writer.flush();
+        } else {
+            char[] buffer = new char[BUFFER_SIZE];
+            for (int read; -1 != (read = reader.read(buffer)); ) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private static boolean startsWithJson(BufferedReader reader) throws IOException {
+        reader.mark(LOOKAHEAD);
+        try {
+            for (int i = 0; i < LOOKAHEAD; i++) {
+                int c = reader.read();
+                if (-1 == c) {
+                    return false;
+                }
+                if (!Character.isWhitespace(c)) {
+                    return '{' == c || '[' == c;
+                }
+            }
+            return false;
+        } finally {
+            reader.reset();
+        }
+    }
+
+    private static void copyTokens(JsonReader in, JsonWriter out) throws IOException {
+        while (true) {
+            switch (in.peek()) {
+                case BEGIN_ARRAY:
+                    in.beginArray();
+                    out.beginArray();
+                    break;
+                case END_ARRAY:
+                    in.endArray();
+                    out.endArray();
+                    break;
+                case BEGIN_OBJECT:
+                    in.beginObject();
+                    out.beginObject();
+                    break;
+                case END_OBJECT:
+                    in.endObject();
+                    out.endObject();
+                    break;
+                case NAME:
+                    out.name(in.nextName());
+                    break;
+                case STRING:
+                    out.value(in.nextString());
+                    break;
+                case NUMBER:
+                    // keep the number exactly as the service sent it
+                    out.jsonValue(in.nextString());
+                    break;
+                case BOOLEAN:
+                    out.value(in.nextBoolean());
+                    break;
+                case NULL:
+                    in.nextNull();
+                    out.nullValue();
+                    break;
+                case END_DOCUMENT:
+                    return;
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (null != closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // nothing is written to it any more either way
+            }
+        }
+    }
+
+    private void post(final Runnable runnable) {
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCancelled) {
+                    runnable.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Passes text through to the output, flushing it and notifying the listener every
+     * {@link #PROGRESS_INTERVAL} characters. At most one notification waits for the main
+     * thread at a time.
+     */
+    private class ProgressWriter extends Writer {
+
+        private int mUnflushed;
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            if (mCancelled) {
+                throw new InterruptedIOException("Formatting was cancelled");
+            }
+            mOut.write(chars, offset, length);
+            mUnflushed += length;
+            if (mUnflushed >= PROGRESS_INTERVAL) {
+                flush();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            mOut.flush();
+            mUnflushed = 0;
+            if (mProgressPending.compareAndSet(false, true)) {
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mProgressPending.set(false);
+                        mListener.onProgress();
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
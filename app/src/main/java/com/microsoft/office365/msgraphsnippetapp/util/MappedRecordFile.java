@@ -0,0 +1,547 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A read-only file of records looked up by id, queried in place through a memory mapping.
+ * <p>
+ * A file holds sections of records of one kind each, such as users or drive items. A record
+ * has an id, a fixed number of strings and a fixed number of longs. Opening a file maps it and
+ * reads its header; nothing else is read until it is asked for, so a large file opens in
+ * about the time it takes to map it, and the operating system pages in only the parts looked
+ * at.
+ * <p>
+ * Each section is laid out as:
+ * <ul>
+ * <li>a minimal perfect hash of the ids, built by hash and displace: the id's hash picks a
+ * bucket, and the bucket's displacement picks the slot, with no two ids sharing one;</li>
+ * <li>the record of each slot;</li>
+ * <li>the offset of each record;</li>
+ * <li>the records: their longs, then their id and strings as UTF-8 prefixed with a varint
+ * length.</li>
+ * </ul>
+ * A lookup hashes the id twice, reads two ints and an offset, and compares the stored id,
+ * since an id that isn't in the file hashes to some slot too.
+ * <p>
+ * The header starts with a magic number and a format version; files of another version, or
+ * cut short, fail to open, and the caller rebuilds them. Files are written to a temporary file
+ * and renamed into place, so a reader never sees a partly written one.
+ */
+public class MappedRecordFile implements Closeable {
+
+    /**
+     * The version of the layout; files of any other version are rejected
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    static final int MAGIC = 0x4D475246; // "MGRF"
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+    private static final int SECTION_ENTRY_SIZE = 4 * 4 + 8;
+    private static final int FNV_OFFSET = 0x811C9DC5;
+    private static final int FNV_PRIME = 0x01000193;
+
+    private final RandomAccessFile mFile;
+    private final ByteBuffer mBuffer;
+    private final long mCreatedMillis;
+    private final Map<Integer, Section> mSections = new LinkedHashMap<>();
+
+    private MappedRecordFile(RandomAccessFile file, ByteBuffer buffer) throws IOException {
+        mFile = file;
+        mBuffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || MAGIC != buffer.getInt(0)) {
+            throw new IOException("Not a record file");
+        }
+        if (FORMAT_VERSION != buffer.getInt(4)) {
+            throw new IOException("Unsupported record file version " + buffer.getInt(4));
+        }
+        mCreatedMillis = buffer.getLong(8);
+        if (buffer.getLong(16) != buffer.capacity()) {
+            throw new IOException("Truncated record file");
+        }
+        int sections = buffer.getInt(24);
+        for (int i = 0; i < sections; i++) {
+            int entry = HEADER_SIZE + i * SECTION_ENTRY_SIZE;
+            Section section = new Section(
+                    buffer.getInt(entry + 4),
+                    buffer.getInt(entry + 8),
+                    buffer.getInt(entry + 12),
+                    (int) buffer.getLong(entry + 16));
+            mSections.put(buffer.getInt(entry), section);
+        }
+    }
+
+    /**
+     * Maps a file
+     *
+     * @param file The file, as written by a {@link Writer}
+     * @return the mapped file
+     * @throws IOException if the file can't be read, or is of another version or cut short
+     */
+    public static MappedRecordFile open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Record file too large to map: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedRecordFile(raf, buffer);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return when the file was written, in milliseconds since the epoch
+     */
+    public long getCreatedMillis() {
+        return mCreatedMillis;
+    }
+
+    /**
+     * @param kind The kind of records
+     * @return the section of that kind, or null if the file has none
+     */
+    public Section getSection(int kind) {
+        return mSections.get(kind);
+    }
+
+    /**
+     * Closes the file. The mapping itself is released once it is no longer referenced, so
+     * don't use the file's sections afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    /**
+     * The records of one kind
+     */
+    public class Section {
+
+        private final int mCount;
+        private final int mStringCount;
+        private final int mLongCount;
+        private final int mDisplacements;
+        private final int mSlots;
+        private final int mOffsets;
+        private final int mRecords;
+
+        Section(int count, int stringCount, int longCount, int start) {
+            mCount = count;
+            mStringCount = stringCount;
+            mLongCount = longCount;
+            mDisplacements = start;
+            mSlots = mDisplacements + 4 * count;
+            mOffsets = mSlots + 4 * count;
+            mRecords = mOffsets + 4 * count;
+        }
+
+        public int size() {
+            return mCount;
+        }
+
+        /**
+         * @param id The id of a record
+         * @return the record's row, or -1 if there is none
+         */
+        public int find(String id) {
+            if (0 == mCount) {
+                return -1;
+            }
+            int displacement = mBuffer.getInt(mDisplacements + 4 * bucket(hash(0, id), mCount));
+            int slot = displacement < 0
+                    ? -displacement - 1
+                    : bucket(hash(displacement, id), mCount);
+            int row = mBuffer.getInt(mSlots + 4 * slot);
+            return idEquals(row, id) ? row : -1;
+        }
+
+        public String getId(int row) {
+            return readString(stringsStart(row));
+        }
+
+        /**
+         * @param row   The row of a record
+         * @param index Which of the record's strings, from 0
+         * @return the string, which may be null
+         */
+        public String getString(int row, int index) {
+            checkIndex(index, mStringCount);
+            int position = stringsStart(row);
+            for (int i = 0; i <= index; i++) {
+                position = skipString(position);
+            }
+            return readString(position);
+        }
+
+        /**
+         * @param row   The row of a record
+         * @param index Which of the record's longs, from 0
+         * @return the long
+         */
+        public long getLong(int row, int index) {
+            checkIndex(index, mLongCount);
+            return mBuffer.getLong(recordStart(row) + 8 * index);
+        }
+
+        private int recordStart(int row) {
+            if (row < 0 || row >= mCount) {
+                throw new IndexOutOfBoundsException("Row " + row + " of " + mCount);
+            }
+            return mRecords + mBuffer.getInt(mOffsets + 4 * row);
+        }
+
+        private int stringsStart(int row) {
+            return recordStart(row) + 8 * mLongCount;
+        }
+
+        private boolean idEquals(int row, String id) {
+            int position = stringsStart(row);
+            int length = readVarint(position) - 1;
+            position += varintSize(length + 1);
+            if (length != id.length()) {
+                // ids are nearly always ASCII, whose UTF-8 length is their length
+                return id.equals(readString(stringsStart(row)));
+            }
+            for (int i = 0; i < length; i++) {
+                byte b = mBuffer.get(position + i);
+                if (b < 0) {
+                    return id.equals(readString(stringsStart(row)));
+                }
+                if (b != id.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String readString(int position) {
+            int length = readVarint(position);
+            if (0 == length) {
+                return null;
+            }
+            byte[] bytes = new byte[length - 1];
+            ByteBuffer duplicate = mBuffer.duplicate();
+            duplicate.position(position + varintSize(length));
+            duplicate.get(bytes);
+            return new String(bytes, UTF_8);
+        }
+
+        private int skipString(int position) {
+            int length = readVarint(position);
+            return position + varintSize(length) + Math.max(0, length - 1);
+        }
+
+        private int readVarint(int position) {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = mBuffer.get(position++);
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    private static void checkIndex(int index, int count) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Field " + index + " of " + count);
+        }
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while (value >= 0x80) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static int hash(int seed, String id) {
+        int h = 0 == seed ? FNV_OFFSET : seed;
+        for (int i = 0; i < id.length(); i++) {
+            h = (h ^ id.charAt(i)) * FNV_PRIME;
+        }
+        // FNV alone spreads short keys poorly over the low bits
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ h >>> 16;
+    }
+
+    static int bucket(int hash, int count) {
+        return (int) ((hash & 0xFFFFFFFFL) % count);
+    }
+
+    /**
+     * Collects records section by section, then writes the file
+     */
+    public static class Writer {
+
+        private final Map<Integer, SectionWriter> mSections = new LinkedHashMap<>();
+
+        /**
+         * Starts a section, or returns the one of that kind already started
+         *
+         * @param kind        The kind of records, unique within the file
+         * @param stringCount How many strings each record has, besides its id
+         * @param longCount   How many longs each record has
+         * @return the section to add records to
+         */
+        public SectionWriter section(int kind, int stringCount, int longCount) {
+            SectionWriter section = mSections.get(kind);
+            if (null == section) {
+                section = new SectionWriter(stringCount, longCount);
+                mSections.put(kind, section);
+            } else if (section.mStringCount != stringCount || section.mLongCount != longCount) {
+                throw new IllegalArgumentException("Section " + kind + " has another layout");
+            }
+            return section;
+        }
+
+        /**
+         * Writes the file, replacing any previous version of it only once it is complete
+         *
+         * @param file Where to write
+         * @throws IOException if the file can't be written
+         */
+        public void writeTo(File file) throws IOException {
+            List<int[][]> hashes = new ArrayList<>();
+            for (SectionWriter section : mSections.values()) {
+                hashes.add(section.perfectHash());
+            }
+
+            long length = HEADER_SIZE + (long) SECTION_ENTRY_SIZE * mSections.size();
+            long[] starts = new long[mSections.size()];
+            int s = 0;
+            for (SectionWriter section : mSections.values()) {
+                starts[s++] = length;
+                length += 3L * 4 * section.size() + section.mRecords.size();
+            }
+
+            File tmp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream fileOut = new FileOutputStream(tmp)) {
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(fileOut, 64 * 1024));
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(System.currentTimeMillis());
+                out.writeLong(length);
+                out.writeInt(mSections.size());
+                s = 0;
+                for (Map.Entry<Integer, SectionWriter> entry : mSections.entrySet()) {
+                    SectionWriter section = entry.getValue();
+                    out.writeInt(entry.getKey());
+                    out.writeInt(section.size());
+                    out.writeInt(section.mStringCount);
+                    out.writeInt(section.mLongCount);
+                    out.writeLong(starts[s++]);
+                }
+                s = 0;
+                for (SectionWriter section : mSections.values()) {
+                    int[][] hash = hashes.get(s++);
+                    for (int displacement : hash[0]) {
+                        out.writeInt(displacement);
+                    }
+                    for (int row : hash[1]) {
+                        out.writeInt(row);
+                    }
+                    for (int i = 0; i < section.size(); i++) {
+                        out.writeInt(section.mOffsets[i]);
+                    }
+                    section.mRecords.writeTo(out);
+                }
+                out.flush();
+                fileOut.getFD().sync();
+            } catch (IOException | RuntimeException e) {
+                if (!tmp.delete()) {
+                    tmp.deleteOnExit();
+                }
+                throw e;
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Unable to replace " + file);
+            }
+        }
+    }
+
+    /**
+     * The records of one kind, added one at a time
+     */
+    public static class SectionWriter {
+
+        private final int mStringCount;
+        private final int mLongCount;
+        private final List<String> mIds = new ArrayList<>();
+        private final Set<String> mIdSet = new HashSet<>();
+        private final ByteArrayOutputStream mRecords = new ByteArrayOutputStream();
+        private int[] mOffsets = new int[64];
+
+        SectionWriter(int stringCount, int longCount) {
+            mStringCount = stringCount;
+            mLongCount = longCount;
+        }
+
+        public int size() {
+            return mIds.size();
+        }
+
+        /**
+         * Adds a record
+         *
+         * @param id      The id, unique within the section
+         * @param longs   The record's longs
+         * @param strings The record's strings, any of which may be null
+         */
+        public void add(String id, long[] longs, String... strings) {
+            if (longs.length != mLongCount || strings.length != mStringCount) {
+                throw new IllegalArgumentException("Expected " + mLongCount + " longs and "
+                        + mStringCount + " strings");
+            }
+            if (!mIdSet.add(id)) {
+                throw new IllegalArgumentException("Duplicate id " + id);
+            }
+            if (mIds.size() == mOffsets.length) {
+                mOffsets = Arrays.copyOf(mOffsets, 2 * mOffsets.length);
+            }
+            mOffsets[mIds.size()] = mRecords.size();
+            mIds.add(id);
+            try {
+                DataOutputStream out = new DataOutputStream(mRecords);
+                for (long value : longs) {
+                    out.writeLong(value);
+                }
+                writeString(id);
+                for (String string : strings) {
+                    writeString(string);
+                }
+            } catch (IOException e) {
+                // a ByteArrayOutputStream doesn't throw
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            byte[] bytes = null == value ? new byte[0] : value.getBytes(UTF_8);
+            int length = null == value ? 0 : bytes.length + 1;
+            while (length >= 0x80) {
+                mRecords.write(length & 0x7f | 0x80);
+                length >>>= 7;
+            }
+            mRecords.write(length);
+            mRecords.write(bytes);
+        }
+
+        /**
+         * @return the displacement of each bucket and the row of each slot
+         */
+        int[][] perfectHash() {
+            final int n = mIds.size();
+            int[] displacements = new int[n];
+            int[] slots = new int[n];
+            if (0 == n) {
+                return new int[][]{displacements, slots};
+            }
+            final int[] bucketSizes = new int[n];
+            int[] bucketOf = new int[n];
+            for (int row = 0; row < n; row++) {
+                bucketOf[row] = bucket(hash(0, mIds.get(row)), n);
+                bucketSizes[bucketOf[row]]++;
+            }
+            // the rows of each bucket, contiguous
+            int[] bucketStarts = new int[n + 1];
+            for (int b = 0; b < n; b++) {
+                bucketStarts[b + 1] = bucketStarts[b] + bucketSizes[b];
+            }
+            int[] rows = new int[n];
+            int[] fill = Arrays.copyOf(bucketStarts, n);
+            for (int row = 0; row < n; row++) {
+                rows[fill[bucketOf[row]]++] = row;
+            }
+
+            // place the largest buckets first, while most slots are free
+            Integer[] order = new Integer[n];
+            for (int b = 0; b < n; b++) {
+                order[b] = b;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer lhs, Integer rhs) {
+                    return bucketSizes[rhs] - bucketSizes[lhs];
+                }
+            });
+
+            boolean[] taken = new boolean[n];
+            int[] candidate = new int[n];
+            int next = 0;
+            for (; next < n && bucketSizes[order[next]] > 1; next++) {
+                int b = order[next];
+                int size = bucketSizes[b];
+                for (int displacement = 1; ; displacement++) {
+                    int placed = 0;
+                    for (; placed < size; placed++) {
+                        int slot = bucket(hash(displacement, mIds.get(rows[bucketStarts[b] + placed])), n);
+                        if (taken[slot]) {
+                            break;
+                        }
+                        taken[slot] = true;
+                        candidate[placed] = slot;
+                    }
+                    if (placed == size) {
+                        displacements[b] = displacement;
+                        for (int i = 0; i < size; i++) {
+                            slots[candidate[i]] = rows[bucketStarts[b] + i];
+                        }
+                        break;
+                    }
+                    for (int i = 0; i < placed; i++) {
+                        taken[candidate[i]] = false;
+                    }
+                }
+            }
+            // buckets of one row go straight into the free slots
+            int free = 0;
+            for (; next < n && bucketSizes[order[next]] == 1; next++) {
+                int b = order[next];
+                while (taken[free]) {
+                    free++;
+                }
+                taken[free] = true;
+                displacements[b] = -free - 1;
+                slots[free] = rows[bucketStarts[b]];
+            }
+            return new int[][]{displacements, slots};
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Cuts the tail latency of GET requests by sending a second copy of a request that is slow to
+ * answer, and using whichever copy answers first.
+ * <p>
+ * A copy is sent once a request has gone without response headers for longer than most
+ * requests take, the {@code percentile} of the recent times to headers, and the first copy to
+ * get headers wins; the other is canceled. An error doesn't send a copy, and is only reported
+ * once neither copy can still answer. At most {@code maxHedgedFraction} of the requests are
+ * copied, so a slow service gets only a little extra load.
+ * <p>
+ * Hedging is off until {@link #setEnabled}, and only ever applies to GETs, which are
+ * idempotent. Calls go through the factories from {@link #callFactory}; the counts of what was
+ * hedged are kept across all of them.
+ */
+public class RequestHedger {
+
+    static final int SAMPLES = 128;
+    static final int MIN_SAMPLES = 20;
+    static final long MIN_DELAY_MILLIS = 20;
+    // a quiet period can save up this many copies for a burst of slow requests
+    static final double MAX_BUDGET = 5;
+
+    private final double mPercentile;
+    private final double mMaxHedgedFraction;
+    private final ScheduledExecutorService mTimer =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "request-hedger");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final long[] mSamples = new long[SAMPLES];
+    private int mSampleCount;
+    private long mDelayMillis = Long.MAX_VALUE;
+    private double mBudget;
+    private volatile boolean mEnabled;
+
+    private long mCallCount;
+    private long mHedgeCount;
+    private long mHedgeWinCount;
+
+    /**
+     * @param percentile        How slow a request must be to be copied, e.g. 0.95 to copy
+     *                          requests slower than 95% of recent ones
+     * @param maxHedgedFraction The most requests to copy, e.g. 0.05 for one in twenty
+     */
+    public RequestHedger(double percentile, double maxHedgedFraction) {
+        mPercentile = percentile;
+        mMaxHedgedFraction = maxHedgedFraction;
+    }
+
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * @param client The client, or another factory, to make the calls and their copies with
+     * @return a factory of calls that are copied when slow
+     */
+    public Call.Factory callFactory(final Call.Factory client) {
+        return new Call.Factory() {
+            @Override
+            public Call newCall(Request request) {
+                if (!mEnabled || !"GET".equals(request.method())) {
+                    return client.newCall(request);
+                }
+                return new HedgedCall(client, request);
+            }
+        };
+    }
+
+    /**
+     * @return the number of hedgeable requests made while enabled
+     */
+    public synchronized long getCallCount() {
+        return mCallCount;
+    }
+
+    /**
+     * @return the number of requests a copy was sent for, i.e. the extra requests made
+     */
+    public synchronized long getHedgeCount() {
+        return mHedgeCount;
+    }
+
+    /**
+     * @return the number of requests the copy answered first
+     */
+    public synchronized long getHedgeWinCount() {
+        return mHedgeWinCount;
+    }
+
+    /**
+     * @return how long a request goes without headers before it is copied, or -1 until enough
+     * requests have been timed
+     */
+    public synchronized long getDelayMillis() {
+        return Long.MAX_VALUE == mDelayMillis ? -1 : mDelayMillis;
+    }
+
+    // counts a call, and returns its delay or -1 for none
+    private synchronized long started() {
+        mCallCount++;
+        mBudget = Math.min(MAX_BUDGET, mBudget + mMaxHedgedFraction);
+        return Long.MAX_VALUE == mDelayMillis ? -1 : mDelayMillis;
+    }
+
+    private synchronized boolean tryHedge() {
+        if (mBudget < 1) {
+            return false;
+        }
+        mBudget--;
+        mHedgeCount++;
+        return true;
+    }
+
+    private synchronized void answered(long millis, boolean byHedge) {
+        if (byHedge) {
+            mHedgeWinCount++;
+        }
+        mSamples[mSampleCount++ % SAMPLES] = millis;
+        // sorting a few samples now and then is cheaper than keeping them sorted
+        if (mSampleCount >= MIN_SAMPLES && 0 == mSampleCount % (SAMPLES / 8)) {
+            long[] sorted = Arrays.copyOf(mSamples, Math.min(mSampleCount, SAMPLES));
+            Arrays.sort(sorted);
+            int index = (int) Math.min(sorted.length - 1, Math.floor(mPercentile * sorted.length));
+            mDelayMillis = Math.max(MIN_DELAY_MILLIS, sorted[index]);
+        }
+    }
+
+    /**
+     * A GET sent once, and again if the first copy is slow
+     */
+    private class HedgedCall implements Call {
+
+        private final Call.Factory mClient;
+        private final Request mRequest;
+        private final Call mPrimary;
+        private Call mHedge;
+        private ScheduledFuture<?> mTimer;
+        private Callback mCallback;
+        private long mStartNanos;
+        private int mPending;
+        private IOException mFailure;
+        private boolean mDone;
+        private boolean mExecuted;
+        private boolean mCanceled;
+
+        HedgedCall(Call.Factory client, Request request) {
+            mClient = client;
+            mRequest = request;
+            mPrimary = client.newCall(request);
+        }
+
+        @Override
+        public Request request() {
+            return mRequest;
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            final Response[] response = new Response[1];
+            final IOException[] failure = new IOException[1];
+            final CountDownLatch done = new CountDownLatch(1);
+            enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    failure[0] = e;
+                    done.countDown();
+                }
+
+                @Override
+                public void onResponse(Call call, Response r) {
+                    response[0] = r;
+                    done.countDown();
+                }
+            });
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for a response");
+            }
+            if (null != failure[0]) {
+                throw failure[0];
+            }
+            return response[0];
+        }
+
+        @Override
+        public void enqueue(Callback responseCallback) {
+            long delayMillis;
+            synchronized (this) {
+                if (mExecuted) {
+                    throw new IllegalStateException("Already Executed");
+                }
+                mExecuted = true;
+                mCallback = responseCallback;
+                mStartNanos = System.nanoTime();
+                mPending = 1;
+                delayMillis = started();
+                if (delayMillis >= 0) {
+                    mTimer = RequestHedger.this.mTimer.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            hedge();
+                        }
+                    }, delayMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+            mPrimary.enqueue(new Attempt(false));
+        }
+
+        @Override
+        public void cancel() {
+            Call hedge;
+            synchronized (this) {
+                mCanceled = true;
+                hedge = mHedge;
+                if (null != mTimer) {
+                    mTimer.cancel(false);
+                }
+            }
+            CanceledRequests.add(mPrimary.request());
+            mPrimary.cancel();
+            if (null != hedge) {
+                CanceledRequests.add(hedge.request());
+                hedge.cancel();
+            }
+        }
+
+        @Override
+        public synchronized boolean isExecuted() {
+            return mExecuted;
+        }
+
+        @Override
+        public synchronized boolean isCanceled() {
+            return mCanceled;
+        }
+
+        private void hedge() {
+            Call hedge;
+            synchronized (this) {
+                if (mDone || mCanceled || !tryHedge()) {
+                    return;
+                }
+                // a request of its own, so that canceling the loser doesn't mark the winner
+                hedge = mHedge = mClient.newCall(mRequest.newBuilder().build());
+                mPending++;
+            }
+            hedge.enqueue(new Attempt(true));
+        }
+
+        /**
+         * Receives the outcome of one copy
+         */
+        private class Attempt implements Callback {
+
+            private final boolean mIsHedge;
+
+            Attempt(boolean isHedge) {
+                mIsHedge = isHedge;
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                Call loser;
+                synchronized (HedgedCall.this) {
+                    if (mDone) {
+                        // the other copy won
+                        response.close();
+                        return;
+                    }
+                    mDone = true;
+                    loser = mIsHedge ? mPrimary : mHedge;
+                    if (null != mTimer) {
+                        mTimer.cancel(false);
+                    }
+                }
+                if (null != loser) {
+                    CanceledRequests.add(loser.request());
+                    loser.cancel();
+                }
+                answered(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mStartNanos), mIsHedge);
+                mCallback.onResponse(HedgedCall.this, response);
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                synchronized (HedgedCall.this) {
+                    if (mDone) {
+                        return;
+                    }
+                    if (null == mFailure) {
+                        mFailure = e;
+                    }
+                    if (--mPending > 0) {
+                        // the other copy may still answer
+                        return;
+                    }
+                    mDone = true;
+                    if (null != mTimer) {
+                        mTimer.cancel(false);
+                    }
+                }
+                mCallback.onFailure(HedgedCall.this, mFailure);
+            }
+        }
+    }
+}
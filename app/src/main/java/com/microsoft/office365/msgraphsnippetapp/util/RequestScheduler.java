@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Decides which requests go out first when more are waiting than should run at once.
+ * <p>
+ * Every request belongs to a {@link Priority} class, chosen by the {@link Call.Factory} it was
+ * made with, e.g. a Retrofit built on {@link #callFactory}. At most {@code maxRunning}
+ * requests run at once, and each background class has a lower limit of its own, so however
+ * much background work is queued some room is always left for interactive requests. When a
+ * request finishes, the next to start is the oldest waiting request of the highest class that
+ * is under its limit.
+ * <p>
+ * A request holds its place until its response headers have arrived, or until its callback has
+ * returned when it is enqueued. The client's dispatcher should allow at least
+ * {@code maxRunning} requests per host, so that it doesn't queue them a second time.
+ */
+public class RequestScheduler {
+
+    /**
+     * The priority classes, highest first
+     */
+    public enum Priority {
+        /**
+         * Requests the user is waiting for, such as running a snippet
+         */
+        INTERACTIVE,
+        /**
+         * Requests for what the user is likely to want next, such as thumbnails
+         */
+        PREFETCH,
+        /**
+         * Requests nobody is waiting for, such as a sync or a crawl
+         */
+        BULK
+    }
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final int mMaxRunning;
+    private final int[] mMaxRunningByPriority;
+    private final int[] mRunningByPriority = new int[PRIORITIES.length];
+    private final List<ArrayDeque<ScheduledCall>> mQueues = new ArrayList<>();
+    private int mRunning;
+
+    /**
+     * @param maxRunning  The most requests running at once
+     * @param maxPrefetch The most {@link Priority#PREFETCH} requests running at once
+     * @param maxBulk     The most {@link Priority#BULK} requests running at once
+     * @throws IllegalArgumentException if the background limits leave no room for interactive
+     *                                  requests
+     */
+    public RequestScheduler(int maxRunning, int maxPrefetch, int maxBulk) {
+        if (maxPrefetch < 1 || maxBulk < 1 || maxPrefetch + maxBulk >= maxRunning) {
+            throw new IllegalArgumentException(
+                    "maxPrefetch + maxBulk must leave room for interactive requests");
+        }
+        mMaxRunning = maxRunning;
+        mMaxRunningByPriority = new int[]{maxRunning, maxPrefetch, maxBulk};
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            mQueues.add(new ArrayDeque<ScheduledCall>());
+        }
+    }
+
+    public int getMaxRunning() {
+        return mMaxRunning;
+    }
+
+    /**
+     * @param client   The client, or another factory, to make the calls with
+     * @param priority The class of the calls
+     * @return a factory of calls that wait their turn before the client runs them
+     */
+    public Call.Factory callFactory(final Call.Factory client, final Priority priority) {
+        return new Call.Factory() {
+            @Override
+            public Call newCall(Request request) {
+                return new ScheduledCall(client.newCall(request), priority);
+            }
+        };
+    }
+
+    /**
+     * @param priority A priority class
+     * @return the number of requests of the class waiting to start
+     */
+    public synchronized int getQueuedCount(Priority priority) {
+        return mQueues.get(priority.ordinal()).size();
+    }
+
+    /**
+     * @param priority A priority class
+     * @return the number of requests of the class running
+     */
+    public synchronized int getRunningCount(Priority priority) {
+        return mRunningByPriority[priority.ordinal()];
+    }
+
+    private void schedule(ScheduledCall call) {
+        List<ScheduledCall> started;
+        synchronized (this) {
+            mQueues.get(call.mPriority.ordinal()).addLast(call);
+            started = promote();
+        }
+        start(started);
+    }
+
+    private void finished(ScheduledCall call) {
+        List<ScheduledCall> started;
+        synchronized (this) {
+            mRunning--;
+            mRunningByPriority[call.mPriority.ordinal()]--;
+            started = promote();
+        }
+        start(started);
+    }
+
+    private synchronized boolean unschedule(ScheduledCall call) {
+        return mQueues.get(call.mPriority.ordinal()).remove(call);
+    }
+
+    // takes the calls that may start now off their queues; the caller starts them unlocked
+    private List<ScheduledCall> promote() {
+        List<ScheduledCall> started = null;
+        for (int p = 0; p < PRIORITIES.length && mRunning < mMaxRunning; p++) {
+            ArrayDeque<ScheduledCall> queue = mQueues.get(p);
+            while (!queue.isEmpty()
+                    && mRunning < mMaxRunning
+                    && mRunningByPriority[p] < mMaxRunningByPriority[p]) {
+                ScheduledCall call = queue.removeFirst();
+                mRunning++;
+                mRunningByPriority[p]++;
+                if (null == started) {
+                    started = new ArrayList<>();
+                }
+                started.add(call);
+            }
+        }
+        return started;
+    }
+
+    private static void start(List<ScheduledCall> started) {
+        if (null != started) {
+            for (ScheduledCall call : started) {
+                call.start();
+            }
+        }
+    }
+
+    /**
+     * A call that waits in its class's queue until the scheduler starts it
+     */
+    private class ScheduledCall implements Call {
+
+        final Call mDelegate;
+        final Priority mPriority;
+        // set for an enqueued call; null for an executed one, whose thread waits for its turn
+        private Callback mResponseCallback;
+        private Callback mCallback;
+        private boolean mStarted;
+        private boolean mExecuted;
+
+        ScheduledCall(Call delegate, Priority priority) {
+            mDelegate = delegate;
+            mPriority = priority;
+        }
+
+        @Override
+        public Request request() {
+            return mDelegate.request();
+        }
+
+        @Override
+        public Response execute() throws IOException {
+            markExecuted();
+            schedule(this);
+            try {
+                synchronized (this) {
+                    while (!mStarted) {
+                        wait();
+                    }
+                }
+            } catch (InterruptedException e) {
+                if (!unschedule(this)) {
+                    // started while this thread was being interrupted
+                    finished(this);
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for a request slot");
+            }
+            try {
+                return mDelegate.execute();
+            } finally {
+                finished(this);
+            }
+        }
+
+        @Override
+        public void enqueue(final Callback responseCallback) {
+            markExecuted();
+            synchronized (this) {
+                mResponseCallback = responseCallback;
+                mCallback = new Callback() {
+                    @Override
+                    public void onFailure(Call call, IOException e) {
+                        try {
+                            responseCallback.onFailure(ScheduledCall.this, e);
+                        } finally {
+                            finished(ScheduledCall.this);
+                        }
+                    }
+
+                    @Override
+                    public void onResponse(Call call, Response response) throws IOException {
+                        try {
+                            responseCallback.onResponse(ScheduledCall.this, response);
+                        } finally {
+                            finished(ScheduledCall.this);
+                        }
+                    }
+                };
+            }
+            schedule(this);
+        }
+
+        @Override
+        public void cancel() {
+            CanceledRequests.add(mDelegate.request());
+            mDelegate.cancel();
+            Callback callback;
+            synchronized (this) {
+                callback = mResponseCallback;
+            }
+            if (null != callback && unschedule(this)) {
+                // never started, so the delegate won't report it
+                callback.onFailure(this, new IOException("Canceled"));
+            }
+        }
+
+        @Override
+        public synchronized boolean isExecuted() {
+            return mExecuted;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return mDelegate.isCanceled();
+        }
+
+        private synchronized void markExecuted() {
+            if (mExecuted) {
+                throw new IllegalStateException("Already Executed");
+            }
+            mExecuted = true;
+        }
+
+        void start() {
+            Callback callback;
+            synchronized (this) {
+                mStarted = true;
+                callback = mCallback;
+                notifyAll();
+            }
+            if (null != callback) {
+                mDelegate.enqueue(callback);
+            }
+        }
+    }
+}
@@ -13,7 +13,6 @@ import com.microsoft.office365.msgraphsnippetapp.inject.AppModule;
 
 public class SharedPrefsUtil {
 
-    public static final String PREF_AUTH_TOKEN = "PREF_AUTH_TOKEN";
     public static final String PREF_USER_TENANT = "PREF_USER_TENANT";
     public static final String PREF_USER_ID = "PREF_USER_ID";
 
@@ -25,10 +24,6 @@ public class SharedPrefsUtil {
         setPreference(PREF_USER_ID, result.getAccount().getUsername());
     }
 
-    public static void persistAuthToken(AuthenticationResult result) {
-        setPreference(PREF_AUTH_TOKEN, result.getAccessToken());
-    }
-
     public static void persistUserTenant(String tenant) {
         getSharedPreferences().edit().putString(PREF_USER_TENANT, tenant).commit();
     }
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.util;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Logs calls through another interceptor, except those with large or streamed request bodies
+ * and those marked with {@link #STREAMED_RESPONSE_HEADER}.
+ * {@link okhttp3.logging.HttpLoggingInterceptor} copies the whole body into memory to log it,
+ * which would undo streaming an attachment from disk or a download to it.
+ */
+public class StreamingAwareLoggingInterceptor implements Interceptor {
+
+    /**
+     * Set by {@code @Streaming} endpoints whose response bodies must not be logged. It is
+     * removed before the request is sent.
+     */
+    public static final String STREAMED_RESPONSE_HEADER = "X-Streamed-Response";
+
+    static final long MAX_LOGGED_BODY = 64 * 1024;
+
+    private final Interceptor mLogging;
+
+    public StreamingAwareLoggingInterceptor(Interceptor logging) {
+        mLogging = logging;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (null != request.header(STREAMED_RESPONSE_HEADER)) {
+            return chain.proceed(request.newBuilder()
+                    .removeHeader(STREAMED_RESPONSE_HEADER)
+                    .build());
+        }
+        RequestBody body = request.body();
+        if (null != body && (body.contentLength() < 0 || body.contentLength() > MAX_LOGGED_BODY)) {
+            return chain.proceed(request);
+        }
+        return mLogging.intercept(chain);
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.viewer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A line-indexed text document spilled to a file on disk. One thread appends text through
+ * {@link #getWriter()} while others read it: the UTF-8 bytes go to the file, and only the
+ * start offset and fold information of each line are kept in memory. Lines are read back
+ * through a memory-mapped view of the file, so a caller only ever decodes the lines it shows.
+ * <p>
+ * A line that ends with <code>{</code> or <code>[</code> opens a fold that ends on the
+ * line starting with the matching <code>}</code> or <code>]</code>, which is how pretty-printed
+ * JSON is laid out.
+ */
+public class ResponseDocument implements Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int INITIAL_LINES = 1024;
+    private static final int NO_FOLD = -1;
+
+    private final File mFile;
+    private final RandomAccessFile mRandomAccessFile;
+    private final DocumentWriter mWriter;
+    private final Object mReadLock = new Object();
+
+    // written by the writer thread, published to readers through mLineCount: a reader must
+    // read mLineCount before either array, which is then at least that long
+    private long[] mLineStarts = new long[INITIAL_LINES + 1];
+    private int[] mFoldEnds = new int[INITIAL_LINES];
+    private volatile int mLineCount;
+    private volatile long mFlushedBytes;
+    private volatile boolean mFinished;
+
+    // guarded by mReadLock
+    private MappedByteBuffer mMap;
+
+    private ResponseDocument(File file) throws IOException {
+        mFile = file;
+        mWriter = new DocumentWriter(new FileOutputStream(file));
+        mRandomAccessFile = new RandomAccessFile(file, "r");
+        Arrays.fill(mFoldEnds, NO_FOLD);
+    }
+
+    /**
+     * Creates an empty document backed by a new temporary file
+     *
+     * @param directory Where to create the spill file, usually the cache directory
+     * @return the new document
+     * @throws IOException if the spill file can't be created
+     */
+    public static ResponseDocument create(File directory) throws IOException {
+        return new ResponseDocument(File.createTempFile("response", ".txt", directory));
+    }
+
+    /**
+     * Creates a document holding the given text
+     *
+     * @param directory Where to create the spill file, usually the cache directory
+     * @param text      The contents of the document
+     * @return the finished document
+     * @throws IOException if the spill file can't be written
+     */
+    public static ResponseDocument of(File directory, String text) throws IOException {
+        ResponseDocument document = create(directory);
+        Writer writer = document.getWriter();
+        writer.write(text);
+        writer.close();
+        return document;
+    }
+
+    /**
+     * The writer that appends to this document. Text becomes visible to readers each time
+     * the writer flushes, and the last line is completed when the writer is closed.
+     *
+     * @return the single writer of this document
+     */
+    public Writer getWriter() {
+        return mWriter;
+    }
+
+    /**
+     * @return the number of lines readers can see so far
+     */
+    public int getLineCount() {
+        return mLineCount;
+    }
+
+    /**
+     * @return true once the writer has been closed
+     */
+    public boolean isFinished() {
+        return mFinished;
+    }
+
+    /**
+     * Returns the last line of the fold opened by a line
+     *
+     * @param line The line to look up
+     * @return the line that closes the fold, or -1 if the line doesn't open one
+     */
+    public int getFoldEnd(int line) {
+        int lineCount = mLineCount;
+        checkLine(line, lineCount);
+        int foldEnd = mFoldEnds[line];
+        // a fold that isn't closed yet, or is closed past what has been published, isn't visible
+        return foldEnd < lineCount ? foldEnd : NO_FOLD;
+    }
+
+    /**
+     * Reads a line back from the spill file
+     *
+     * @param line     The line to read
+     * @param maxChars The most characters to return; longer lines are cut short with an ellipsis
+     * @return the text of the line without its line terminator
+     * @throws IOException if the spill file can't be read
+     */
+    public String getLine(int line, int maxChars) throws IOException {
+        checkLine(line, mLineCount);
+        long[] lineStarts = mLineStarts;
+        long start = lineStarts[line];
+        long end = lineStarts[line + 1] - 1;
+        int length = (int) Math.min(end - start, maxChars * 4L);
+        byte[] bytes = new byte[length];
+        synchronized (mReadLock) {
+            ByteBuffer view = mapTo(end).duplicate();
+            view.position((int) start);
+            view.get(bytes);
+        }
+        String text = new String(bytes, UTF_8);
+        if (text.length() > maxChars || length < end - start) {
+            return text.substring(0, Math.min(text.length(), maxChars)) + "\u2026";
+        }
+        if (text.endsWith("\r")) {
+            return text.substring(0, text.length() - 1);
+        }
+        return text;
+    }
+
+    /**
+     * Finds the next line that contains a query, ignoring the case of ASCII letters. This
+     * scans the spill file, so call it off the main thread.
+     *
+     * @param query    The text to look for
+     * @param fromLine The first line to search
+     * @return the first matching line at or after fromLine, or -1 if there is none
+     * @throws IOException if the spill file can't be read
+     */
+    public int find(String query, int fromLine) throws IOException {
+        byte[] needle = query.getBytes(UTF_8);
+        for (int i = 0; i < needle.length; i++) {
+            needle[i] = toLowerAscii(needle[i]);
+        }
+        int lineCount = mLineCount;
+        long[] lineStarts = mLineStarts;
+        fromLine = Math.max(0, fromLine);
+        if (0 == needle.length || fromLine >= lineCount) {
+            return -1;
+        }
+        // the last line of a finished document may end without a line terminator
+        long end = Math.min(lineStarts[lineCount], mFlushedBytes);
+        ByteBuffer view;
+        synchronized (mReadLock) {
+            view = mapTo(end).duplicate();
+        }
+        int last = (int) (end - needle.length);
+        for (int position = (int) lineStarts[fromLine]; position <= last; position++) {
+            int matched = 0;
+            while (matched < needle.length
+                    && toLowerAscii(view.get(position + matched)) == needle[matched]) {
+                matched++;
+            }
+            if (matched == needle.length) {
+                return lineOf(lineStarts, position, lineCount);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Closes the document and deletes its spill file
+     */
+    @Override
+    public void close() {
+        try {
+            mWriter.closeQuietly();
+            mRandomAccessFile.close();
+        } catch (IOException e) {
+            // the file is deleted either way
+        }
+        synchronized (mReadLock) {
+            mMap = null;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    private MappedByteBuffer mapTo(long end) throws IOException {
+        if (null == mMap || mMap.capacity() < end) {
+            mMap = mRandomAccessFile.getChannel()
+                    .map(FileChannel.MapMode.READ_ONLY, 0, mFlushedBytes);
+        }
+        return mMap;
+    }
+
+    private static void checkLine(int line, int lineCount) {
+        if (line < 0 || line >= lineCount) {
+            throw new IndexOutOfBoundsException("Line " + line + " hasn't been written yet");
+        }
+    }
+
+    private static int lineOf(long[] lineStarts, long position, int lineCount) {
+        int low = 0;
+        int high = lineCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (lineStarts[mid] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static byte toLowerAscii(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    /**
+     * Encodes text as UTF-8 into the spill file and indexes each line as it is completed
+     */
+    private class DocumentWriter extends Writer {
+
+        private final FileOutputStream mOut;
+        private final byte[] mBuffer = new byte[WRITE_BUFFER_SIZE];
+        private int[] mFoldStack = new int[64];
+        private int mFoldDepth;
+        private int mCount;
+        private long mPosition;
+        private int mLines;
+        private char mHighSurrogate;
+        private char mFirstChar;
+        private char mLastChar;
+        private boolean mClosed;
+
+        DocumentWriter(FileOutputStream out) {
+            mOut = out;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                write(chars[i]);
+            }
+        }
+
+        @Override
+        public void write(String text, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                write(text.charAt(i));
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            mOut.write(mBuffer, 0, mCount);
+            mOut.flush();
+            mCount = 0;
+            mFlushedBytes = mPosition;
+            mLineCount = mLines;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mClosed) {
+                return;
+            }
+            if (mPosition > mLineStarts[mLines]) {
+                // complete the last line as though it ended with a new line
+                endLine(mPosition + 1);
+            }
+            flush();
+            mOut.close();
+            mClosed = true;
+            mFinished = true;
+        }
+
+        void closeQuietly() throws IOException {
+            if (!mClosed) {
+                mOut.close();
+                mClosed = true;
+            }
+        }
+
+        private void write(char c) throws IOException {
+            if (mCount > mBuffer.length - 4) {
+                flush();
+            }
+            if ('\n' == c) {
+                put(c);
+                endLine(mPosition);
+                return;
+            }
+            if (!Character.isWhitespace(c)) {
+                if (0 == mFirstChar) {
+                    mFirstChar = c;
+                }
+                mLastChar = c;
+            }
+            if (Character.isHighSurrogate(c)) {
+                mHighSurrogate = c;
+            } else if (Character.isLowSurrogate(c) && 0 != mHighSurrogate) {
+                int codePoint = Character.toCodePoint(mHighSurrogate, c);
+                mHighSurrogate = 0;
+                put(0xF0 | (codePoint >> 18));
+                put(0x80 | ((codePoint >> 12) & 0x3F));
+                put(0x80 | ((codePoint >> 6) & 0x3F));
+                put(0x80 | (codePoint & 0x3F));
+            } else if (c < 0x80) {
+                put(c);
+            } else if (c < 0x800) {
+                put(0xC0 | (c >> 6));
+                put(0x80 | (c & 0x3F));
+            } else {
+                put(0xE0 | (c >> 12));
+                put(0x80 | ((c >> 6) & 0x3F));
+                put(0x80 | (c & 0x3F));
+            }
+        }
+
+        private void put(int b) {
+            mBuffer[mCount++] = (byte) b;
+            mPosition++;
+        }
+
+        private void endLine(long nextLineStart) {
+            int line = mLines;
+            ensureCapacity(line + 1);
+            if (('}' == mFirstChar || ']' == mFirstChar) && mFoldDepth > 0) {
+                mFoldEnds[mFoldStack[--mFoldDepth]] = line;
+            }
+            if ('{' == mLastChar || '[' == mLastChar) {
+                if (mFoldDepth == mFoldStack.length) {
+                    mFoldStack = Arrays.copyOf(mFoldStack, mFoldDepth * 2);
+                }
+                mFoldStack[mFoldDepth++] = line;
+            }
+            mLineStarts[line + 1] = nextLineStart;
+            mLines = line + 1;
+            mFirstChar = mLastChar = 0;
+        }
+
+        private void ensureCapacity(int lines) {
+            if (lines >= mFoldEnds.length) {
+                int capacity = mFoldEnds.length * 2;
+                long[] lineStarts = Arrays.copyOf(mLineStarts, capacity + 1);
+                int[] foldEnds = Arrays.copyOf(mFoldEnds, capacity);
+                Arrays.fill(foldEnds, mFoldEnds.length, capacity, NO_FOLD);
+                // readers pick up the new arrays when the next flush publishes mLineCount
+                mLineStarts = lineStarts;
+                mFoldEnds = foldEnds;
+            }
+        }
+    }
+}
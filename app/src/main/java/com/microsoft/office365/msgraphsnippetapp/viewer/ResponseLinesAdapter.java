@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.viewer;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import com.microsoft.office365.msgraphsnippetapp.R;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import timber.log.Timber;
+
+/**
+ * Lists the lines of a {@link ResponseDocument}, one row per line, so that only the lines on
+ * screen are read back and laid out. Lines that open a fold can be collapsed, which hides every
+ * line up to and including the one that closes the fold.
+ */
+public class ResponseLinesAdapter extends BaseAdapter {
+
+    /**
+     * Lines longer than this are cut short when shown
+     */
+    static final int MAX_LINE_CHARS = 2000;
+
+    private static final String FOLD_MARKER = " \u2026 ";
+    private static final int NONE = -1;
+
+    private final LayoutInflater mInflater;
+    private final int mMatchColor;
+    private final int mFoldedColor;
+    private final BitSet mCollapsed = new BitSet();
+    private ResponseDocument mDocument;
+    private int mMatchLine = NONE;
+
+    // the line shown at each position, or null while nothing is collapsed
+    private int[] mVisibleLines;
+    private int mVisibleCount;
+
+    public ResponseLinesAdapter(Context context) {
+        mInflater = LayoutInflater.from(context);
+        mMatchColor = context.getResources().getColor(R.color.search_match);
+        mFoldedColor = context.getResources().getColor(R.color.folded_line);
+    }
+
+    /**
+     * Shows another document, expanding every fold and clearing the search match
+     *
+     * @param document The document to show, or null to show nothing
+     */
+    public void setDocument(ResponseDocument document) {
+        mDocument = document;
+        mCollapsed.clear();
+        mMatchLine = NONE;
+        refresh();
+    }
+
+    /**
+     * Picks up the lines written to the document since the last refresh
+     */
+    public void refresh() {
+        int lineCount = null == mDocument ? 0 : mDocument.getLineCount();
+        if (mCollapsed.isEmpty()) {
+            mVisibleLines = null;
+            mVisibleCount = lineCount;
+        } else {
+            int[] visibleLines = null == mVisibleLines ? new int[64] : mVisibleLines;
+            int count = 0;
+            for (int line = 0; line < lineCount; ) {
+                if (count == visibleLines.length) {
+                    visibleLines = Arrays.copyOf(visibleLines, count * 2);
+                }
+                visibleLines[count++] = line;
+                int foldEnd = mDocument.getFoldEnd(line);
+                line = mCollapsed.get(line) && NONE != foldEnd ? foldEnd + 1 : line + 1;
+            }
+            mVisibleLines = visibleLines;
+            mVisibleCount = count;
+        }
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Collapses the fold opened by the line at a position, or expands it if it is collapsed
+     *
+     * @param position The position of the line in this adapter
+     * @return true if the line opens a fold
+     */
+    public boolean toggleFold(int position) {
+        int line = getLine(position);
+        if (NONE == mDocument.getFoldEnd(line)) {
+            return false;
+        }
+        mCollapsed.flip(line);
+        refresh();
+        return true;
+    }
+
+    /**
+     * Highlights a line, expanding any collapsed folds that hide it
+     *
+     * @param line The line to highlight
+     * @return the position of the line in this adapter
+     */
+    public int showMatch(int line) {
+        for (int folded = mCollapsed.nextSetBit(0);
+             NONE != folded && folded < line;
+             folded = mCollapsed.nextSetBit(folded + 1)) {
+            if (mDocument.getFoldEnd(folded) >= line) {
+                mCollapsed.clear(folded);
+            }
+        }
+        mMatchLine = line;
+        refresh();
+        return getPosition(line);
+    }
+
+    /**
+     * @return the highlighted line, or -1 if there is none
+     */
+    public int getMatchLine() {
+        return mMatchLine;
+    }
+
+    /**
+     * @param position A position in this adapter
+     * @return the document line shown at the position
+     */
+    public int getLine(int position) {
+        return null == mVisibleLines ? position : mVisibleLines[position];
+    }
+
+    /**
+     * Reads the text shown at a position
+     *
+     * @param position A position in this adapter
+     * @return the text of the line, or an empty string if it can't be read
+     */
+    public String getLineText(int position) {
+        try {
+            return mDocument.getLine(getLine(position), MAX_LINE_CHARS);
+        } catch (IOException e) {
+            Timber.e(e, "Unable to read the response body");
+            return "";
+        }
+    }
+
+    private int getPosition(int line) {
+        if (null == mVisibleLines) {
+            return line;
+        }
+        int position = Arrays.binarySearch(mVisibleLines, 0, mVisibleCount, line);
+        return position < 0 ? NONE : position;
+    }
+
+    @Override
+    public int getCount() {
+        return mVisibleCount;
+    }
+
+    @Override
+    public Object getItem(int position) {
+        return getLine(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getLine(position);
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView textView = (TextView) (null == convertView
+                ? mInflater.inflate(R.layout.list_response_line, parent, false)
+                : convertView);
+        int line = getLine(position);
+        String text = getLineText(position);
+        boolean collapsed = mCollapsed.get(line);
+        if (collapsed) {
+            // show the closing bracket after the marker, as in "{ ... }"
+            try {
+                String foldEnd = mDocument.getLine(mDocument.getFoldEnd(line), MAX_LINE_CHARS);
+                text += FOLD_MARKER + foldEnd.trim();
+            } catch (IOException e) {
+                Timber.e(e, "Unable to read the response body");
+            }
+        }
+        textView.setText(text);
+        if (line == mMatchLine) {
+            textView.setBackgroundColor(mMatchColor);
+        } else {
+            textView.setBackgroundColor(collapsed ? mFoldedColor : 0);
+        }
+        return textView;
+    }
+}
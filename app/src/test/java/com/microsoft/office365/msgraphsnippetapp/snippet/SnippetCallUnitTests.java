@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphsnippetapp.snippet;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.http.GET;
+
+public class SnippetCallUnitTests {
+
+    interface LocalService {
+        @GET("/slow")
+        Call<ResponseBody> getSlow();
+
+        @GET("/fast")
+        Call<ResponseBody> getFast();
+    }
+
+    private final CountDownLatch mArrived = new CountDownLatch(1);
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private HttpServer mServer;
+    private LocalService mService;
+
+    @Before
+    public void startServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    if ("/slow".equals(exchange.getRequestURI().getPath())) {
+                        mArrived.countDown();
+                        mRelease.await(10, TimeUnit.SECONDS);
+                    }
+                    byte[] body = "{}".getBytes("UTF-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    exchange.getResponseBody().write(body);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        mServer.start();
+        mService = new Retrofit.Builder()
+                .baseUrl("http://localhost:" + mServer.getAddress().getPort())
+                // answer on OkHttp's threads rather than the main looper
+                .callbackExecutor(new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        command.run();
+                    }
+                })
+                .build()
+                .create(LocalService.class);
+    }
+
+    @After
+    public void stopServer() {
+        mRelease.countDown();
+        mServer.stop(0);
+    }
+
+    @Test
+    public void cancelDropsCallback() throws InterruptedException {
+        SnippetCall snippetCall = new SnippetCall();
+        LocalService service = snippetCall.track(mService, LocalService.class);
+        final CountDownLatch answered = new CountDownLatch(1);
+        Callback<ResponseBody> callback = new Callback<ResponseBody>() {
+            @Override
+            public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                answered.countDown();
+            }
+
+            @Override
+            public void onFailure(Call<ResponseBody> call, Throwable t) {
+                answered.countDown();
+            }
+        };
+        WeakReference<Callback<ResponseBody>> target = new WeakReference<>(callback);
+        Call<ResponseBody> call = service.getSlow();
+        call.enqueue(snippetCall.wrap(callback));
+        callback = null;
+        Assert.assertTrue("The request was not sent", mArrived.await(10, TimeUnit.SECONDS));
+
+        snippetCall.cancel();
+        Assert.assertTrue(call.isCanceled());
+        // let go of while the call is still in flight
+        for (int i = 0; i < 50 && null != target.get(); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertNull("The canceled handle still holds the callback", target.get());
+
+        mRelease.countDown();
+        Assert.assertFalse("The callback was called after the cancel",
+                answered.await(500, TimeUnit.MILLISECONDS));
+        // the next call of a chain is canceled before it is sent
+        Assert.assertTrue(service.getFast().isCanceled());
+    }
+
+    @Test
+    public void forgetCompletedCalls() throws IOException, InterruptedException {
+        SnippetCall snippetCall = new SnippetCall();
+        LocalService service = snippetCall.track(mService, LocalService.class);
+        Call<ResponseBody> executed = service.getFast();
+        executed.execute().body().close();
+        final CountDownLatch done = new CountDownLatch(1);
+        Call<ResponseBody> enqueued = service.getFast();
+        enqueued.enqueue(snippetCall.wrap(new Callback<ResponseBody>() {
+            @Override
+            public void onResponse(Call<ResponseBody> call, Response<ResponseBody> response) {
+                response.body().close();
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(Call<ResponseBody> call, Throwable t) {
+                done.countDown();
+            }
+        }));
+        Assert.assertTrue("The call did not complete", done.await(10, TimeUnit.SECONDS));
+
+        // both were forgotten as they completed, so the cancel doesn't reach them
+        snippetCall.cancel();
+        Assert.assertFalse(executed.isCanceled());
+        Assert.assertFalse(enqueued.isCanceled());
+    }
+}
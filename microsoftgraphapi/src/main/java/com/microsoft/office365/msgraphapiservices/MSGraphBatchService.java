@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphapiservices;
+
+import com.microsoft.office365.microsoftgraphvos.BatchRequestContent;
+import com.microsoft.office365.microsoftgraphvos.BatchResponseContent;
+
+import retrofit2.Call;
+import retrofit2.http.Body;
+import retrofit2.http.POST;
+import retrofit2.http.Path;
+
+public interface MSGraphBatchService {
+
+    /**
+     * Sends several requests in one round trip. The service accepts at most 20 requests per
+     * batch and answers each of them individually, in any order.
+     *
+     * @param version  The version of the API to use (beta, v1, etc...)
+     * @param content  The requests to send
+     */
+    @POST("/{version}/$batch")
+    Call<BatchResponseContent> batch(
+            @Path("version") String version,
+            @Body BatchRequestContent content
+    );
+}
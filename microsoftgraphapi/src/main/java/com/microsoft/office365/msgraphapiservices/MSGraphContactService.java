@@ -4,20 +4,54 @@
  */
 package com.microsoft.office365.msgraphapiservices;
 
+import com.microsoft.office365.microsoftgraphvos.Contact;
+import com.microsoft.office365.microsoftgraphvos.DeltaEnvelope;
+
 import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.GET;
+import retrofit2.http.Headers;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
+import retrofit2.http.Streaming;
+import retrofit2.http.Url;
 
 public interface MSGraphContactService {
 
     /**
      * Get the connected user's contacts.
      *
+     * Not read into memory, so the body must be consumed and closed.
+     *
      * @param version  The version of the API to use (beta, v1, etc...)
      */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
     @GET("/{version}/myOrganization/contacts")
     Call<ResponseBody> getContacts(
             @Path("version") String version
     );
+
+    /**
+     * Starts tracking changes to the organization's contacts. The first round of pages returns
+     * every contact; its last page has a delta link that returns only what changed since.
+     *
+     * @param version  The version of the API to use (beta, v1, etc...)
+     * @param select   The Contact properties to return
+     */
+    @GET("/{version}/contacts/delta")
+    Call<DeltaEnvelope<Contact>> getContactsDelta(
+            @Path("version") String version,
+            @Query("$select") String select
+    );
+
+    /**
+     * Follows the @odata.nextLink or @odata.deltaLink of a contacts delta page
+     *
+     * @param link     The link to follow
+     */
+    @GET
+    Call<DeltaEnvelope<Contact>> getContactsDeltaPage(
+            @Url String link
+    );
 }
@@ -5,30 +5,47 @@
 package com.microsoft.office365.msgraphapiservices;
 
 import com.microsoft.office365.microsoftgraphvos.DriveItem;
+import com.microsoft.office365.microsoftgraphvos.Envelope;
+import com.microsoft.office365.microsoftgraphvos.ThumbnailSet;
+import com.microsoft.office365.microsoftgraphvos.UploadSession;
 
+import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.DELETE;
 import retrofit2.http.GET;
+import retrofit2.http.Header;
+import retrofit2.http.Headers;
 import retrofit2.http.PATCH;
 import retrofit2.http.POST;
 import retrofit2.http.PUT;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
+import retrofit2.http.Streaming;
+import retrofit2.http.Url;
 
 public interface MSGraphDrivesService {
 
     /**
+     * Not read into memory, so the body must be consumed and closed.
+     *
      * @param version  The version of the API to use (beta, v1, etc...)
      */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
     @GET("/{version}/me/drive")
     Call<ResponseBody> getDrive(
             @Path("version") String version
     );
 
     /**
+     * Not read into memory, so the body must be consumed and closed.
+     *
      * @param version  The version of the API to use (beta, v1, etc...)
      */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
     @GET("/{version}/myOrganization/drives")
     Call<ResponseBody> getOrganizationDrives(
             @Path("version") String version
@@ -37,13 +54,43 @@ public interface MSGraphDrivesService {
     /**
      * Gets children file metadata of the root folder
      *
+     * Not read into memory, so the body must be consumed and closed.
+     *
      * @param version  The version of the API to use (beta, v1, etc...)
      */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
     @GET("/{version}/me/drive/root/children")
     Call<ResponseBody> getCurrentUserFiles(
             @Path("version") String version
     );
 
+    /**
+     * Gets the first page of a folder's children
+     *
+     * @param version  The version of the API to use (beta, v1, etc...)
+     * @param itemId   The unique id of the folder, or "root"
+     * @param select   The DriveItem properties to return
+     * @param top      The most children to return per page
+     */
+    @GET("/{version}/me/drive/items/{itemId}/children")
+    Call<Envelope<DriveItem>> getChildren(
+            @Path("version") String version,
+            @Path("itemId") String itemId,
+            @Query("$select") String select,
+            @Query("$top") int top
+    );
+
+    /**
+     * Follows the @odata.nextLink of a page of children
+     *
+     * @param link     The link to follow
+     */
+    @GET
+    Call<Envelope<DriveItem>> getChildrenPage(
+            @Url String link
+    );
+
     /**
      * Creates a new file under the root folder
      *
@@ -58,6 +105,83 @@ public interface MSGraphDrivesService {
             @Body String value
     );
 
+    /**
+     * Gets the thumbnail sets of an item, each with the url and dimensions of its small,
+     * medium and large thumbnails
+     *
+     * @param version  The version of the API to use (beta, v1, etc...)
+     * @param itemId   The unique id of the item
+     */
+    @GET("/{version}/me/drive/items/{itemId}/thumbnails")
+    Call<Envelope<ThumbnailSet>> getThumbnails(
+            @Path("version") String version,
+            @Path("itemId") String itemId
+    );
+
+    /**
+     * Downloads a thumbnail of an item. The body is not read into memory, so it must be
+     * consumed and closed.
+     *
+     * @param version  The version of the API to use (beta, v1, etc...)
+     * @param itemId   The unique id of the item
+     * @param size     small, medium, large, or a custom size such as c300x400 to fit in
+     *                 300 by 400 pixels
+     */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
+    @GET("/{version}/me/drive/items/{itemId}/thumbnails/0/{size}/content")
+    Call<ResponseBody> getThumbnailContent(
+            @Path("version") String version,
+            @Path("itemId") String itemId,
+            @Path("size") String size
+    );
+
+    /**
+     * Creates or replaces a file of up to 4MB in a folder
+     *
+     * @param version  The version of the API to use (beta, v1, etc...)
+     * @param parentId The unique id of the folder, or "root"
+     * @param filename The name of the file
+     * @param content  The file contents
+     */
+    @PUT("/{version}/me/drive/items/{parentId}:/{filename}:/content")
+    Call<DriveItem> uploadFile(
+            @Path("version") String version,
+            @Path("parentId") String parentId,
+            @Path("filename") String filename,
+            @Body RequestBody content
+    );
+
+    /**
+     * Starts an upload session for a file larger than 4MB
+     *
+     * @param version  The version of the API to use (beta, v1, etc...)
+     * @param parentId The unique id of the folder, or "root"
+     * @param filename The name of the file
+     */
+    @POST("/{version}/me/drive/items/{parentId}:/{filename}:/createUploadSession")
+    Call<UploadSession> createUploadSession(
+            @Path("version") String version,
+            @Path("parentId") String parentId,
+            @Path("filename") String filename
+    );
+
+    /**
+     * Uploads a range of bytes to an upload session. The upload url carries its own
+     * authorization, so the request must not have an Authorization header. The response to
+     * the last range is the DriveItem.
+     *
+     * @param uploadUrl    The url of the upload session
+     * @param contentRange The range being uploaded, e.g. bytes 0-327679/1048576
+     * @param bytes        The bytes of the range
+     */
+    @PUT
+    Call<ResponseBody> uploadRange(
+            @Url String uploadUrl,
+            @Header("Content-Range") String contentRange,
+            @Body RequestBody bytes
+    );
+
     /**
      * Downloads a file
      *
@@ -70,6 +194,21 @@ public interface MSGraphDrivesService {
             @Path("filename") String filename
     );
 
+    /**
+     * Downloads the content of an item without reading it into memory. The body must be
+     * consumed and closed.
+     *
+     * @param version  The version of the API to use (beta, v1, etc...)
+     * @param itemId   The unique id of the item
+     */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
+    @GET("/{version}/me/drive/items/{itemId}/content")
+    Call<ResponseBody> getContent(
+            @Path("version") String version,
+            @Path("itemId") String itemId
+    );
+
     /**
      * @param version  The version of the API to use (beta, v1, etc...)
      * @param fileId   The unique id of the file to update
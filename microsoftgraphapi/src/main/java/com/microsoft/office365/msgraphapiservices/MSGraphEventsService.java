@@ -4,6 +4,7 @@
  */
 package com.microsoft.office365.msgraphapiservices;
 
+import com.microsoft.office365.microsoftgraphvos.Envelope;
 import com.microsoft.office365.microsoftgraphvos.Event;
 
 import okhttp3.ResponseBody;
@@ -11,22 +12,84 @@ import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.DELETE;
 import retrofit2.http.GET;
+import retrofit2.http.Header;
+import retrofit2.http.Headers;
 import retrofit2.http.PATCH;
 import retrofit2.http.POST;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
+import retrofit2.http.Streaming;
+import retrofit2.http.Url;
 
 public interface MSGraphEventsService {
 
     /**
      * GET a user's Events
      *
+     * Not read into memory, so the body must be consumed and closed.
+     *
      * @param version  The version of the API to use (beta, v1, etc...)
      */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
     @GET("/{version}/me/events")
     Call<ResponseBody> getEvents(
             @Path("version") String version
     );
 
+    /**
+     * GET the occurrences of a user's Events, including each instance of a recurring series,
+     * that fall between two times
+     *
+     * Not read into memory, so the body must be consumed and closed.
+     *
+     * @param version       The version of the API to use (beta, v1, etc...)
+     * @param startDateTime The start of the range, in ISO 8601 format
+     * @param endDateTime   The end of the range, in ISO 8601 format
+     * @param prefer        e.g. outlook.timezone="UTC" to return times in that time zone
+     */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
+    @GET("/{version}/me/calendarView")
+    Call<ResponseBody> getCalendarView(
+            @Path("version") String version,
+            @Query("startDateTime") String startDateTime,
+            @Query("endDateTime") String endDateTime,
+            @Header("Prefer") String prefer
+    );
+
+    /**
+     * GET the first page of a calendar view as Events
+     *
+     * @param version       The version of the API to use (beta, v1, etc...)
+     * @param startDateTime The start of the range, in ISO 8601 format
+     * @param endDateTime   The end of the range, in ISO 8601 format
+     * @param select        The Event properties to return
+     * @param top           The most Events per page
+     * @param prefer        e.g. outlook.timezone="UTC" to return times in that time zone
+     */
+    @GET("/{version}/me/calendarView")
+    Call<Envelope<Event>> getCalendarViewEvents(
+            @Path("version") String version,
+            @Query("startDateTime") String startDateTime,
+            @Query("endDateTime") String endDateTime,
+            @Query("$select") String select,
+            @Query("$top") int top,
+            @Header("Prefer") String prefer
+    );
+
+    /**
+     * GET a following page of a calendar view
+     *
+     * @param nextLink The @odata.nextLink of the previous page
+     * @param prefer   The Prefer header the first page was requested with
+     */
+    @GET
+    Call<Envelope<Event>> getCalendarViewEventsPage(
+            @Url String nextLink,
+            @Header("Prefer") String prefer
+    );
+
     /**
      * Create a new Event
      *
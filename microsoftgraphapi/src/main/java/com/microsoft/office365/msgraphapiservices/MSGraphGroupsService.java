@@ -4,7 +4,9 @@
  */
 package com.microsoft.office365.msgraphapiservices;
 
+import com.microsoft.office365.microsoftgraphvos.DirectoryObjectReference;
 import com.microsoft.office365.microsoftgraphvos.Group;
+import com.microsoft.office365.microsoftgraphvos.GroupMembersBind;
 
 import java.util.Map;
 
@@ -13,31 +15,70 @@ import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.DELETE;
 import retrofit2.http.GET;
+import retrofit2.http.Headers;
 import retrofit2.http.PATCH;
 import retrofit2.http.POST;
 import retrofit2.http.Path;
 import retrofit2.http.QueryMap;
+import retrofit2.http.Streaming;
+import retrofit2.http.Url;
 
 public interface MSGraphGroupsService {
 
     /**
      * GET a user's Groups
      *
+     * Not read into memory, so the body must be consumed and closed.
+     *
      * @param version  The version of the API to use (beta, v1, etc...)
      * @param filters  The criteria around which the Groups should be filtered
      */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
     @GET("/{version}/myOrganization/Groups")
     Call<ResponseBody> getGroups(
             @Path("version") String version,
             @QueryMap Map<String, String> filters
     );
 
+    /**
+     * GET the Groups a page at a time without reading each page into memory, for decoding
+     * as it arrives. The body must be consumed and closed.
+     *
+     * @param version  The version of the API to use (beta, v1, etc...)
+     * @param filters  The criteria around which the Groups should be filtered, e.g. $top
+     */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
+    @GET("/{version}/myOrganization/Groups")
+    Call<ResponseBody> streamGroups(
+            @Path("version") String version,
+            @QueryMap Map<String, String> filters
+    );
+
+    /**
+     * Follows the @odata.nextLink of a page of Groups without reading the page into memory.
+     * The body must be consumed and closed.
+     *
+     * @param link     The link to follow
+     */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
+    @GET
+    Call<ResponseBody> streamGroupsPage(
+            @Url String link
+    );
+
     /**
      * GET a specific Group by id
      *
+     * Not read into memory, so the body must be consumed and closed.
+     *
      * @param version  The version of the API to use (beta, v1, etc...)
      * @param groupId  The id of the Group to GET
      */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
     @GET("/{version}/myOrganization/Groups/{groupId}")
     Call<ResponseBody> getGroup(
             @Path("version") String version,
@@ -47,10 +88,14 @@ public interface MSGraphGroupsService {
     /**
      * Gets the contents of a Group
      *
+     * Not read into memory, so the body must be consumed and closed.
+     *
      * @param version  The version of the API to use (beta, v1, etc...)
      * @param groupId  The Group to interrogate
      * @param entity   Type type of Entity to fetch from this group
      */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
     @GET("/{version}/myOrganization/Groups/{groupId}/{entity}")
     Call<ResponseBody> getGroupEntities(
             @Path("version") String version,
@@ -96,4 +141,47 @@ public interface MSGraphGroupsService {
             @Path("groupId") String groupId
     );
 
+    /**
+     * Add a single member to a Group
+     *
+     * @param version  The version of the API to use (beta, v1, etc...)
+     * @param groupId  The unique id of the group to add the member to
+     * @param member   A reference to the user, group or contact to add
+     */
+    @POST("/{version}/myOrganization/Groups/{groupId}/members/$ref")
+    Call<ResponseBody> addGroupMember(
+            @Path("version") String version,
+            @Path("groupId") String groupId,
+            @Body DirectoryObjectReference member
+    );
+
+    /**
+     * Add several members to a Group in one request. The service accepts at most 20
+     * references per request.
+     *
+     * @param version  The version of the API to use (beta, v1, etc...)
+     * @param groupId  The unique id of the group to add the members to
+     * @param members  The references to the directory objects to add
+     */
+    @PATCH("/{version}/myOrganization/Groups/{groupId}")
+    Call<ResponseBody> addGroupMembers(
+            @Path("version") String version,
+            @Path("groupId") String groupId,
+            @Body GroupMembersBind members
+    );
+
+    /**
+     * Remove a member from a Group
+     *
+     * @param version  The version of the API to use (beta, v1, etc...)
+     * @param groupId  The unique id of the group to remove the member from
+     * @param memberId The unique id of the directory object to remove
+     */
+    @DELETE("/{version}/myOrganization/Groups/{groupId}/members/{memberId}/$ref")
+    Call<ResponseBody> removeGroupMember(
+            @Path("version") String version,
+            @Path("groupId") String groupId,
+            @Path("memberId") String memberId
+    );
+
 }
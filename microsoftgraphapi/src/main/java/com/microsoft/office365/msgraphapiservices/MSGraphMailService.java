@@ -4,27 +4,69 @@
  */
 package com.microsoft.office365.msgraphapiservices;
 
+import com.microsoft.office365.microsoftgraphvos.Message;
 import com.microsoft.office365.microsoftgraphvos.MessageWrapper;
+import com.microsoft.office365.microsoftgraphvos.UploadSession;
+import com.microsoft.office365.microsoftgraphvos.UploadSessionRequest;
 
+import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.GET;
+import retrofit2.http.Header;
+import retrofit2.http.Headers;
 import retrofit2.http.POST;
+import retrofit2.http.PUT;
 import retrofit2.http.Path;
+import retrofit2.http.Query;
+import retrofit2.http.Streaming;
+import retrofit2.http.Url;
 
 public interface MSGraphMailService {
 
     /**
      * Fetch a user's Messages
      *
+     * Not read into memory, so the body must be consumed and closed.
+     *
      * @param version  The version of the API to use (beta, v1, etc...)
      */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
     @GET("/{version}/me/messages")
     Call<ResponseBody> getMail(
             @Path("version") String version
     );
 
+    /**
+     * Fetch a user's Messages a page at a time without reading each page into memory, for
+     * decoding as it arrives. The body must be consumed and closed.
+     *
+     * @param version  The version of the API to use (beta, v1, etc...)
+     * @param top      The most Messages per page, up to 999
+     */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
+    @GET("/{version}/me/messages")
+    Call<ResponseBody> streamMail(
+            @Path("version") String version,
+            @Query("$top") int top
+    );
+
+    /**
+     * Follows the @odata.nextLink of a page of Messages without reading the page into
+     * memory. The body must be consumed and closed.
+     *
+     * @param link     The link to follow
+     */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
+    @GET
+    Call<ResponseBody> streamMailPage(
+            @Url String link
+    );
+
     /**
      * Creates & sends a new Message
      *
@@ -36,4 +78,71 @@ public interface MSGraphMailService {
             @Path("version") String version,
             @Body MessageWrapper body
     );
+
+    /**
+     * Creates a draft Message, which can have attachments added before it is sent
+     *
+     * @param version  The version of the API to use (beta, v1, etc...)
+     * @param message  The Message to save as a draft
+     */
+    @POST("/{version}/me/messages")
+    Call<ResponseBody> createDraft(
+            @Path("version") String version,
+            @Body Message message
+    );
+
+    /**
+     * Adds an attachment of up to 3 MB to a draft Message
+     *
+     * @param version    The version of the API to use (beta, v1, etc...)
+     * @param messageId  The draft to attach to
+     * @param attachment The JSON of a fileAttachment, with its content base64 encoded
+     */
+    @POST("/{version}/me/messages/{messageId}/attachments")
+    Call<ResponseBody> addAttachment(
+            @Path("version") String version,
+            @Path("messageId") String messageId,
+            @Body RequestBody attachment
+    );
+
+    /**
+     * Starts an upload session for an attachment too large to add in one request
+     *
+     * @param version    The version of the API to use (beta, v1, etc...)
+     * @param messageId  The draft to attach to
+     * @param request    Describes the attachment to upload
+     */
+    @POST("/{version}/me/messages/{messageId}/attachments/createUploadSession")
+    Call<UploadSession> createAttachmentUploadSession(
+            @Path("version") String version,
+            @Path("messageId") String messageId,
+            @Body UploadSessionRequest request
+    );
+
+    /**
+     * Uploads a range of bytes to an upload session. The upload url carries its own
+     * authorization, so the request must not have an Authorization header.
+     *
+     * @param uploadUrl    The url of the upload session
+     * @param contentRange The range being uploaded, e.g. bytes 0-327679/1048576
+     * @param bytes        The bytes of the range
+     */
+    @PUT
+    Call<ResponseBody> uploadRange(
+            @Url String uploadUrl,
+            @Header("Content-Range") String contentRange,
+            @Body RequestBody bytes
+    );
+
+    /**
+     * Sends a draft Message
+     *
+     * @param version    The version of the API to use (beta, v1, etc...)
+     * @param messageId  The draft to send
+     */
+    @POST("/{version}/me/messages/{messageId}/send")
+    Call<ResponseBody> sendDraft(
+            @Path("version") String version,
+            @Path("messageId") String messageId
+    );
 }
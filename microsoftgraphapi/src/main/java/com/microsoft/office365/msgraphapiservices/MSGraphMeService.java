@@ -7,23 +7,33 @@ package com.microsoft.office365.msgraphapiservices;
 import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.GET;
+import retrofit2.http.Headers;
 import retrofit2.http.Path;
 import retrofit2.http.Query;
+import retrofit2.http.Streaming;
 
 public interface MSGraphMeService {
 
     /**
+     * Not read into memory, so the body must be consumed and closed.
+     *
      * @param version  The version of the API to use (beta, v1, etc...)
      */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
     @GET("/{version}/me")
     Call<ResponseBody> getMe(
             @Path("version") String version
     );
 
     /**
+     * Not read into memory, so the body must be consumed and closed.
+     *
      * @param version  The version of the API to use (beta, v1, etc...)
      * @param select   A set of names specifying which properties to return in results
      */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
     @GET("/{version}/me")
     Call<ResponseBody> getMeResponsibilities(
             @Path("version") String version,
@@ -31,9 +41,13 @@ public interface MSGraphMeService {
     );
 
     /**
+     * Not read into memory, so the body must be consumed and closed.
+     *
      * @param version  The version of the API to use (beta, v1, etc...)
      * @param entity   Which entity to retrieve (manager, direct reports, etc...)
      */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
     @GET("/{version}/me/{entity}")
     Call<ResponseBody> getMeEntities(
             @Path("version") String version,
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.msgraphapiservices;
+
+import com.microsoft.office365.microsoftgraphvos.Subscription;
+
+import okhttp3.ResponseBody;
+import retrofit2.Call;
+import retrofit2.http.Body;
+import retrofit2.http.DELETE;
+import retrofit2.http.GET;
+import retrofit2.http.PATCH;
+import retrofit2.http.POST;
+import retrofit2.http.Path;
+
+public interface MSGraphSubscriptionsService {
+
+    /**
+     * Subscribes to changes to a resource. Before answering, the service validates the
+     * notification URL by sending it a validationToken that it must echo back.
+     *
+     * @param version       The version of the API to use (beta, v1, etc...)
+     * @param subscription  The resource, change types and notification URL to subscribe with
+     */
+    @POST("/{version}/subscriptions")
+    Call<Subscription> createSubscription(
+            @Path("version") String version,
+            @Body Subscription subscription
+    );
+
+    /**
+     * Extends a Subscription by updating its expirationDateTime
+     *
+     * @param version         The version of the API to use (beta, v1, etc...)
+     * @param subscriptionId  The Subscription to renew
+     * @param subscription    The new expirationDateTime
+     */
+    @PATCH("/{version}/subscriptions/{subscriptionId}")
+    Call<Subscription> renewSubscription(
+            @Path("version") String version,
+            @Path("subscriptionId") String subscriptionId,
+            @Body Subscription subscription
+    );
+
+    /**
+     * Deletes a Subscription
+     *
+     * @param version         The version of the API to use (beta, v1, etc...)
+     * @param subscriptionId  The Subscription to delete
+     */
+    @DELETE("/{version}/subscriptions/{subscriptionId}")
+    Call<ResponseBody> deleteSubscription(
+            @Path("version") String version,
+            @Path("subscriptionId") String subscriptionId
+    );
+
+    /**
+     * GETs the resource a change notification is about, e.g. Users/{id}/Messages/{id}
+     *
+     * @param version   The version of the API to use (beta, v1, etc...)
+     * @param resource  The resource path given by the notification
+     */
+    @GET("/{version}/{resource}")
+    Call<ResponseBody> getResource(
+            @Path("version") String version,
+            @Path(value = "resource", encoded = true) String resource
+    );
+}
@@ -4,22 +4,30 @@
  */
 package com.microsoft.office365.msgraphapiservices;
 
+import com.microsoft.office365.microsoftgraphvos.DeltaEnvelope;
 import com.microsoft.office365.microsoftgraphvos.User;
 
 import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.GET;
+import retrofit2.http.Headers;
 import retrofit2.http.POST;
 import retrofit2.http.Path;
 import retrofit2.http.Query;
+import retrofit2.http.Streaming;
+import retrofit2.http.Url;
 
 public interface MSGraphUserService {
 
     /**
+     * Not read into memory, so the body must be consumed and closed.
+     *
      * @param version  The version of the API to use (beta, v1, etc...)
      * @param filter   An expression specifying criteria for which set of results should be returned
      */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
     @GET("/{version}/myOrganization/users")
     Call<ResponseBody> getFilteredUsers(
             @Path("version") String version,
@@ -27,13 +35,72 @@ public interface MSGraphUserService {
     );
 
     /**
+     * Not read into memory, so the body must be consumed and closed.
+     *
      * @param version  The version of the API to use (beta, v1, etc...)
      */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
     @GET("/{version}/myOrganization/users")
     Call<ResponseBody> getUsers(
             @Path("version") String version
     );
 
+    /**
+     * @param version  The version of the API to use (beta, v1, etc...)
+     * @param top      The most users per page, up to 999
+     */
+    @GET("/{version}/myOrganization/users")
+    Call<ResponseBody> getUsers(
+            @Path("version") String version,
+            @Query("$top") int top
+    );
+
+    /**
+     * Lists users a page at a time without reading each page into memory, for decoding as
+     * it arrives. The body must be consumed and closed.
+     *
+     * @param version  The version of the API to use (beta, v1, etc...)
+     * @param top      The most users per page, up to 999
+     */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
+    @GET("/{version}/myOrganization/users")
+    Call<ResponseBody> streamUsers(
+            @Path("version") String version,
+            @Query("$top") int top
+    );
+
+    /**
+     * Lists users a page at a time without reading each page into memory, for decoding as
+     * it arrives. The body must be consumed and closed.
+     *
+     * @param version  The version of the API to use (beta, v1, etc...)
+     * @param select   The properties to return, comma separated
+     * @param top      The most users per page, up to 999
+     */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
+    @GET("/{version}/myOrganization/users")
+    Call<ResponseBody> streamUsers(
+            @Path("version") String version,
+            @Query("$select") String select,
+            @Query("$top") int top
+    );
+
+    /**
+     * Follows the @odata.nextLink of a page of users without reading the page into memory.
+     * The body must be consumed and closed.
+     *
+     * @param link     The link to follow
+     */
+    @Streaming
+    @Headers("X-Streamed-Response: true")
+    @GET
+    Call<ResponseBody> streamUsersPage(
+            @Url String link
+    );
+
     /**
      * @param version  The version of the API to use (beta, v1, etc...)
      * @param body     JSON describing properties of the new user
@@ -43,4 +110,27 @@ public interface MSGraphUserService {
             @Path("version") String version,
             @Body User body
     );
+
+    /**
+     * Starts tracking changes to the directory's users. The first round of pages returns
+     * every user; its last page has a delta link that returns only what changed since.
+     *
+     * @param version  The version of the API to use (beta, v1, etc...)
+     * @param select   The User properties to return
+     */
+    @GET("/{version}/users/delta")
+    Call<DeltaEnvelope<User>> getUsersDelta(
+            @Path("version") String version,
+            @Query("$select") String select
+    );
+
+    /**
+     * Follows the @odata.nextLink or @odata.deltaLink of a users delta page
+     *
+     * @param link     The link to follow
+     */
+    @GET
+    Call<DeltaEnvelope<User>> getUsersDeltaPage(
+            @Url String link
+    );
 }
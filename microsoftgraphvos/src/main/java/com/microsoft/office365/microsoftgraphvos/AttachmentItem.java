@@ -0,0 +1,9 @@
+package com.microsoft.office365.microsoftgraphvos;
+
+public class AttachmentItem {
+
+    public String attachmentType = "file";
+    public String name;
+    public long size;
+    public String contentType;
+}
@@ -0,0 +1,12 @@
+package com.microsoft.office365.microsoftgraphvos;
+
+import java.util.Map;
+
+public class BatchRequest {
+
+    public String id;
+    public String method;
+    public String url;
+    public Map<String, String> headers;
+    public Object body;
+}
@@ -0,0 +1,13 @@
+package com.microsoft.office365.microsoftgraphvos;
+
+import com.google.gson.JsonElement;
+
+import java.util.Map;
+
+public class BatchResponse {
+
+    public String id;
+    public int status;
+    public Map<String, String> headers;
+    public JsonElement body;
+}
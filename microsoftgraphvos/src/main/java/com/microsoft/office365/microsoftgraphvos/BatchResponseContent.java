@@ -0,0 +1,6 @@
+package com.microsoft.office365.microsoftgraphvos;
+
+public class BatchResponseContent {
+
+    public BatchResponse[] responses;
+}
@@ -0,0 +1,11 @@
+package com.microsoft.office365.microsoftgraphvos;
+
+public class ChangeNotification {
+
+    public String subscriptionId;
+    public String subscriptionExpirationDateTime;
+    public String clientState;
+    public String changeType;
+    public String resource;
+    public ResourceData resourceData;
+}
@@ -0,0 +1,12 @@
+package com.microsoft.office365.microsoftgraphvos;
+
+import com.google.gson.annotations.SerializedName;
+
+public class Contact extends Base {
+
+    public String displayName;
+    public String mail;
+
+    @SerializedName("@removed")
+    public Removed removed;
+}
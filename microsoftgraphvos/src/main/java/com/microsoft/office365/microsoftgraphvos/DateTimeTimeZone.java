@@ -4,9 +4,9 @@ import com.google.gson.annotations.SerializedName;
 
 public class DateTimeTimeZone {
 
-    @SerializedName("DateTime")
+    @SerializedName(value = "DateTime", alternate = {"dateTime"})
     public String dateTime;
 
-    @SerializedName("TimeZone")
+    @SerializedName(value = "TimeZone", alternate = {"timeZone"})
     public String timeZone;
 }
@@ -0,0 +1,9 @@
+package com.microsoft.office365.microsoftgraphvos;
+
+import com.google.gson.annotations.SerializedName;
+
+public class DeltaEnvelope<T> extends Envelope<T> {
+
+    @SerializedName("@odata.deltaLink")
+    public String deltaLink;
+}
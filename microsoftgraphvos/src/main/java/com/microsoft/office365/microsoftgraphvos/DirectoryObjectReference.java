@@ -0,0 +1,9 @@
+package com.microsoft.office365.microsoftgraphvos;
+
+import com.google.gson.annotations.SerializedName;
+
+public class DirectoryObjectReference {
+
+    @SerializedName("@odata.id")
+    public String odataId;
+}
@@ -11,4 +11,12 @@ public class DriveItem extends Base {
 
     public Folder folder;
 
+    @SerializedName("file")
+    public FileFacet fileFacet;
+
+    // boxed so that updates don't send a size of 0
+    public Long size;
+    public String eTag;
+    public String lastModifiedDateTime;
+    public ItemReference parentReference;
 }
@@ -1,6 +1,11 @@
 package com.microsoft.office365.microsoftgraphvos;
 
+import com.google.gson.annotations.SerializedName;
+
 public class Envelope<T> {
 
     public T[] value;
+
+    @SerializedName("@odata.nextLink")
+    public String nextLink;
 }
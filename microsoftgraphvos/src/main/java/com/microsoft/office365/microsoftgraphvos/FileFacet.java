@@ -0,0 +1,7 @@
+package com.microsoft.office365.microsoftgraphvos;
+
+public class FileFacet {
+
+    public String mimeType;
+    public Hashes hashes;
+}
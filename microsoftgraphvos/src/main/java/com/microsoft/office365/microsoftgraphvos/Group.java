@@ -2,9 +2,13 @@ package com.microsoft.office365.microsoftgraphvos;
 
 public class Group extends Base {
 
+    public static final String UNIFIED = "Unified";
+
     public String displayName;
     public String mailNickname;
     public boolean securityEnabled = true;
     public boolean mailEnabled = false;
+    public String[] groupTypes;
+    public String visibility;
 
 }
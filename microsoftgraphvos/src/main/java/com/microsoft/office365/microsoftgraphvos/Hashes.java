@@ -0,0 +1,7 @@
+package com.microsoft.office365.microsoftgraphvos;
+
+public class Hashes {
+
+    public String quickXorHash;
+    public String sha1Hash;
+}
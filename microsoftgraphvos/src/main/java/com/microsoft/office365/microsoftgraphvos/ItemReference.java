@@ -0,0 +1,8 @@
+package com.microsoft.office365.microsoftgraphvos;
+
+public class ItemReference {
+
+    public String driveId;
+    public String id;
+    public String path;
+}
@@ -0,0 +1,9 @@
+package com.microsoft.office365.microsoftgraphvos;
+
+public class Removed {
+
+    public static final String REASON_CHANGED = "changed";
+    public static final String REASON_DELETED = "deleted";
+
+    public String reason;
+}
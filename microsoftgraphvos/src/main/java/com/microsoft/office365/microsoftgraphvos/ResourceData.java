@@ -0,0 +1,11 @@
+package com.microsoft.office365.microsoftgraphvos;
+
+import com.google.gson.annotations.SerializedName;
+
+public class ResourceData {
+
+    public String id;
+
+    @SerializedName("@odata.type")
+    public String odataType;
+}
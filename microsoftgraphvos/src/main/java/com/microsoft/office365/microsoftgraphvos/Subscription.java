@@ -0,0 +1,14 @@
+package com.microsoft.office365.microsoftgraphvos;
+
+public class Subscription extends Base {
+
+    public static final String CHANGE_CREATED = "created";
+    public static final String CHANGE_UPDATED = "updated";
+    public static final String CHANGE_DELETED = "deleted";
+
+    public String resource;
+    public String changeType;
+    public String notificationUrl;
+    public String clientState;
+    public String expirationDateTime;
+}
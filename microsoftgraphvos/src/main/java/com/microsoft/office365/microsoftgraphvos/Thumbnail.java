@@ -0,0 +1,8 @@
+package com.microsoft.office365.microsoftgraphvos;
+
+public class Thumbnail {
+
+    public String url;
+    public int width;
+    public int height;
+}
@@ -0,0 +1,12 @@
+package com.microsoft.office365.microsoftgraphvos;
+
+public class ThumbnailSet extends Base {
+
+    public static final String SMALL = "small";
+    public static final String MEDIUM = "medium";
+    public static final String LARGE = "large";
+
+    public Thumbnail small;
+    public Thumbnail medium;
+    public Thumbnail large;
+}
@@ -0,0 +1,8 @@
+package com.microsoft.office365.microsoftgraphvos;
+
+public class UploadSession {
+
+    public String uploadUrl;
+    public String expirationDateTime;
+    public String[] nextExpectedRanges;
+}
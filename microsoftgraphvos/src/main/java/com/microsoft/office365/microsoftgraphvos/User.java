@@ -1,10 +1,19 @@
 package com.microsoft.office365.microsoftgraphvos;
 
+import com.google.gson.annotations.SerializedName;
+
 public class User extends Base {
 
     public boolean accountEnabled;
     public String displayName;
     public String mailNickname;
     public String userPrincipalName;
+    public String mail;
+    public String department;
+    public String jobTitle;
+    public String officeLocation;
     public PasswordProfile passwordProfile;
+
+    @SerializedName("@removed")
+    public Removed removed;
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.auth;
+
+import android.os.Looper;
+import android.util.Log;
+
+import com.microsoft.graph.authentication.IAuthenticationProvider;
+import com.microsoft.graph.http.IHttpRequest;
+import com.microsoft.identity.client.IAccount;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The token of one signed-in account.
+ * <p>
+ * Each account has its own session, so requests made for different accounts authenticate
+ * independently: a session whose token is about to expire refreshes it silently while holding
+ * only its own lock, and the other sessions keep serving their tokens in the meantime.
+ */
+public class AccountSession implements IAuthenticationProvider {
+
+    private static final String TAG = "AccountSession";
+
+    /**
+     * Tokens this close to expiring are refreshed before they are used
+     */
+    static final long EXPIRY_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    static final long REFRESH_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final TokenSource mTokenSource;
+
+    private final long mRefreshTimeoutMillis;
+
+    private final Object mRefreshLock = new Object();
+
+    private volatile IAccount mAccount;
+
+    private volatile Token mToken;
+
+    AccountSession(
+            TokenSource tokenSource,
+            long refreshTimeoutMillis,
+            IAccount account,
+            String accessToken,
+            Date expiresOn) {
+        mTokenSource = tokenSource;
+        mRefreshTimeoutMillis = refreshTimeoutMillis;
+        mAccount = account;
+        mToken = new Token(accessToken, expiresOn);
+    }
+
+    /**
+     * @return a stable id of the account, e.g. to look its session up again
+     */
+    public String getAccountId() {
+        return accountId(getAccount());
+    }
+
+    public IAccount getAccount() {
+        return mAccount;
+    }
+
+    public String getUsername() {
+        return getAccount().getUsername();
+    }
+
+    /**
+     * Returns a valid access token for the account, refreshing it first if it is about to
+     * expire. A refresh waits for MSAL, which answers on the main thread, so don't call this
+     * from the main thread.
+     *
+     * @return the access token
+     * @throws IOException if the token expired and couldn't be refreshed
+     */
+    public String getAccessToken() throws IOException {
+        Token token = mToken;
+        if (!token.isExpiring()) {
+            return token.mAccessToken;
+        }
+        synchronized (mRefreshLock) {
+            // another request may have refreshed it while this one waited
+            token = mToken;
+            if (token.isExpiring()) {
+                token = refresh(getAccount());
+            }
+            return token.mAccessToken;
+        }
+    }
+
+    void update(IAccount account, String accessToken, Date expiresOn) {
+        mAccount = account;
+        mToken = new Token(accessToken, expiresOn);
+    }
+
+    private Token refresh(IAccount account) throws IOException {
+        Looper looper = Looper.myLooper();
+        // a thread without a looper is never the main thread
+        if (null != looper && looper == Looper.getMainLooper()) {
+            throw new IOException("The token of " + account.getUsername()
+                    + " expired and can't be refreshed on the main thread");
+        }
+        final CountDownLatch done = new CountDownLatch(1);
+        final Token[] refreshed = new Token[1];
+        final Exception[] error = new Exception[1];
+        mTokenSource.refresh(account, new TokenSource.Callback() {
+            @Override
+            public void onRefreshed(String accessToken, Date expiresOn) {
+                refreshed[0] = new Token(accessToken, expiresOn);
+                done.countDown();
+            }
+
+            @Override
+            public void onError(Exception exception) {
+                error[0] = exception;
+                done.countDown();
+            }
+
+            @Override
+            public void onCancel() {
+                done.countDown();
+            }
+        });
+        try {
+            if (!done.await(mRefreshTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timed out refreshing the token of " + account.getUsername());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while refreshing a token", e);
+        }
+        if (null != error[0]) {
+            throw new IOException("Unable to refresh the token of " + account.getUsername(), error[0]);
+        }
+        if (null == refreshed[0]) {
+            throw new IOException("The token of " + account.getUsername() + " was not refreshed");
+        }
+        mToken = refreshed[0];
+        return refreshed[0];
+    }
+
+    static String accountId(IAccount account) {
+        return null == account.getHomeAccountIdentifier()
+                ? account.getUsername()
+                : account.getHomeAccountIdentifier().getIdentifier();
+    }
+
+    @Override
+    public void authenticateRequest(IHttpRequest request) {
+        try {
+            request.addHeader("Authorization", "Bearer " + getAccessToken());
+            // This header has been added to identify this sample in the Microsoft Graph service.
+            // If you're using this code for your project please remove the following line.
+            request.addHeader("SampleID", "android-java-snippets-rest-sample");
+        } catch (IOException exception) {
+            Log.w(TAG, "Unable to authenticate a request", exception);
+        }
+    }
+
+    private static final class Token {
+
+        final String mAccessToken;
+
+        final Date mExpiresOn;
+
+        Token(String accessToken, Date expiresOn) {
+            mAccessToken = accessToken;
+            mExpiresOn = expiresOn;
+        }
+
+        boolean isExpiring() {
+            return null != mExpiresOn
+                    && mExpiresOn.getTime() - System.currentTimeMillis() < EXPIRY_MARGIN_MILLIS;
+        }
+    }
+}
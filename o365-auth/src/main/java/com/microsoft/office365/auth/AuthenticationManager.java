@@ -18,7 +18,20 @@ import com.microsoft.identity.client.PublicClientApplication;
 import com.microsoft.identity.client.exception.MsalException;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Signs accounts in and keeps an {@link AccountSession} for each of them, so several accounts
+ * can be signed in at once and make requests concurrently. The sessions outlive the activity
+ * the manager belongs to.
+ * <p>
+ * As an {@link IAuthenticationProvider} the manager authenticates with the account signed in
+ * most recently, for callers that only deal with one account.
+ */
 public class AuthenticationManager implements IAuthenticationProvider{
 
     private final Activity mActivity;
@@ -27,29 +40,48 @@ public class AuthenticationManager implements IAuthenticationProvider{
 
     private final String[] mScopes;
 
+    private final TokenSource mTokenSource;
+
     private static final String TAG = "AuthenticationManager";
 
-    private static AuthenticationResult mAuthResult;
+    private static final ConcurrentMap<String, AccountSession> sSessions =
+            new ConcurrentHashMap<>();
 
-    private AuthenticationCallback mActivityCallback;
+    private static volatile String sDefaultAccountId;
 
 
     AuthenticationManager(
             Activity activity,
             PublicClientApplication publicClientApplication,
             String[] scopes) {
+        this(activity,
+                publicClientApplication,
+                scopes,
+                new MsalTokenSource(publicClientApplication, scopes));
+    }
+
+    AuthenticationManager(
+            Activity activity,
+            PublicClientApplication publicClientApplication,
+            String[] scopes,
+            TokenSource tokenSource) {
         mActivity = activity;
         mPublicClientApplication = publicClientApplication;
         mScopes = scopes;
+        mTokenSource = tokenSource;
     }
 
     /**
-     * Returns the access token obtained in authentication
+     * Returns the access token of the account signed in most recently
      *
      * @return mAccessToken
      */
     public String getAccessToken() throws AuthenticatorException, IOException, OperationCanceledException {
-        return  mAuthResult.getAccessToken();
+        AccountSession session = getDefaultSession();
+        if (null == session) {
+            throw new OperationCanceledException("No account is signed in");
+        }
+        return session.getAccessToken();
     }
 
     public PublicClientApplication getPublicClient(){
@@ -57,28 +89,100 @@ public class AuthenticationManager implements IAuthenticationProvider{
     }
 
     /**
-     * Disconnects the app from Office 365 by clearing the token cache, setting the client objects
-     * to null, and removing the user id from shared preferences.
+     * @param accountId The id of the account, from {@link AccountSession#getAccountId()}
+     * @return the account's session, or null if it isn't signed in
+     */
+    public static AccountSession getSession(String accountId) {
+        return sSessions.get(accountId);
+    }
+
+    /**
+     * @return the session of the account signed in most recently, or null if none is
+     */
+    public static AccountSession getDefaultSession() {
+        String accountId = sDefaultAccountId;
+        return null == accountId ? null : sSessions.get(accountId);
+    }
+
+    /**
+     * @return the sessions of every signed-in account
+     */
+    public List<AccountSession> getSessions() {
+        return new ArrayList<>(sSessions.values());
+    }
+
+    /**
+     * Disconnects the app from Office 365 by signing every account out and removing them
+     * from the token cache.
      */
     public void disconnect() {
-        if(mAuthResult != null ){
-            mPublicClientApplication.removeAccount(mAuthResult.getAccount());
+        for (String accountId : new ArrayList<>(sSessions.keySet())) {
+            disconnect(accountId);
+        }
+    }
+
+    /**
+     * Signs one account out, leaving the others signed in
+     *
+     * @param accountId The id of the account, from {@link AccountSession#getAccountId()}
+     */
+    public void disconnect(String accountId) {
+        AccountSession session = sSessions.remove(accountId);
+        if (null != session) {
+            mTokenSource.remove(session.getAccount());
+        }
+        if (accountId.equals(sDefaultAccountId)) {
+            sDefaultAccountId = null;
         }
     }
 
     /**
      * Authenticates the user and lets the user authorize the app for the requested permissions.
+     * The account is signed in next to any account already signed in.
      * An authentication token is returned via the getAuthInteractiveCallback method
      * @param authenticationCallback
      */
     public void callAcquireToken(final AuthenticationCallback authenticationCallback) {
-        mActivityCallback = authenticationCallback;
         mPublicClientApplication.acquireToken(
-                mActivity, mScopes, getAuthInteractiveCallback());
+                mActivity, mScopes, getAuthInteractiveCallback(authenticationCallback));
     }
+
+    /**
+     * Signs an account in from the token cache. Calls for different accounts may run at the
+     * same time; those without a callback restore the account in the background without
+     * making it the one signed in most recently.
+     */
     public void callAcquireTokenSilent(IAccount user, boolean forceRefresh, AuthenticationCallback authenticationCallback) {
-        mActivityCallback = authenticationCallback;
-        mPublicClientApplication.acquireTokenSilentAsync(mScopes, user, null, forceRefresh, getAuthSilentCallback());
+        mPublicClientApplication.acquireTokenSilentAsync(mScopes, user, null, forceRefresh,
+                getAuthSilentCallback(authenticationCallback));
+    }
+
+    private void signedIn(AuthenticationResult authenticationResult, boolean isDefault) {
+        signedIn(authenticationResult.getAccount(),
+                authenticationResult.getAccessToken(),
+                authenticationResult.getExpiresOn(),
+                isDefault);
+    }
+
+    void signedIn(IAccount account, String accessToken, Date expiresOn, boolean isDefault) {
+        String accountId = AccountSession.accountId(account);
+        AccountSession session = sSessions.get(accountId);
+        if (null == session) {
+            session = new AccountSession(mTokenSource,
+                    AccountSession.REFRESH_TIMEOUT_MILLIS,
+                    account,
+                    accessToken,
+                    expiresOn);
+            AccountSession previous = sSessions.putIfAbsent(accountId, session);
+            if (null != previous) {
+                previous.update(account, accessToken, expiresOn);
+            }
+        } else {
+            session.update(account, accessToken, expiresOn);
+        }
+        if (isDefault || null == sDefaultAccountId) {
+            sDefaultAccountId = accountId;
+        }
     }
 
 // App callbacks for MSAL
@@ -91,27 +195,28 @@ public class AuthenticationManager implements IAuthenticationProvider{
      * else errors that we need to do an interactive request.
      */
 
-    private AuthenticationCallback getAuthSilentCallback() {
+    private AuthenticationCallback getAuthSilentCallback(
+            final AuthenticationCallback activityCallback) {
         return new AuthenticationCallback() {
             @Override
             public void onSuccess(AuthenticationResult authenticationResult) {
                 /* Successfully got a token, call Graph now */
                 Log.d(TAG, "Successfully authenticated");
 
-                /* Store the authResult */
-                mAuthResult = authenticationResult;
+                /* Store the authResult in the account's session */
+                signedIn(authenticationResult, null != activityCallback);
 
                 //invoke UI callback
-                if (mActivityCallback != null)
-                    mActivityCallback.onSuccess(mAuthResult);
+                if (activityCallback != null)
+                    activityCallback.onSuccess(authenticationResult);
             }
 
             @Override
             public void onError(MsalException exception) {
                 /* Failed to acquireToken */
                 Log.d(TAG, "Authentication failed: " + exception.toString());
-                if (mActivityCallback != null)
-                    mActivityCallback.onError(exception);
+                if (activityCallback != null)
+                    activityCallback.onError(exception);
             }
 
             @Override
@@ -125,7 +230,8 @@ public class AuthenticationManager implements IAuthenticationProvider{
     /* Callback used for interactive request. If succeeds we use the access
      * token to call the Microsoft Graph. Does not check cache
      */
-    private AuthenticationCallback getAuthInteractiveCallback() {
+    private AuthenticationCallback getAuthInteractiveCallback(
+            final AuthenticationCallback activityCallback) {
         return new AuthenticationCallback() {
             @Override
             public void onSuccess(AuthenticationResult authenticationResult) {
@@ -133,26 +239,26 @@ public class AuthenticationManager implements IAuthenticationProvider{
                 Log.d(TAG, "Successfully authenticated");
                 Log.d(TAG, "ID Token: " + authenticationResult.getIdToken());
 
-                /* Store the auth result */
-                mAuthResult = authenticationResult;
-                if (mActivityCallback != null)
-                    mActivityCallback.onSuccess(mAuthResult);
+                /* Store the auth result in the account's session */
+                signedIn(authenticationResult, null != activityCallback);
+                if (activityCallback != null)
+                    activityCallback.onSuccess(authenticationResult);
             }
 
             @Override
             public void onError(MsalException exception) {
                 /* Failed to acquireToken */
                 Log.d(TAG, "Authentication failed: " + exception.toString());
-                if (mActivityCallback != null)
-                    mActivityCallback.onError(exception);
+                if (activityCallback != null)
+                    activityCallback.onError(exception);
             }
 
             @Override
             public void onCancel() {
                 /* User canceled the authentication */
                 Log.d(TAG, "User cancelled login.");
-                if (mActivityCallback != null)
-                    mActivityCallback.onCancel();
+                if (activityCallback != null)
+                    activityCallback.onCancel();
             }
         };
     }
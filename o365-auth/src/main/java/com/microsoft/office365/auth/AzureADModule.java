@@ -23,8 +23,9 @@ public class AzureADModule {
     @Provides
     @SuppressWarnings("unused") // not actually unused -- used by Dagger
     public PublicClientApplication providesPublicClientApplication() {
+        // the application context, as account sessions hold on to the client past the activity
         return new PublicClientApplication(
-                mBuilder.mActivity,
+                mBuilder.mActivity.getApplicationContext(),
                 mBuilder.mClientId);
     }
 
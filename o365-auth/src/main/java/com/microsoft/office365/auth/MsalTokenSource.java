@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.auth;
+
+import com.microsoft.identity.client.AuthenticationCallback;
+import com.microsoft.identity.client.AuthenticationResult;
+import com.microsoft.identity.client.IAccount;
+import com.microsoft.identity.client.PublicClientApplication;
+import com.microsoft.identity.client.exception.MsalException;
+
+/**
+ * Refreshes tokens silently through MSAL, which answers on the main thread
+ */
+class MsalTokenSource implements TokenSource {
+
+    private final PublicClientApplication mPublicClientApplication;
+
+    private final String[] mScopes;
+
+    MsalTokenSource(PublicClientApplication publicClientApplication, String[] scopes) {
+        mPublicClientApplication = publicClientApplication;
+        mScopes = scopes;
+    }
+
+    @Override
+    public void refresh(IAccount account, final Callback callback) {
+        // forced, as MSAL would otherwise hand back the cached token that is about to expire
+        mPublicClientApplication.acquireTokenSilentAsync(
+                mScopes, account, null, true, new AuthenticationCallback() {
+                    @Override
+                    public void onSuccess(AuthenticationResult authenticationResult) {
+                        callback.onRefreshed(authenticationResult.getAccessToken(),
+                                authenticationResult.getExpiresOn());
+                    }
+
+                    @Override
+                    public void onError(MsalException exception) {
+                        callback.onError(exception);
+                    }
+
+                    @Override
+                    public void onCancel() {
+                        callback.onCancel();
+                    }
+                });
+    }
+
+    @Override
+    public void remove(IAccount account) {
+        mPublicClientApplication.removeAccount(account);
+    }
+}
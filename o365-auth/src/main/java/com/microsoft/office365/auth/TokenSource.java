@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.auth;
+
+import com.microsoft.identity.client.IAccount;
+
+import java.util.Date;
+
+/**
+ * Where the sessions get new tokens from, and where signed-out accounts are forgotten
+ */
+interface TokenSource {
+
+    /**
+     * Receives the outcome of a refresh, on any thread
+     */
+    interface Callback {
+        void onRefreshed(String accessToken, Date expiresOn);
+
+        void onError(Exception exception);
+
+        void onCancel();
+    }
+
+    /**
+     * Fetches a new token for the account, bypassing any cached one
+     *
+     * @param account  The signed-in account
+     * @param callback Told the outcome
+     */
+    void refresh(IAccount account, Callback callback);
+
+    /**
+     * Forgets the account, e.g. drops it from the token cache
+     *
+     * @param account The account being signed out
+     */
+    void remove(IAccount account);
+}
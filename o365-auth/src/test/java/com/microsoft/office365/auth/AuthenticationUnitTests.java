@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) Microsoft. All rights reserved. Licensed under the MIT license.
+ * See LICENSE in the project root for license information.
+ */
+package com.microsoft.office365.auth;
+
+import android.accounts.OperationCanceledException;
+
+import com.microsoft.identity.client.IAccount;
+import com.microsoft.identity.client.IAccountIdentifier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AuthenticationUnitTests {
+
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final FakeTokenSource mTokenSource = new FakeTokenSource();
+
+    private final AuthenticationManager mManager =
+            new AuthenticationManager(null, null, null, mTokenSource);
+
+    @Before
+    @After
+    public void signOut() {
+        // the sessions are shared by every manager
+        mManager.disconnect();
+    }
+
+    @Test
+    public void refreshExpiringTokenOnce() throws InterruptedException, IOException {
+        final AccountSession session = session("megan", "old", expiresIn(60 * 1000));
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<String> tokens = Collections.synchronizedList(new ArrayList<String>());
+        List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread caller = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        tokens.add(session.getAccessToken());
+                    } catch (InterruptedException | IOException e) {
+                        tokens.add(e.toString());
+                    }
+                }
+            });
+            caller.start();
+            callers.add(caller);
+        }
+        start.countDown();
+        mTokenSource.answer("megan").onRefreshed("new", expiresIn(HOUR_MILLIS));
+        for (Thread caller : callers) {
+            caller.join(10 * 1000);
+        }
+
+        Assert.assertEquals(Collections.nCopies(8, "new"), tokens);
+        Assert.assertEquals("new", session.getAccessToken());
+        Assert.assertEquals(1, mTokenSource.mRefreshes.get());
+    }
+
+    @Test
+    public void refreshWithoutHoldingUpOtherAccounts() throws InterruptedException, IOException {
+        final AccountSession expiring = session("megan", "old", expiresIn(60 * 1000));
+        AccountSession valid = session("alex", "alex", expiresIn(HOUR_MILLIS));
+        final String[] token = new String[1];
+        Thread caller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    token[0] = expiring.getAccessToken();
+                } catch (IOException e) {
+                    token[0] = e.toString();
+                }
+            }
+        });
+        caller.start();
+        TokenSource.Callback refresh = mTokenSource.answer("megan");
+
+        // megan's session is locked until MSAL answers, alex's isn't
+        long started = System.nanoTime();
+        Assert.assertEquals("alex", valid.getAccessToken());
+        Assert.assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(1));
+        Assert.assertTrue(caller.isAlive());
+
+        refresh.onRefreshed("new", expiresIn(HOUR_MILLIS));
+        caller.join(10 * 1000);
+        Assert.assertEquals("new", token[0]);
+    }
+
+    @Test
+    public void failRefresh() throws InterruptedException {
+        final AccountSession session = new AccountSession(
+                mTokenSource, 500, account("megan"), "old", expiresIn(60 * 1000));
+
+        // MSAL never answers
+        try {
+            session.getAccessToken();
+            Assert.fail("The refresh didn't time out");
+        } catch (IOException e) {
+            Assert.assertEquals("Timed out refreshing the token of megan", e.getMessage());
+        }
+        mTokenSource.answer("megan");
+
+        final Exception error = new Exception("invalid_grant");
+        Thread answer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mTokenSource.answer("megan").onError(error);
+                    mTokenSource.answer("megan").onCancel();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        answer.start();
+        try {
+            session.getAccessToken();
+            Assert.fail("The refresh didn't fail");
+        } catch (IOException e) {
+            Assert.assertSame(error, e.getCause());
+        }
+        try {
+            session.getAccessToken();
+            Assert.fail("The refresh wasn't canceled");
+        } catch (IOException e) {
+            Assert.assertEquals("The token of megan was not refreshed", e.getMessage());
+        }
+        answer.join(10 * 1000);
+        Assert.assertEquals(3, mTokenSource.mRefreshes.get());
+    }
+
+    @Test
+    public void selectDefaultAccount() throws Exception {
+        Assert.assertNull(AuthenticationManager.getDefaultSession());
+
+        // restored in the background, but the first account is selected all the same
+        mManager.signedIn(account("megan"), "megan", expiresIn(HOUR_MILLIS), false);
+        mManager.signedIn(account("alex"), "alex", expiresIn(HOUR_MILLIS), false);
+        Assert.assertEquals("megan", AuthenticationManager.getDefaultSession().getAccountId());
+        Assert.assertEquals(2, mManager.getSessions().size());
+
+        mManager.signedIn(account("alex"), "alex", expiresIn(HOUR_MILLIS), true);
+        Assert.assertEquals("alex", mManager.getAccessToken());
+
+        // signing in again updates the session in place
+        AccountSession megan = AuthenticationManager.getSession("megan");
+        mManager.signedIn(account("megan"), "megan2", expiresIn(HOUR_MILLIS), false);
+        Assert.assertSame(megan, AuthenticationManager.getSession("megan"));
+        Assert.assertEquals("megan2", megan.getAccessToken());
+        Assert.assertEquals("alex", mManager.getAccessToken());
+
+        mManager.disconnect("alex");
+        Assert.assertEquals(Collections.singletonList("alex"), mTokenSource.mRemoved);
+        Assert.assertNull(AuthenticationManager.getDefaultSession());
+        Assert.assertNotNull(AuthenticationManager.getSession("megan"));
+        try {
+            mManager.getAccessToken();
+            Assert.fail("A token was returned with no account selected");
+        } catch (OperationCanceledException e) {
+            // expected
+        }
+    }
+
+    private AccountSession session(String username, String accessToken, Date expiresOn) {
+        return new AccountSession(mTokenSource,
+                AccountSession.REFRESH_TIMEOUT_MILLIS,
+                account(username),
+                accessToken,
+                expiresOn);
+    }
+
+    private static Date expiresIn(long millis) {
+        return new Date(System.currentTimeMillis() + millis);
+    }
+
+    private static IAccount account(final String username) {
+        return new IAccount() {
+            @Override
+            public IAccountIdentifier getAccountIdentifier() {
+                return null;
+            }
+
+            @Override
+            public IAccountIdentifier getHomeAccountIdentifier() {
+                return null;
+            }
+
+            @Override
+            public String getEnvironment() {
+                return "login.microsoftonline.com";
+            }
+
+            @Override
+            public String getUsername() {
+                return username;
+            }
+        };
+    }
+
+    /**
+     * Holds each refresh until the test answers it
+     */
+    private static class FakeTokenSource implements TokenSource {
+
+        final AtomicInteger mRefreshes = new AtomicInteger();
+
+        final List<String> mRemoved = Collections.synchronizedList(new ArrayList<String>());
+
+        private final BlockingQueue<Object[]> mPending = new LinkedBlockingQueue<>();
+
+        @Override
+        public void refresh(IAccount account, Callback callback) {
+            mRefreshes.incrementAndGet();
+            mPending.add(new Object[]{account.getUsername(), callback});
+        }
+
+        @Override
+        public void remove(IAccount account) {
+            mRemoved.add(account.getUsername());
+        }
+
+        Callback answer(String username) throws InterruptedException {
+            Object[] pending = mPending.poll(10, TimeUnit.SECONDS);
+            Assert.assertNotNull("No token was refreshed", pending);
+            Assert.assertEquals(username, pending[0]);
+            return (Callback) pending[1];
+        }
+    }
+}